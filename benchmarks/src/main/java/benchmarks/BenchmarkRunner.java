@@ -0,0 +1,42 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Точка входа benchmarks.jar. Запускает бенчмарки и сохраняет результаты в JSON,
+ * чтобы их можно было сравнивать между релизами.
+ * <p>
+ * Первый аргумент, если он оканчивается на {@code .json}, задаёт файл результатов
+ * (по умолчанию {@code jmh-result.json}); остальные аргументы передаются JMH как есть,
+ * например {@code -f 2} или регулярное выражение для выбора бенчмарков.
+ */
+public final class BenchmarkRunner {
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String resultFile = DEFAULT_RESULT_FILE;
+        String[] jmhArgs = args;
+        if (args.length > 0 && args[0].endsWith(".json")) {
+            resultFile = args[0];
+            jmhArgs = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(jmhArgs))
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import game.CollisionResolver;
+import game.RobotFleet;
+import game.SpatialGrid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время прохода {@link CollisionResolver#resolve(RobotFleet, SpatialGrid)} на разной плотности роботов.
+ * Без шага движения толпа за несколько проходов расходится, поэтому каждый вызов сначала продвигает
+ * роботов к целям; {@link #step()} измеряет только этот шаг, и разница двух бенчмарков - время
+ * разрешения столкновений.
+ * <p>
+ * Сцены: {@code scattered} - роботы разбросаны по большому полю и почти не касаются друг друга,
+ * {@code crowd} - плотное поле со случайными целями, {@code pileup} - все роботы едут в одну точку
+ * и постоянно толкаются в куче.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollisionResolverBenchmark {
+    /** Шагов до начала измерений, за которые складывается картина контактов сцены */
+    private static final int SETTLE_TICKS = 100;
+
+    @Param({"10000"})
+    public int robots;
+
+    @Param({"scattered", "crowd", "pileup"})
+    public String scene;
+
+    private RobotFleet fleet;
+    private SpatialGrid grid;
+    private CollisionResolver resolver;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        double field = scene.equals("scattered") ? 5000 : 1000;
+        fleet = new RobotFleet(robots);
+        Random random = new Random(42);
+        for (int i = 0; i < robots; i++) {
+            fleet.addRobot(random.nextDouble() * field, random.nextDouble() * field, random.nextDouble() * 2 * Math.PI);
+        }
+        if (scene.equals("pileup")) {
+            fleet.setTargetForAll(field / 2, field / 2);
+        } else {
+            for (int i = 0; i < robots; i++) {
+                fleet.setTarget(i, random.nextDouble() * field, random.nextDouble() * field);
+            }
+        }
+        grid = new SpatialGrid(fleet, RobotFleet.BODY_LENGTH);
+        resolver = new CollisionResolver();
+        for (int tick = 0; tick < SETTLE_TICKS; tick++) {
+            resolve();
+        }
+    }
+
+    @Benchmark
+    public int resolve() {
+        fleet.step();
+        grid.update();
+        return resolver.resolve(fleet, grid);
+    }
+
+    @Benchmark
+    public int step() {
+        int moved = fleet.step();
+        grid.update();
+        return moved;
+    }
+}
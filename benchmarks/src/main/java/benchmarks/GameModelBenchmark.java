@@ -0,0 +1,59 @@
+package benchmarks;
+
+import game.GameModel;
+import game.RobotFleet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность шага симуляции {@link GameModel#updateRobotPosition()}
+ * для разного количества роботов и уровня параллелизма.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameModelBenchmark {
+    /** Период смены цели в шагах: роботы не успевают доехать и постоянно двигаются */
+    private static final int RETARGET_PERIOD = 256;
+
+    @Param({"1", "1000", "100000"})
+    public int robots;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private GameModel model;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        model = new GameModel();
+        model.setParallelism(parallelism);
+        Random random = new Random(42);
+        for (int i = 1; i < robots; i++) {
+            model.addRobot(random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 2 * Math.PI);
+        }
+        model.getFleet().setTargetForAll(-1000, -1000);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        model.setParallelism(1);
+    }
+
+    @Benchmark
+    public long updateRobotPosition() {
+        model.updateRobotPosition();
+        long tick = model.getTick();
+        if (tick % RETARGET_PERIOD == 0) {
+            RobotFleet fleet = model.getFleet();
+            double target = (tick / RETARGET_PERIOD) % 2 == 0 ? -1000 : 2000;
+            fleet.setTargetForAll(target, target);
+        }
+        return tick;
+    }
+}
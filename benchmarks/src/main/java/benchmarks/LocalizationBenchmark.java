@@ -0,0 +1,36 @@
+package benchmarks;
+
+import localization.LocalizationManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Форматирование локализованной строки координат, вызываемое окном координат на каждое обновление.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalizationBenchmark {
+    @Param({"ru", "en"})
+    public String language;
+
+    private LocalizationManager localization;
+    private double x;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        localization = LocalizationManager.getInstance();
+        localization.setLocale(Locale.forLanguageTag(language));
+    }
+
+    @Benchmark
+    public String getFormattedString() {
+        x += 0.01;
+        return localization.getFormattedString("coordinates.text", x, x * 2);
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import log.LogEntry;
+import log.LogLevel;
+import log.LogWindowSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись и чтение {@link LogWindowSource} при конкуренции нескольких потоков:
+ * группа из четырёх писателей и одного читателя, а также писатели без читателей.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogWindowSourceBenchmark {
+    @Param({"1000", "100000"})
+    public int capacity;
+
+    private LogWindowSource source;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        source = new LogWindowSource(capacity);
+        for (int i = 0; i < capacity; i++) {
+            source.append(LogLevel.Debug, "warm-up");
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void append() {
+        source.append(LogLevel.Debug, "message");
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void range(Blackhole blackhole) {
+        int size = source.size();
+        for (LogEntry entry : source.range(Math.max(0, size - 50), 50)) {
+            blackhole.consume(entry);
+        }
+    }
+
+    @Benchmark
+    @Group("appendOnly")
+    @GroupThreads(4)
+    public void appendWithoutReaders() {
+        source.append(LogLevel.Debug, "message");
+    }
+}
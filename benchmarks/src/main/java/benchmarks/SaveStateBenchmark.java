@@ -0,0 +1,97 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import state.Save;
+import state.SaveState;
+import state.Settings;
+import state.SettingsSection;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Сохранение и загрузка {@link SaveState} с большим количеством окон.
+ * Файлы настроек пишутся во временный каталог.
+ * {@code saveToFile} пишет полный снимок, а {@code saveChangedWindow} - только параметры одного
+ * изменившегося окна, как периодическое фоновое сохранение.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveStateBenchmark {
+    /** Количество параметров одного окна, как у {@code AbstractWindow} */
+    private static final String[] PARAMS = {"x", "y", "width", "height", "state"};
+
+    @Param({"10", "10000"})
+    public int windows;
+
+    private Path home;
+    private SaveState saveState;
+    private int tick;
+
+    /** Окно, у которого при каждом сохранении меняется положение */
+    private final Save movingWindow = new Save() {
+        @Override
+        public void saveWindowState(SettingsSection section) {
+            section.putInt("x", tick++);
+            section.putInt("y", tick);
+        }
+
+        @Override
+        public void loadWindowState(SettingsSection section) {
+        }
+
+        @Override
+        public String getNameOfWindow() {
+            return "Window0";
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("robots-bench");
+        saveState = new SaveState(home);
+        Settings settings = saveState.getSettings();
+        for (int w = 0; w < windows; w++) {
+            SettingsSection section = settings.section("Window" + w);
+            for (int p = 0; p < PARAMS.length; p++) {
+                section.putInt(PARAMS[p], w * PARAMS.length + p);
+            }
+        }
+        saveState.saveToFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public SaveState saveToFile() throws IOException {
+        saveState.saveToFile();
+        return saveState;
+    }
+
+    @Benchmark
+    public SaveState saveChangedWindow() throws IOException {
+        saveState.saveWindowParams(movingWindow);
+        saveState.close();
+        return saveState;
+    }
+
+    @Benchmark
+    public SaveState loadFromFile() throws IOException {
+        SaveState loaded = new SaveState(home);
+        loaded.loadFromFile();
+        return loaded;
+    }
+}
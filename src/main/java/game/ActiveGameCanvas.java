@@ -0,0 +1,226 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Активная отрисовка игрового поля: собственный поток рисует кадры в {@link BufferStrategy}
+ * холста, не дожидаясь {@code RepaintManager}. Роботы рисуются в промежуточном положении между
+ * двумя последними снимками {@link SimulationLoop}, поэтому движение остаётся плавным при любой
+ * частоте шагов симуляции (изображение отстаёт от симуляции на один снимок).
+ * <p>
+ * Частота кадров ограничивается заданным значением или не ограничивается вовсе. Поверх поля
+ * выводятся частота кадров, среднее и наибольшее время отрисовки кадра за последнюю секунду.
+ * Поток отрисовки запускается, когда холст становится отображаемым, и останавливается при
+ * удалении холста или вызове {@link #stopRendering()}.
+ */
+public class ActiveGameCanvas extends Canvas {
+    /** Ограничение частоты кадров по умолчанию */
+    public static final int DEFAULT_MAX_FPS = 60;
+
+    /** Количество буферов в цепочке отрисовки */
+    private static final int BUFFER_COUNT = 2;
+
+    /** Период обновления показателей на экране */
+    private static final long STATS_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Цикл симуляции, снимки которого рисуются */
+    private final SimulationLoop simulation;
+
+    /** Длительность кадра в наносекундах; 0 - частота не ограничена */
+    private final long framePeriodNanos;
+
+    /** Камера, через которую показывается поле */
+    private final Camera camera;
+
+    private final FieldRenderer renderer = new FieldRenderer();
+
+    /** Кадр размером с холст, в котором собирается изображение поля; используется только потоком отрисовки */
+    private BufferedImage frame;
+
+    /** Признак работы потока отрисовки */
+    private volatile boolean running;
+
+    /** Поток отрисовки */
+    private Thread thread;
+
+    private int statsFrames;
+    private long statsStarted;
+    private long statsRenderNanos;
+    private long statsMaxRenderNanos;
+
+    /** Текст показателей за прошлый период; формируется раз в период, а не каждый кадр */
+    private volatile String statsText = "";
+
+    /**
+     * Создаёт холст активной отрисовки.
+     * @param simulation цикл симуляции, снимки которого необходимо рисовать
+     * @param camera     камера, через которую показывается поле
+     * @param maxFps     наибольшая частота кадров; 0 или меньше - без ограничения
+     */
+    public ActiveGameCanvas(SimulationLoop simulation, Camera camera, int maxFps) {
+        this.simulation = simulation;
+        this.camera = camera;
+        this.framePeriodNanos = maxFps > 0 ? TimeUnit.SECONDS.toNanos(1) / maxFps : 0;
+        setIgnoreRepaint(true); // кадры рисует только поток отрисовки
+        setPreferredSize(new Dimension(400, 400));
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(BUFFER_COUNT);
+        startRendering();
+    }
+
+    @Override
+    public void removeNotify() {
+        stopRendering();
+        super.removeNotify();
+    }
+
+    private synchronized void startRendering() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::renderLoop, "robots-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Задаёт слой следов, выводимый под роботами. Вызывается до того, как холст станет отображаемым.
+     * @param trails слой следов или {@code null}, чтобы не показывать следы
+     */
+    public void setTrailLayer(TrailLayer trails) {
+        renderer.setTrails(trails);
+    }
+
+    /**
+     * Останавливает поток отрисовки и дожидается его завершения.
+     */
+    public synchronized void stopRendering() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Основной цикл потока отрисовки: рисует кадр и, если частота ограничена, засыпает до следующего.
+     * При отставании больше чем на кадр расписание сдвигается, а не догоняется.
+     */
+    private void renderLoop() {
+        BufferStrategy strategy = getBufferStrategy();
+        long nextFrame = System.nanoTime();
+        statsStarted = nextFrame;
+        while (running) {
+            long started = System.nanoTime();
+            renderFrame(strategy, started);
+            long finished = System.nanoTime();
+            updateStats(finished, finished - started);
+
+            if (framePeriodNanos > 0) {
+                nextFrame += framePeriodNanos;
+                if (finished - nextFrame > framePeriodNanos) {
+                    nextFrame = finished;
+                }
+                LockSupport.parkNanos(nextFrame - System.nanoTime());
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void renderFrame(BufferStrategy strategy, long now) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        composeFrame(now);
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    g.drawImage(frame, 0, 0, null);
+                    drawStats(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Собирает кадр: фон, препятствия и роботов между двумя последними снимками.
+     * @param now момент кадра по {@link System#nanoTime()}
+     */
+    private void composeFrame(long now) {
+        FleetSnapshot snapshot = simulation.getSnapshot();
+        FleetSnapshot previous = simulation.getPreviousSnapshot();
+        double alpha = 1;
+        long interval = snapshot.getTimeNanos() - previous.getTimeNanos();
+        if (previous.getTick() < snapshot.getTick() && interval > 0) {
+            alpha = Math.min(1, Math.max(0, (double) (now - snapshot.getTimeNanos()) / interval));
+        }
+
+        TrailLayer trails = renderer.getTrails();
+        if (trails != null) {
+            trails.update();
+        }
+        Color background = getBackground();
+        renderer.render(frame, null, camera.copy(), previous, snapshot, alpha,
+                background != null ? background : Color.WHITE);
+    }
+
+    private void updateStats(long now, long renderNanos) {
+        statsFrames++;
+        statsRenderNanos += renderNanos;
+        statsMaxRenderNanos = Math.max(statsMaxRenderNanos, renderNanos);
+        long elapsed = now - statsStarted;
+        if (elapsed < STATS_PERIOD_NANOS) {
+            return;
+        }
+        statsText = String.format(Locale.ROOT, "%.1f fps  frame %.2f ms (max %.2f ms)",
+                statsFrames * 1e9 / elapsed, statsRenderNanos / 1e6 / statsFrames, statsMaxRenderNanos / 1e6);
+        statsFrames = 0;
+        statsRenderNanos = 0;
+        statsMaxRenderNanos = 0;
+        statsStarted = now;
+    }
+
+    private void drawStats(Graphics g) {
+        FontMetrics metrics = g.getFontMetrics();
+        int width = metrics.stringWidth(statsText) + 8;
+        int height = metrics.getHeight() + 4;
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.WHITE);
+        g.drawString(statsText, 4, 2 + metrics.getAscent());
+    }
+
+    /**
+     * @return текст показателей отрисовки за последний период
+     */
+    public String getStatsText() {
+        return statsText;
+    }
+}
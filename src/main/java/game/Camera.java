@@ -0,0 +1,111 @@
+package game;
+
+/**
+ * Камера над игровым полем: масштаб и сдвиг, переводящие мировые координаты в экранные.
+ * Экранная точка (0, 0) соответствует мировой точке ({@link #getOffsetX()}, {@link #getOffsetY()}),
+ * один мировой пиксель занимает {@link #getScale()} экранных.
+ * <p>
+ * Камера изменяется в потоке событий (прокрутка колеса и перетаскивание мышью), а читается
+ * также потоком активной отрисовки, поэтому все методы синхронизированы. Для отрисовки кадра
+ * берётся согласованная копия {@link #copy()}, которую дальше можно читать без блокировок.
+ */
+public final class Camera {
+    /** Наименьший масштаб: поле 50 000 пикселей помещается в окно размером около тысячи */
+    public static final double MIN_SCALE = 0.02;
+
+    /** Наибольший масштаб */
+    public static final double MAX_SCALE = 4;
+
+    private double offsetX;
+    private double offsetY;
+    private double scale = 1;
+
+    /** Номер изменения камеры; растёт при каждом сдвиге и изменении масштаба */
+    private long version;
+
+    /**
+     * @return согласованная копия текущего положения камеры
+     */
+    public synchronized Camera copy() {
+        Camera copy = new Camera();
+        copy.offsetX = offsetX;
+        copy.offsetY = offsetY;
+        copy.scale = scale;
+        copy.version = version;
+        return copy;
+    }
+
+    /** @return мировая координата X левого края экрана */
+    public synchronized double getOffsetX() {
+        return offsetX;
+    }
+
+    /** @return мировая координата Y верхнего края экрана */
+    public synchronized double getOffsetY() {
+        return offsetY;
+    }
+
+    /** @return количество экранных пикселей на один мировой */
+    public synchronized double getScale() {
+        return scale;
+    }
+
+    /** @return номер изменения камеры */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /** @return мировая координата X экранной точки */
+    public synchronized double toWorldX(double screenX) {
+        return offsetX + screenX / scale;
+    }
+
+    /** @return мировая координата Y экранной точки */
+    public synchronized double toWorldY(double screenY) {
+        return offsetY + screenY / scale;
+    }
+
+    /** @return экранная координата X мировой точки */
+    public synchronized double toScreenX(double worldX) {
+        return (worldX - offsetX) * scale;
+    }
+
+    /** @return экранная координата Y мировой точки */
+    public synchronized double toScreenY(double worldY) {
+        return (worldY - offsetY) * scale;
+    }
+
+    /**
+     * Изменяет масштаб так, что мировая точка под заданной экранной остаётся на месте.
+     * Масштаб ограничивается диапазоном [{@link #MIN_SCALE}, {@link #MAX_SCALE}].
+     * @param screenX экранная координата X неподвижной точки
+     * @param screenY экранная координата Y неподвижной точки
+     * @param factor  во сколько раз увеличить масштаб
+     */
+    public synchronized void zoomAt(double screenX, double screenY, double factor) {
+        double newScale = Math.min(MAX_SCALE, Math.max(MIN_SCALE, scale * factor));
+        if (newScale == scale) {
+            return;
+        }
+        double worldX = toWorldX(screenX);
+        double worldY = toWorldY(screenY);
+        scale = newScale;
+        offsetX = worldX - screenX / scale;
+        offsetY = worldY - screenY / scale;
+        version++;
+    }
+
+    /**
+     * Сдвигает изображение поля на заданное число экранных пикселей.
+     * @param screenDx сдвиг по горизонтали
+     * @param screenDy сдвиг по вертикали
+     */
+    public synchronized void panBy(double screenDx, double screenDy) {
+        if (screenDx == 0 && screenDy == 0) {
+            return;
+        }
+        offsetX -= screenDx / scale;
+        offsetY -= screenDy / scale;
+        version++;
+    }
+}
@@ -0,0 +1,409 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Обнаружение и разрешение столкновений роботов.
+ * Тело робота - эллипс {@link RobotFleet#BODY_LENGTH} x {@link RobotFleet#BODY_WIDTH}, которое здесь
+ * приближается капсулой: отрезком вдоль направления движения, скруглённым радиусом половины ширины.
+ * <p>
+ * Широкая фаза - равномерная сетка с ячейкой в длину тела: тела могут пересекаться, только если
+ * их центры лежат в одной или соседних ячейках. В начале прохода роботы раскладываются по ячейкам
+ * сортировкой подсчётом в плотные массивы, после чего каждая пара соседних ячеек просматривается
+ * один раз (ячейка с собой и с четырьмя соседями "вперёд"). Так проверяются только близкие пары,
+ * а не все O(n²), и обход идёт по непрерывной памяти. Если роботы занимают компактную область,
+ * ячейки нумеруются построчно, и соседи из следующей строки лежат одним непрерывным диапазоном;
+ * для сильно разбросанных роботов ячейки хешируются в корзины.
+ * <p>
+ * Узкая фаза находит ближайшие точки осевых отрезков двух капсул. Пересекающиеся роботы раздвигаются
+ * поровну вдоль нормали контакта, а робот, у которого сосед оказался впереди, дополнительно
+ * смещается вбок, объезжая его. Поворот здесь не подходит: шаг движения тут же развернул бы
+ * робота обратно к цели, и пара застряла бы, поворачиваясь на месте.
+ * <p>
+ * Узкая фаза сдвигает копии положений в отсортированных массивах, поэтому следующая пара
+ * с тем же роботом видит его уже сдвинутым, а обход остаётся в непрерывной памяти. Накопленные
+ * сдвиги применяются к парку один раз в конце прохода.
+ * <p>
+ * Проход выполняется последовательно в фиксированном порядке, поэтому его результат детерминирован
+ * и не зависит от уровня параллелизма шага движения.
+ */
+public class CollisionResolver {
+    /** Радиус скругления капсулы */
+    private static final double RADIUS = RobotFleet.BODY_WIDTH / 2;
+
+    /** Половина длины осевого отрезка капсулы */
+    private static final double HALF_SEGMENT = RobotFleet.BODY_LENGTH / 2 - RADIUS;
+
+    /** Расстояние между центрами, начиная с которого тела гарантированно не пересекаются */
+    private static final double BROAD_PHASE_RADIUS = RobotFleet.BODY_LENGTH;
+
+    /** Боковой сдвиг робота, уступающего дорогу соседу впереди */
+    private static final double SIDESTEP = 1.0;
+
+    /**
+     * Количество направлений (степень двойки), на которые квантуется ось капсулы. Сдвиг конца
+     * оси при квантовании - сотые доли пикселя, зато косинус и синус направления берутся
+     * из таблицы, а не вычисляются для каждого робота на каждом проходе
+     */
+    private static final int AXIS_BUCKETS = 4096;
+
+    private static final double[] AXIS_COS = new double[AXIS_BUCKETS];
+    private static final double[] AXIS_SIN = new double[AXIS_BUCKETS];
+    static {
+        for (int bucket = 0; bucket < AXIS_BUCKETS; bucket++) {
+            double direction = bucket * 2 * Math.PI / AXIS_BUCKETS;
+            AXIS_COS[bucket] = Math.cos(direction);
+            AXIS_SIN[bucket] = Math.sin(direction);
+        }
+    }
+
+    /** Во сколько раз ячеек построчной сетки может быть больше, чем роботов */
+    private static final int DENSE_CELLS_PER_ROBOT = 16;
+
+    /** Соседние ячейки "вперёд": вместе с самой ячейкой покрывают каждую пару соседей ровно один раз */
+    private static final int[] FORWARD_DX = {1, -1, 0, 1};
+    private static final int[] FORWARD_DY = {0, 1, 1, 1};
+
+    /** Начало диапазона каждой ячейки (или корзины) в отсортированных массивах */
+    private int[] slotStart = new int[2];
+
+    /** Количество используемых ячеек (или корзин) */
+    private int slots;
+
+    /**
+     * Ширина строки построчной сетки с пустыми столбцами по краям
+     * или 0, если ячейки хешируются в корзины.
+     */
+    private int rowStride;
+
+    /** Маска номера корзины в режиме хеширования */
+    private int bucketMask;
+
+    /** Ячейка и её номер для каждого робота */
+    private int[] cellX = new int[0];
+    private int[] cellY = new int[0];
+    private int[] slot = new int[0];
+
+    /** Роботы, отсортированные по ячейкам, и копии их ячеек и координат */
+    private int[] sortedRobot = new int[0];
+    private int[] sortedCellX = new int[0];
+    private int[] sortedCellY = new int[0];
+    private double[] sortedX = new double[0];
+    private double[] sortedY = new double[0];
+
+    /** Направление оси капсулы робота в таблицах {@link #AXIS_COS} и {@link #AXIS_SIN} */
+    private int[] sortedAxis = new int[0];
+
+    /** Накопленный за проход сдвиг робота */
+    private double[] sortedPushX = new double[0];
+    private double[] sortedPushY = new double[0];
+
+    /** Количество контактов, разрешённых на последнем проходе */
+    private int lastContacts;
+
+    /**
+     * Раздвигает пересекающихся роботов и уводит их в стороны друг от друга.
+     * Если что-то сдвинулось, пространственный индекс модели обновляется.
+     * @param fleet парк роботов
+     * @param index пространственный индекс этого парка
+     * @return количество обнаруженных контактов
+     */
+    public int resolve(RobotFleet fleet, SpatialGrid index) {
+        int count = fleet.size();
+        buildGrid(fleet, count);
+
+        int contacts = rowStride > 0 ? resolveRows() : resolveBuckets();
+        if (contacts > 0) {
+            applyPushes(fleet, count);
+            index.update();
+        }
+        lastContacts = contacts;
+        return contacts;
+    }
+
+    /** @return количество контактов, разрешённых на последнем проходе */
+    public int getLastContacts() {
+        return lastContacts;
+    }
+
+    /**
+     * Обход построчной сетки: соседи справа - следующая ячейка, соседи снизу - три подряд идущие
+     * ячейки следующей строки. Пустые столбцы по краям не дают строкам "склеиться".
+     */
+    private int resolveRows() {
+        int contacts = 0;
+        int stride = rowStride;
+        for (int c = stride; c < slots - stride; c++) {
+            int to = slotStart[c + 1];
+            int rightTo = slotStart[c + 2];
+            int belowFrom = slotStart[c + stride - 1];
+            int belowTo = slotStart[c + stride + 2];
+            for (int k = slotStart[c]; k < to; k++) {
+                for (int l = k + 1; l < rightTo; l++) {
+                    contacts += check(k, l);
+                }
+                for (int l = belowFrom; l < belowTo; l++) {
+                    contacts += check(k, l);
+                }
+            }
+        }
+        return contacts;
+    }
+
+    /**
+     * Обход хешированных корзин: в корзине могут оказаться роботы разных ячеек,
+     * поэтому пары отбираются по совпадению ячеек.
+     */
+    private int resolveBuckets() {
+        int contacts = 0;
+        for (int b = 0; b < slots; b++) {
+            int to = slotStart[b + 1];
+            for (int k = slotStart[b]; k < to; k++) {
+                int cx = sortedCellX[k];
+                int cy = sortedCellY[k];
+                for (int l = k + 1; l < to; l++) {
+                    if (sortedCellX[l] == cx && sortedCellY[l] == cy) {
+                        contacts += check(k, l);
+                    }
+                }
+                for (int n = 0; n < FORWARD_DX.length; n++) {
+                    int nx = cx + FORWARD_DX[n];
+                    int ny = cy + FORWARD_DY[n];
+                    int neighbour = bucketOf(nx, ny);
+                    int neighbourTo = slotStart[neighbour + 1];
+                    for (int l = slotStart[neighbour]; l < neighbourTo; l++) {
+                        if (sortedCellX[l] == nx && sortedCellY[l] == ny) {
+                            contacts += check(k, l);
+                        }
+                    }
+                }
+            }
+        }
+        return contacts;
+    }
+
+    /**
+     * Раскладывает роботов по ячейкам сортировкой подсчётом.
+     * Выбирает построчную сетку, если область, занятая роботами, невелика, иначе хеширование.
+     */
+    private void buildGrid(RobotFleet fleet, int count) {
+        ensureCapacity(count);
+
+        double inverseCellSize = 1 / BROAD_PHASE_RADIUS;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int cx = SpatialGrid.floor(fleet.getX(i) * inverseCellSize);
+            int cy = SpatialGrid.floor(fleet.getY(i) * inverseCellSize);
+            cellX[i] = cx;
+            cellY[i] = cy;
+            minX = Math.min(minX, cx);
+            minY = Math.min(minY, cy);
+            maxX = Math.max(maxX, cx);
+            maxY = Math.max(maxY, cy);
+        }
+
+        long stride = (long) maxX - minX + 3;
+        long denseSlots = stride * ((long) maxY - minY + 3);
+        if (count > 0 && denseSlots <= Math.max(1024, (long) count * DENSE_CELLS_PER_ROBOT)) {
+            rowStride = (int) stride;
+            resetSlots((int) denseSlots);
+            for (int i = 0; i < count; i++) {
+                slot[i] = (cellY[i] - minY + 1) * rowStride + (cellX[i] - minX + 1);
+            }
+        } else {
+            rowStride = 0;
+            int buckets = Integer.highestOneBit(Math.max(16, count * 2 - 1)) << 1;
+            bucketMask = buckets - 1;
+            resetSlots(buckets);
+            for (int i = 0; i < count; i++) {
+                slot[i] = bucketOf(cellX[i], cellY[i]);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            slotStart[slot[i] + 1]++;
+        }
+        for (int c = 0; c < slots; c++) {
+            slotStart[c + 1] += slotStart[c];
+        }
+        // раскладываем, сдвигая начала ячеек, и затем возвращаем их на место
+        for (int i = 0; i < count; i++) {
+            int position = slotStart[slot[i]]++;
+            sortedRobot[position] = i;
+            sortedX[position] = fleet.getX(i);
+            sortedY[position] = fleet.getY(i);
+            sortedAxis[position] = axisBucket(fleet.getDirection(i));
+            sortedPushX[position] = 0;
+            sortedPushY[position] = 0;
+        }
+        if (rowStride == 0) {
+            // ячейки нужны только обходу корзин, чтобы отличать роботов разных ячеек в одной корзине
+            for (int k = 0; k < count; k++) {
+                sortedCellX[k] = cellX[sortedRobot[k]];
+                sortedCellY[k] = cellY[sortedRobot[k]];
+            }
+        }
+        for (int c = slots; c > 0; c--) {
+            slotStart[c] = slotStart[c - 1];
+        }
+        slotStart[0] = 0;
+        slotStart[slots + 1] = count;
+    }
+
+    private void resetSlots(int required) {
+        slots = required;
+        // один лишний элемент позволяет обходу строк заглядывать на ячейку за последней
+        if (slotStart.length < required + 2) {
+            slotStart = new int[Math.max(required + 2, slotStart.length * 2)];
+        } else {
+            Arrays.fill(slotStart, 0, required + 2, 0);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (cellX.length >= count) {
+            return;
+        }
+        int capacity = Math.max(count, cellX.length * 2);
+        cellX = new int[capacity];
+        cellY = new int[capacity];
+        slot = new int[capacity];
+        sortedRobot = new int[capacity];
+        sortedCellX = new int[capacity];
+        sortedCellY = new int[capacity];
+        sortedX = new double[capacity];
+        sortedY = new double[capacity];
+        sortedAxis = new int[capacity];
+        sortedPushX = new double[capacity];
+        sortedPushY = new double[capacity];
+    }
+
+    /**
+     * Проверяет пару роботов из отсортированных массивов: сначала по расстоянию между центрами,
+     * затем точно.
+     * @return 1, если роботы пересекались, иначе 0
+     */
+    private int check(int k, int l) {
+        double dx = sortedX[k] - sortedX[l];
+        double dy = sortedY[k] - sortedY[l];
+        if (dx * dx + dy * dy >= BROAD_PHASE_RADIUS * BROAD_PHASE_RADIUS) {
+            return 0;
+        }
+        return separate(k, l) ? 1 : 0;
+    }
+
+    private int bucketOf(int cx, int cy) {
+        int hash = cx * 73856093 ^ cy * 19349663;
+        return (hash ^ (hash >>> 16)) & bucketMask;
+    }
+
+    /**
+     * Узкая фаза для пары роботов из отсортированных массивов: если капсулы пересекаются,
+     * раздвигает их.
+     * @return {@code true}, если роботы пересекались
+     */
+    private boolean separate(int k, int l) {
+        double xi = sortedX[k];
+        double yi = sortedY[k];
+        double xj = sortedX[l];
+        double yj = sortedY[l];
+        double cosI = AXIS_COS[sortedAxis[k]];
+        double sinI = AXIS_SIN[sortedAxis[k]];
+        double cosJ = AXIS_COS[sortedAxis[l]];
+        double sinJ = AXIS_SIN[sortedAxis[l]];
+
+        // ближайшие точки осевых отрезков: p = ci + s * ui, q = cj + t * uj, s, t в [-h; h]
+        double rx = xi - xj;
+        double ry = yi - yj;
+        double b = cosI * cosJ + sinI * sinJ;
+        double c = cosI * rx + sinI * ry;
+        double f = cosJ * rx + sinJ * ry;
+        double denominator = 1 - b * b;
+        double s = denominator > 1e-9 ? clamp((b * f - c) / denominator) : 0;
+        double t = clamp(b * s + f);
+        s = clamp(b * t - c);
+
+        double nx = (xi + s * cosI) - (xj + t * cosJ);
+        double ny = (yi + s * sinI) - (yj + t * sinJ);
+        double distance = Math.sqrt(nx * nx + ny * ny);
+        double penetration = 2 * RADIUS - distance;
+        if (penetration <= 0) {
+            return false;
+        }
+
+        if (distance > 1e-9) {
+            double inverse = 1 / distance;
+            nx *= inverse;
+            ny *= inverse;
+        } else {
+            // оси совпадают: раздвигаем поперёк направления первого робота
+            nx = -sinI;
+            ny = cosI;
+        }
+        double push = penetration / 2;
+        move(k, nx * push, ny * push);
+        move(l, -nx * push, -ny * push);
+
+        giveWay(k, cosI, sinI, -nx, -ny);
+        giveWay(l, cosJ, sinJ, nx, ny);
+        return true;
+    }
+
+    /**
+     * Сдвигает копию положения робота и запоминает сдвиг для парка.
+     * @param k место робота в отсортированных массивах
+     */
+    private void move(int k, double dx, double dy) {
+        sortedX[k] += dx;
+        sortedY[k] += dy;
+        sortedPushX[k] += dx;
+        sortedPushY[k] += dy;
+    }
+
+    /**
+     * Применяет к парку сдвиги, накопленные за проход.
+     */
+    private void applyPushes(RobotFleet fleet, int count) {
+        for (int k = 0; k < count; k++) {
+            if (sortedPushX[k] != 0 || sortedPushY[k] != 0) {
+                fleet.moveBy(sortedRobot[k], sortedPushX[k], sortedPushY[k]);
+            }
+        }
+    }
+
+    /**
+     * Квантует направление для таблиц оси капсулы.
+     * @param direction направление в радианах, не обязательно нормализованное
+     * @return индекс от 0 до {@link #AXIS_BUCKETS} - 1
+     */
+    private static int axisBucket(double direction) {
+        // количество корзин - степень двойки, поэтому маска даёт остаток и для отрицательных углов
+        return SpatialGrid.floor(direction * (AXIS_BUCKETS / (2 * Math.PI)) + 0.5) & (AXIS_BUCKETS - 1);
+    }
+
+    /**
+     * Смещает робота вбок от соседа, если тот находится впереди по направлению движения.
+     * @param k       место робота в отсортированных массивах
+     * @param towardX направление на соседа, X
+     * @param towardY направление на соседа, Y
+     */
+    private void giveWay(int k, double cos, double sin, double towardX, double towardY) {
+        if (cos * towardX + sin * towardY <= 0) {
+            return; // сосед сзади или сбоку, уступает он
+        }
+        double side = cos * towardY - sin * towardX;
+        double step = side > 0 ? -SIDESTEP : SIDESTEP;
+        move(k, -sin * step, cos * step);
+    }
+
+    /**
+     * Ограничивает параметр точки отрезком оси. Сравнения вместо {@link Math#min(double, double)}
+     * и {@link Math#max(double, double)}, которые заметно медленнее из-за особых случаев NaN и -0.0.
+     */
+    private static double clamp(double value) {
+        return value < -HALF_SEGMENT ? -HALF_SEGMENT : value > HALF_SEGMENT ? HALF_SEGMENT : value;
+    }
+}
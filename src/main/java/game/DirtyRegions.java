@@ -0,0 +1,151 @@
+package game;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Накопитель повреждённых областей панели между кадрами.
+ * Панель делится на квадратные плитки {@link #TILE_SIZE}; прямоугольник, добавленный через
+ * {@link #add(int, int, int, int)}, отмечает все плитки, которые он задевает. Отмеченные плитки
+ * затем сливаются в небольшое число прямоугольников для перерисовки. Если повреждена большая часть
+ * панели или прямоугольников получается слишком много, накопитель сообщает, что выгоднее
+ * перерисовать панель целиком.
+ * <p>
+ * Массив плиток переиспользуется между кадрами. Экземпляр не потокобезопасен.
+ */
+final class DirtyRegions {
+    /** Сторона плитки в пикселях */
+    static final int TILE_SIZE = 32;
+
+    /** Наибольшее количество прямоугольников, которые перерисовываются по отдельности */
+    static final int MAX_REGIONS = 16;
+
+    private boolean[] tiles = new boolean[0];
+    private int columns;
+    private int rows;
+    private int width;
+    private int height;
+    private int dirtyTiles;
+    private boolean full;
+
+    /**
+     * Очищает накопитель для панели заданного размера.
+     * @param width  ширина панели
+     * @param height высота панели
+     */
+    void reset(int width, int height) {
+        this.width = width;
+        this.height = height;
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int count = columns * rows;
+        if (tiles.length < count) {
+            tiles = new boolean[count];
+        } else {
+            Arrays.fill(tiles, 0, count, false);
+        }
+        dirtyTiles = 0;
+        full = false;
+    }
+
+    /**
+     * Отмечает повреждённой всю панель.
+     */
+    void markAll() {
+        full = true;
+    }
+
+    /**
+     * @return {@code true}, если панель нужно перерисовать целиком
+     */
+    boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return {@code true}, если ни одна область не повреждена
+     */
+    boolean isEmpty() {
+        return !full && dirtyTiles == 0;
+    }
+
+    /**
+     * Отмечает повреждённым прямоугольник; части за пределами панели отбрасываются.
+     * Когда повреждено больше половины плиток, панель отмечается повреждённой целиком.
+     */
+    void add(int x, int y, int w, int h) {
+        if (full || x + w <= 0 || y + h <= 0) {
+            return;
+        }
+        int minColumn = Math.max(0, x / TILE_SIZE);
+        int minRow = Math.max(0, y / TILE_SIZE);
+        int maxColumn = Math.min(columns - 1, (x + w - 1) / TILE_SIZE);
+        int maxRow = Math.min(rows - 1, (y + h - 1) / TILE_SIZE);
+        for (int row = minRow; row <= maxRow; row++) {
+            int offset = row * columns;
+            for (int column = minColumn; column <= maxColumn; column++) {
+                if (!tiles[offset + column]) {
+                    tiles[offset + column] = true;
+                    dirtyTiles++;
+                }
+            }
+        }
+        if (dirtyTiles * 2 > columns * rows) {
+            full = true;
+        }
+    }
+
+    /**
+     * Сливает повреждённые плитки в прямоугольники: подряд идущие плитки строки образуют отрезок,
+     * а совпадающие отрезки соседних строк - один прямоугольник.
+     * @return прямоугольники для перерисовки или {@code null}, если панель нужно перерисовать целиком
+     */
+    List<Rectangle> toRectangles() {
+        if (full) {
+            return null;
+        }
+        List<Rectangle> regions = new ArrayList<>();
+        List<Rectangle> open = new ArrayList<>();
+        List<Rectangle> next = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int offset = row * columns;
+            int column = 0;
+            while (column < columns) {
+                if (!tiles[offset + column]) {
+                    column++;
+                    continue;
+                }
+                int start = column;
+                while (column < columns && tiles[offset + column]) {
+                    column++;
+                }
+                int x = start * TILE_SIZE;
+                int w = Math.min(width, column * TILE_SIZE) - x;
+                int h = Math.min(height, (row + 1) * TILE_SIZE) - row * TILE_SIZE;
+                Rectangle extended = null;
+                for (Rectangle candidate : open) {
+                    if (candidate.x == x && candidate.width == w) {
+                        candidate.height += h;
+                        extended = candidate;
+                        break;
+                    }
+                }
+                if (extended == null) {
+                    if (regions.size() == MAX_REGIONS) {
+                        return null;
+                    }
+                    extended = new Rectangle(x, row * TILE_SIZE, w, h);
+                    regions.add(extended);
+                }
+                next.add(extended);
+            }
+            List<Rectangle> swap = open;
+            open = next;
+            next = swap;
+            next.clear();
+        }
+        return regions;
+    }
+}
@@ -0,0 +1,250 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Сборка кадра игрового поля через камеру: фон, препятствия и роботы с целями.
+ * Используется и пассивной ({@link GameVisualizer}), и активной ({@link ActiveGameCanvas}) отрисовкой.
+ * <p>
+ * Уровень детализации выбирается по масштабу камеры:
+ * <ul>
+ *     <li>от {@link #SPRITE_MIN_SCALE} - изображения роботов {@link RobotSprites} в масштабе камеры;</li>
+ *     <li>от {@link #POINT_MIN_SCALE} - каждый робот и каждая цель одним пикселем;</li>
+ *     <li>мельче - карта плотности по ячейкам {@link SnapshotIndex}: стоимость определяется количеством
+ *     видимых ячеек и пикселей кадра, а не количеством роботов.</li>
+ * </ul>
+ * Во всех режимах просматриваются только ячейки индекса, попадающие в область отсечения.
+ * Слой следов {@link TrailLayer}, если он задан, выводится между препятствиями и роботами.
+ * Экземпляр не потокобезопасен: у каждого компонента отрисовки он свой.
+ */
+final class FieldRenderer {
+    /** Наименьший масштаб, при котором роботы рисуются изображениями */
+    static final double SPRITE_MIN_SCALE = 0.25;
+
+    /** Наименьший масштаб, при котором роботы рисуются отдельными пикселями */
+    static final double POINT_MIN_SCALE = 0.08;
+
+    private static final int ROBOT_POINT_COLOR = 0x000000;
+    private static final int TARGET_POINT_COLOR = 0x00FF00;
+
+    /** Цвета карты плотности по двоичному логарифму количества роботов в пикселе */
+    private static final int[] HEAT_PALETTE = createHeatPalette(16);
+
+    /** Изображения роботов для текущего масштаба камеры */
+    private RobotSprites sprites = new RobotSprites();
+
+    /** Слой следов или {@code null}, если следы не показываются */
+    private TrailLayer trails;
+
+    /** Количество роботов в каждом пикселе кадра для карты плотности; вне отрисовки заполнен нулями */
+    private int[] density = new int[0];
+
+    private static int[] createHeatPalette(int size) {
+        int[] palette = new int[size];
+        for (int i = 0; i < size; i++) {
+            float share = (float) i / (size - 1);
+            // от синего для одиночных роботов к красному и жёлтому для скоплений
+            palette[i] = Color.HSBtoRGB(0.66f - 0.54f * share, 0.9f, 0.6f + 0.4f * share) & 0xFFFFFF;
+        }
+        return palette;
+    }
+
+    /**
+     * @param scale масштаб камеры
+     * @return {@code true}, если при этом масштабе роботы рисуются изображениями
+     */
+    static boolean drawsSprites(double scale) {
+        return scale >= SPRITE_MIN_SCALE;
+    }
+
+    /**
+     * Возвращает изображения роботов для масштаба, растеризуя их заново при его смене.
+     * @param scale масштаб камеры
+     * @return изображения роботов в этом масштабе
+     */
+    RobotSprites spritesFor(double scale) {
+        if (sprites.getScale() != scale) {
+            sprites = new RobotSprites(scale);
+        }
+        return sprites;
+    }
+
+    /**
+     * Задаёт слой следов, выводимый под роботами.
+     * @param trails слой следов или {@code null}, чтобы не показывать следы
+     */
+    void setTrails(TrailLayer trails) {
+        this.trails = trails;
+    }
+
+    /** @return слой следов или {@code null} */
+    TrailLayer getTrails() {
+        return trails;
+    }
+
+    /**
+     * Собирает область кадра.
+     * @param frame      кадр типа {@link BufferedImage#TYPE_INT_RGB}
+     * @param clip       область кадра, которую нужно перерисовать, или {@code null} для всего кадра
+     * @param camera     согласованная копия камеры
+     * @param previous   предыдущий снимок для интерполяции
+     * @param snapshot   новый снимок
+     * @param alpha      доля пути от предыдущего снимка к новому, от 0 до 1
+     * @param background цвет фона
+     */
+    void render(BufferedImage frame, Rectangle clip, Camera camera, FleetSnapshot previous, FleetSnapshot snapshot,
+                double alpha, Color background) {
+        Rectangle bounds = RobotSprites.clipBounds(frame, clip);
+        if (bounds.isEmpty()) {
+            return;
+        }
+        Graphics2D g = frame.createGraphics();
+        g.setClip(bounds);
+        g.setColor(background);
+        g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        drawObstacles(g, snapshot.getObstacles(), camera, bounds);
+        if (trails != null) {
+            trails.draw(g, camera);
+        }
+        g.dispose();
+
+        double scale = camera.getScale();
+        if (drawsSprites(scale)) {
+            spritesFor(scale).drawFleet(frame, bounds, camera, previous, snapshot, alpha);
+        } else if (scale >= POINT_MIN_SCALE) {
+            drawPoints(frame, bounds, camera, snapshot);
+        } else {
+            drawDensity(frame, bounds, camera, snapshot);
+        }
+    }
+
+    /**
+     * Отрисовывает занятые клетки карты препятствий, попадающие в область перерисовки.
+     */
+    private static void drawObstacles(Graphics g, ObstacleMap obstacles, Camera camera, Rectangle bounds) {
+        if (obstacles.isEmpty()) {
+            return;
+        }
+        double cellSize = obstacles.getCellSize();
+        double scale = camera.getScale();
+        double offsetX = camera.getOffsetX();
+        double offsetY = camera.getOffsetY();
+        int minColumn = Math.max(0, (int) Math.floor(camera.toWorldX(bounds.x) / cellSize));
+        int minRow = Math.max(0, (int) Math.floor(camera.toWorldY(bounds.y) / cellSize));
+        int maxColumn = Math.min(obstacles.getColumns() - 1,
+                (int) Math.floor(camera.toWorldX(bounds.x + bounds.width) / cellSize));
+        int maxRow = Math.min(obstacles.getRows() - 1,
+                (int) Math.floor(camera.toWorldY(bounds.y + bounds.height) / cellSize));
+        g.setColor(Color.GRAY);
+        for (int row = minRow; row <= maxRow; row++) {
+            int top = (int) Math.floor((row * cellSize - offsetY) * scale);
+            int bottom = (int) Math.floor(((row + 1) * cellSize - offsetY) * scale);
+            for (int column = minColumn; column <= maxColumn; column++) {
+                if (obstacles.isBlocked(row * obstacles.getColumns() + column)) {
+                    int left = (int) Math.floor((column * cellSize - offsetX) * scale);
+                    int right = (int) Math.floor(((column + 1) * cellSize - offsetX) * scale);
+                    g.fillRect(left, top, Math.max(1, right - left), Math.max(1, bottom - top));
+                }
+            }
+        }
+    }
+
+    /**
+     * Рисует каждого видимого робота и каждую цель одним пикселем.
+     */
+    private static void drawPoints(BufferedImage frame, Rectangle bounds, Camera camera, FleetSnapshot snapshot) {
+        int[] pixels = RobotSprites.pixelsOf(frame);
+        int width = frame.getWidth();
+        int maxX = bounds.x + bounds.width;
+        int maxY = bounds.y + bounds.height;
+        double scale = camera.getScale();
+        double offsetX = camera.getOffsetX();
+        double offsetY = camera.getOffsetY();
+
+        SnapshotIndex index = snapshot.getIndex();
+        int firstColumn = index.columnOf(camera.toWorldX(bounds.x));
+        int lastColumn = index.columnOf(camera.toWorldX(maxX));
+        int firstRow = index.rowOf(camera.toWorldY(bounds.y));
+        int lastRow = index.rowOf(camera.toWorldY(maxY));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * index.getColumns() + column;
+                for (int position = index.cellStart(cell); position < index.cellEnd(cell); position++) {
+                    int i = index.robotAt(position);
+                    int x = (int) Math.floor((snapshot.getX(i) - offsetX) * scale);
+                    int y = (int) Math.floor((snapshot.getY(i) - offsetY) * scale);
+                    if (x >= bounds.x && x < maxX && y >= bounds.y && y < maxY) {
+                        pixels[y * width + x] = ROBOT_POINT_COLOR;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            int x = (int) Math.floor((snapshot.getTargetX(i) - offsetX) * scale);
+            int y = (int) Math.floor((snapshot.getTargetY(i) - offsetY) * scale);
+            if (x >= bounds.x && x < maxX && y >= bounds.y && y < maxY) {
+                pixels[y * width + x] = TARGET_POINT_COLOR;
+            }
+        }
+    }
+
+    /**
+     * Рисует карту плотности: количество роботов каждой видимой ячейки индекса добавляется
+     * ко всем пикселям, которые занимает ячейка (мелкие ячейки складываются в одном пикселе),
+     * затем пиксели с роботами окрашиваются по палитре.
+     */
+    private void drawDensity(BufferedImage frame, Rectangle bounds, Camera camera, FleetSnapshot snapshot) {
+        int[] pixels = RobotSprites.pixelsOf(frame);
+        int width = frame.getWidth();
+        if (density.length < pixels.length) {
+            density = new int[pixels.length];
+        }
+        int maxX = bounds.x + bounds.width;
+        int maxY = bounds.y + bounds.height;
+        double scale = camera.getScale();
+        double offsetX = camera.getOffsetX();
+        double offsetY = camera.getOffsetY();
+
+        SnapshotIndex index = snapshot.getIndex();
+        int firstColumn = index.columnOf(camera.toWorldX(bounds.x));
+        int lastColumn = index.columnOf(camera.toWorldX(maxX));
+        int firstRow = index.rowOf(camera.toWorldY(bounds.y));
+        int lastRow = index.rowOf(camera.toWorldY(maxY));
+        double cellSize = index.getCellSize();
+        for (int row = firstRow; row <= lastRow; row++) {
+            int top = (int) Math.floor((index.cellTop(row) - offsetY) * scale);
+            int bottom = Math.max(top + 1, (int) Math.floor((index.cellTop(row) + cellSize - offsetY) * scale));
+            top = Math.max(top, bounds.y);
+            bottom = Math.min(bottom, maxY);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * index.getColumns() + column;
+                int count = index.cellEnd(cell) - index.cellStart(cell);
+                if (count == 0 || top >= bottom) {
+                    continue;
+                }
+                int left = (int) Math.floor((index.cellLeft(column) - offsetX) * scale);
+                int right = Math.max(left + 1, (int) Math.floor((index.cellLeft(column) + cellSize - offsetX) * scale));
+                left = Math.max(left, bounds.x);
+                right = Math.min(right, maxX);
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        density[y * width + x] += count;
+                    }
+                }
+            }
+        }
+
+        for (int y = bounds.y; y < maxY; y++) {
+            for (int x = bounds.x; x < maxX; x++) {
+                int pixel = y * width + x;
+                int count = density[pixel];
+                if (count != 0) {
+                    int level = Math.min(HEAT_PALETTE.length - 1, 31 - Integer.numberOfLeadingZeros(count));
+                    pixels[pixel] = HEAT_PALETTE[level];
+                    density[pixel] = 0;
+                }
+            }
+        }
+    }
+}
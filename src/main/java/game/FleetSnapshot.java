@@ -0,0 +1,116 @@
+package game;
+
+/**
+ * Неизменяемый снимок состояния всех роботов на момент окончания шага симуляции.
+ * Публикуется потоком симуляции и читается визуализатором с его собственной частотой кадров,
+ * поэтому отрисовка никогда не обращается к изменяемой модели напрямую.
+ */
+public final class FleetSnapshot {
+    /** Номер шага симуляции, после которого сделан снимок */
+    private final long tick;
+
+    /** Момент публикации снимка по {@link System#nanoTime()} */
+    private final long timeNanos;
+
+    /** Количество роботов в снимке */
+    private final int count;
+
+    private final double[] x;
+    private final double[] y;
+    private final double[] direction;
+    private final double[] targetX;
+    private final double[] targetY;
+
+    /** Копия карты препятствий; общая для снимков, пока карта не меняется */
+    private final ObstacleMap obstacles;
+
+    /** Пространственный индекс для отрисовки; строится при первом обращении */
+    private volatile SnapshotIndex index;
+
+    private FleetSnapshot(long tick, long timeNanos, int count, ObstacleMap obstacles) {
+        this.tick = tick;
+        this.obstacles = obstacles;
+        this.timeNanos = timeNanos;
+        this.count = count;
+        this.x = new double[count];
+        this.y = new double[count];
+        this.direction = new double[count];
+        this.targetX = new double[count];
+        this.targetY = new double[count];
+    }
+
+    /**
+     * Делает снимок текущего состояния модели.
+     * Должен вызываться из потока, который изменяет модель.
+     * @param model     модель игры
+     * @param timeNanos момент снимка по {@link System#nanoTime()}
+     * @return новый снимок
+     */
+    public static FleetSnapshot of(GameModel model, long timeNanos) {
+        RobotFleet fleet = model.getFleet();
+        FleetSnapshot snapshot = new FleetSnapshot(model.getTick(), timeNanos, fleet.size(),
+                model.getObstaclesSnapshot());
+        fleet.copyState(snapshot.x, snapshot.y, snapshot.direction, snapshot.targetX, snapshot.targetY);
+        return snapshot;
+    }
+
+    /** @return номер шага симуляции */
+    public long getTick() {
+        return tick;
+    }
+
+    /** @return момент публикации снимка в наносекундах */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /** @return карта препятствий; изменять её нельзя */
+    public ObstacleMap getObstacles() {
+        return obstacles;
+    }
+
+    /**
+     * Возвращает пространственный индекс роботов снимка, строя его при первом обращении.
+     * Если индекс одновременно запросят несколько потоков, каждый может построить свой
+     * экземпляр; все они одинаковы.
+     * @return индекс роботов по ячейкам
+     */
+    SnapshotIndex getIndex() {
+        SnapshotIndex built = index;
+        if (built == null) {
+            built = new SnapshotIndex(this);
+            index = built;
+        }
+        return built;
+    }
+
+    /** @return количество роботов */
+    public int size() {
+        return count;
+    }
+
+    /** @return координата X робота */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /** @return координата Y робота */
+    public double getY(int index) {
+        return y[index];
+    }
+
+    /** @return направление робота в радианах */
+    public double getDirection(int index) {
+        return direction[index];
+    }
+
+    /** @return координата X цели робота */
+    public double getTargetX(int index) {
+        return targetX[index];
+    }
+
+    /** @return координата Y цели робота */
+    public double getTargetY(int index) {
+        return targetY[index];
+    }
+}
@@ -0,0 +1,182 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Поле направлений к одной целевой клетке карты препятствий.
+ * Строится один раз алгоритмом Дейкстры от цели по восьми направлениям и для каждой свободной клетки
+ * хранит следующую клетку кратчайшего пути к цели. Поэтому одно поле обслуживает любое количество
+ * роботов с общей целью, а шаг робота сводится к чтению одного элемента массива.
+ * <p>
+ * Поле неизменяемо после построения и может читаться из нескольких потоков одновременно.
+ */
+public final class FlowField {
+    /** Признак отсутствия следующей клетки: цель, занятая или недостижимая клетка */
+    public static final int NONE = -1;
+
+    /** Стоимость шага по горизонтали или вертикали */
+    static final int STRAIGHT_COST = 10;
+
+    /** Стоимость шага по диагонали (≈ 10·√2) */
+    static final int DIAGONAL_COST = 14;
+
+    /** Смещения соседей: четыре прямых, затем четыре диагональных */
+    static final int[] NEIGHBOUR_DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    static final int[] NEIGHBOUR_DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    /** Карта, по которой построено поле */
+    private final ObstacleMap map;
+
+    /** Версия карты на момент построения */
+    private final int mapVersion;
+
+    /** Целевая клетка */
+    private final int targetCell;
+
+    /** Следующая клетка пути для каждой клетки карты */
+    private final int[] nextCell;
+
+    /**
+     * Строит поле направлений к клетке карты.
+     * @param map        карта препятствий
+     * @param targetCell номер целевой клетки
+     */
+    public FlowField(ObstacleMap map, int targetCell) {
+        this.map = map;
+        this.mapVersion = map.getVersion();
+        this.targetCell = targetCell;
+        this.nextCell = build(map, targetCell);
+    }
+
+    /**
+     * Алгоритм Дейкстры от цели с бинарной кучей на массивах.
+     * Диагональный шаг разрешён, только если обе прилегающие прямые клетки свободны,
+     * иначе робот срезал бы угол препятствия.
+     */
+    private static int[] build(ObstacleMap map, int target) {
+        int columns = map.getColumns();
+        int rows = map.getRows();
+        int cells = columns * rows;
+        int[] next = new int[cells];
+        Arrays.fill(next, NONE);
+        if (map.isBlocked(target)) {
+            return next;
+        }
+        int[] cost = new int[cells];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[target] = 0;
+
+        // в куче допускаются устаревшие записи, поэтому её размер ограничен числом рёбер
+        int[] heapCell = new int[cells * 4 + 1];
+        int[] heapCost = new int[heapCell.length];
+        int size = 0;
+        heapCell[size] = target;
+        heapCost[size++] = 0;
+
+        while (size > 0) {
+            int cell = heapCell[0];
+            int cellCost = heapCost[0];
+            size--;
+            siftDown(heapCell, heapCost, size, heapCell[size], heapCost[size]);
+            if (cellCost > cost[cell]) {
+                continue;
+            }
+            int cx = cell % columns;
+            int cy = cell / columns;
+            for (int k = 0; k < NEIGHBOUR_DX.length; k++) {
+                int nx = cx + NEIGHBOUR_DX[k];
+                int ny = cy + NEIGHBOUR_DY[k];
+                if (nx < 0 || ny < 0 || nx >= columns || ny >= rows) {
+                    continue;
+                }
+                int neighbour = ny * columns + nx;
+                if (map.isBlocked(neighbour)) {
+                    continue;
+                }
+                boolean diagonal = k >= 4;
+                if (diagonal && (map.isBlocked(cy * columns + nx) || map.isBlocked(ny * columns + cx))) {
+                    continue;
+                }
+                int newCost = cellCost + (diagonal ? DIAGONAL_COST : STRAIGHT_COST);
+                if (newCost < cost[neighbour]) {
+                    cost[neighbour] = newCost;
+                    next[neighbour] = cell;
+                    if (size == heapCell.length) {
+                        heapCell = Arrays.copyOf(heapCell, size * 2);
+                        heapCost = Arrays.copyOf(heapCost, size * 2);
+                    }
+                    siftUp(heapCell, heapCost, size++, neighbour, newCost);
+                }
+            }
+        }
+        return next;
+    }
+
+    static void siftUp(int[] cells, int[] costs, int position, int cell, int cost) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (costs[parent] <= cost) {
+                break;
+            }
+            cells[position] = cells[parent];
+            costs[position] = costs[parent];
+            position = parent;
+        }
+        cells[position] = cell;
+        costs[position] = cost;
+    }
+
+    static void siftDown(int[] cells, int[] costs, int size, int cell, int cost) {
+        int position = 0;
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && costs[right] < costs[child]) {
+                child = right;
+            }
+            if (cost <= costs[child]) {
+                break;
+            }
+            cells[position] = cells[child];
+            costs[position] = costs[child];
+            position = child;
+        }
+        if (size > 0) {
+            cells[position] = cell;
+            costs[position] = cost;
+        }
+    }
+
+    /**
+     * Возвращает клетку, в которую следует двигаться из точки.
+     * @param x координата X точки
+     * @param y координата Y точки
+     * @return номер следующей клетки или {@link #NONE}, если точка вне карты, уже в целевой клетке,
+     * в занятой клетке или цель из неё недостижима; тогда робот едет к цели напрямую
+     */
+    public int nextCell(double x, double y) {
+        int cell = map.cellAt(x, y);
+        return cell < 0 ? NONE : nextCell[cell];
+    }
+
+    /**
+     * Проверяет, что поле построено к клетке, содержащей точку, по текущей версии карты.
+     * @param x координата X цели
+     * @param y координата Y цели
+     * @return {@code true}, если поле можно использовать для этой цели
+     */
+    public boolean isValidFor(double x, double y) {
+        return mapVersion == map.getVersion() && targetCell == map.cellAt(x, y);
+    }
+
+    /** @return номер целевой клетки */
+    public int getTargetCell() {
+        return targetCell;
+    }
+
+    /** @return версия карты, по которой построено поле */
+    public int getMapVersion() {
+        return mapVersion;
+    }
+}
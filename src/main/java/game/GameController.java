@@ -1,43 +1,114 @@
 package game;
 
-import javax.swing.*;
+import javax.swing.SwingUtilities;
+import java.awt.Component;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 
 /**
  * Контроллер игры, реализующий шаблон MVC.
- * Обрабатывает события мыши от пользователя и передаёт координаты цели в модель.
- * Также инициализирует таймер, который периодически обновляет положение робота в модели.
+ * Обрабатывает события мыши от пользователя: щелчок по роботу выбирает его,
+ * щелчок по свободному месту задаёт выбранному роботу новую цель,
+ * щелчок правой кнопкой ставит или убирает препятствие. Колесо мыши изменяет масштаб
+ * камеры вокруг курсора, перетаскивание левой или средней кнопкой сдвигает поле.
+ * Экранные координаты переводятся в мировые через {@link Camera}.
+ * Изменения модели передаются в поток симуляции через {@link SimulationLoop#submit(Runnable)}.
  */
 public class GameController extends MouseAdapter {
 
+    /** Изменение масштаба за одно деление колеса мыши */
+    private static final double ZOOM_STEP = 1.25;
+
     /** Ссылка на модель, содержащую логику движения робота. */
     private final GameModel model;
 
+    /** Цикл симуляции, в потоке которого изменяется модель. */
+    private final SimulationLoop simulation;
+
+    /** Камера, через которую показывается поле. */
+    private final Camera camera;
+
+    /** Индекс выбранного робота; изменяется только в потоке симуляции. */
+    private volatile int selectedRobot = GameModel.PRIMARY_ROBOT;
+
+    /** Последняя точка перетаскивания поля. */
+    private int dragX;
+    private int dragY;
+
     /**
      * Создаёт контроллер, привязывает его к модели и представлению.
-     * Регистрирует слушатель мыши во view и запускает таймер, обновляющий положение робота.
+     * Регистрирует слушатели мыши, её движения и колеса во view.
      * @param model модель игры, управляющая логикой перемещения робота
+     * @param simulation цикл симуляции, продвигающий модель
      * @param view визуальный компонент, на который добавляется слушатель мыши
+     * @param camera камера, через которую view показывает поле
      */
-    public GameController(GameModel model, GameVisualizer view) {
+    public GameController(GameModel model, SimulationLoop simulation, Component view, Camera camera) {
         this.model = model;
+        this.simulation = simulation;
+        this.camera = camera;
         view.addMouseListener(this);
-
-        // Таймер вызывает обновление положения робота каждые 50 миллисекунд
-        Timer timer = new Timer(50, e -> {
-            model.updateRobotPosition();
-        });
-        timer.start();
+        view.addMouseMotionListener(this);
+        view.addMouseWheelListener(this);
     }
 
     /**
      * Обрабатывает щелчок мыши по игровому полю.
-     * Устанавливает новую цель для робота в координаты щелчка.
+     * Если под курсором есть робот, он становится выбранным, иначе выбранный робот
+     * получает новую цель в координатах щелчка. Щелчок правой кнопкой переключает
+     * препятствие в клетке под курсором.
      * @param e объект события мыши, содержащий координаты щелчка
      */
     @Override
     public void mouseClicked(MouseEvent e) {
-        model.setTarget(e.getX(), e.getY());
+        double x = camera.toWorldX(e.getX());
+        double y = camera.toWorldY(e.getY());
+        if (SwingUtilities.isRightMouseButton(e)) {
+            simulation.submit(() -> model.toggleObstacle(x, y));
+            return;
+        }
+        simulation.submit(() -> {
+            int hit = model.robotAt(x, y);
+            if (hit >= 0) {
+                selectedRobot = hit;
+            } else {
+                model.setTarget(selectedRobot, (int) x, (int) y);
+            }
+        });
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        dragX = e.getX();
+        dragY = e.getY();
+    }
+
+    /**
+     * Сдвигает поле вслед за курсором при перетаскивании левой или средней кнопкой.
+     * @param e объект события мыши
+     */
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        if (SwingUtilities.isRightMouseButton(e)) {
+            return;
+        }
+        camera.panBy(e.getX() - dragX, e.getY() - dragY);
+        dragX = e.getX();
+        dragY = e.getY();
+    }
+
+    /**
+     * Изменяет масштаб вокруг курсора: прокрутка от себя увеличивает поле.
+     * @param e объект события колеса мыши
+     */
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        camera.zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+    }
+
+    /** @return индекс выбранного робота */
+    public int getSelectedRobot() {
+        return selectedRobot;
     }
 }
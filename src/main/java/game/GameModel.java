@@ -2,34 +2,97 @@ package game;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
- * Модель игры, представляющая робота и его поведение.
- * Содержит текущие координаты, направление движения и координаты цели.
- * Реализует механику движения робота к цели и уведомляет слушателей об изменении состояния.
+ * Модель игры, представляющая парк роботов и их поведение.
+ * Состояние всех роботов хранится в {@link RobotFleet}; методы без индекса робота
+ * (координаты, направление, цель) являются представлением робота с индексом 0.
+ * Реализует механику движения роботов к цели и уведомляет слушателей об изменении состояния.
  * Является частью архитектуры MVC как "Model".
  */
 public class GameModel {
-    /** Текущая координата X робота */
-    private double x = 100;
+    /** Индекс робота, которым управляет одиночный API модели */
+    public static final int PRIMARY_ROBOT = 0;
 
-    /** Текущая координата Y робота */
-    private double y = 100;
+    /** Флаг изменения: сдвинулся основной робот */
+    public static final int POSITION_CHANGED = 1;
 
-    /** Текущее направление движения робота в радианах */
-    private double direction = 0;
+    /** Флаг изменения: повернулся основной робот */
+    public static final int DIRECTION_CHANGED = 1 << 1;
 
-    /** Координата X цели */
-    private double targetX = 100;
+    /** Флаг изменения: у основного робота новая цель */
+    public static final int TARGET_CHANGED = 1 << 2;
 
-    /** Координата Y цели */
-    private double targetY = 100;
+    /** Флаг изменения: повернулся или сдвинулся хотя бы один робот парка */
+    public static final int FLEET_CHANGED = 1 << 3;
+
+    /** Флаг изменения: изменилась карта препятствий */
+    public static final int OBSTACLES_CHANGED = 1 << 4;
+
+    /** Ширина поля, покрытого картой препятствий */
+    public static final double FIELD_WIDTH = 2000;
+
+    /** Высота поля, покрытого картой препятствий */
+    public static final double FIELD_HEIGHT = 2000;
+
+    /** Сторона клетки карты препятствий */
+    public static final double OBSTACLE_CELL_SIZE = 20;
+
+    /** Пустой массив слушателей */
+    private static final ModelChangeListener[] NO_LISTENERS = new ModelChangeListener[0];
+
+    /** Состояние всех роботов в виде примитивных массивов */
+    private final RobotFleet fleet = new RobotFleet();
+
+    /** Пространственный индекс роботов, обновляемый после каждого шага */
+    private final SpatialGrid spatialIndex;
+
+    /** Статические препятствия на поле */
+    private final ObstacleMap obstacles = new ObstacleMap(FIELD_WIDTH, FIELD_HEIGHT, OBSTACLE_CELL_SIZE);
+
+    /** Копия карты препятствий для снимков; пересоздаётся при смене версии карты */
+    private ObstacleMap obstaclesCopy = obstacles.copy();
+
+    /** Разрешение столкновений; {@code null}, если роботы проходят друг сквозь друга */
+    private CollisionResolver collisionResolver;
+
+    /** Параллельный шаг симуляции; {@code null}, если роботы продвигаются в одном потоке */
+    private ParallelStepper parallelStepper;
+
+    /** Количество выполненных шагов симуляции */
+    private long tick;
+
+    /** Запись действий пользователя; {@code null}, если действия не записываются */
+    private InputRecorder inputRecorder;
 
     /** Механизм поддержки слушателей изменения свойств */
     private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 
+    /**
+     * Слушатели объединённых уведомлений. Массив заменяется целиком при подписке,
+     * поэтому рассылка уведомлений обходит его без блокировок и итераторов.
+     */
+    private volatile ModelChangeListener[] changeListeners = NO_LISTENERS;
+
+    /** Изменения, накопленные между шагами и ещё не разосланные слушателям */
+    private int pendingChanges;
+
+    /**
+     * Создаёт модель с одним роботом в точке (100, 100), направленным вдоль оси X.
+     */
+    public GameModel() {
+        fleet.addRobot(100, 100, 0);
+        spatialIndex = new SpatialGrid(fleet, RobotFleet.BODY_LENGTH);
+        fleet.setPathPlanner(new PathPlanner(obstacles));
+    }
+
     /**
      * Регистрирует слушателя, который будет уведомляться об изменениях свойств модели.
+     * Каждое событие создаёт объекты, поэтому при высокой частоте шагов
+     * предпочтительнее {@link #addModelChangeListener(ModelChangeListener)}.
      * @param listener слушатель, реализующий {@link PropertyChangeListener}
      */
     public void addPropertyChangeListener(PropertyChangeListener listener) {
@@ -37,97 +100,356 @@ public class GameModel {
     }
 
     /**
-     * Обновляет положение робота, приближая его к текущей цели.
-     * Если робот близко к цели, он останавливается. Иначе либо поворачивается в нужную сторону,
-     * либо двигается вперёд по направлению.
-     * После обновления координат оповещает слушателей об изменении позиции.
+     * Регистрирует слушателя, получающего одно объединённое уведомление на каждый шаг симуляции.
+     * @param listener слушатель изменений модели
      */
-    public void updateRobotPosition() {
-        double distance = distanceToTarget();
-        if (distance < 0.5) {
-            return; // слишком близко к цели, движение не требуется
+    public synchronized void addModelChangeListener(ModelChangeListener listener) {
+        ModelChangeListener[] current = changeListeners;
+        ModelChangeListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        changeListeners = updated;
+    }
+
+    /**
+     * Отменяет регистрацию слушателя объединённых уведомлений.
+     * @param listener слушатель изменений модели
+     */
+    public synchronized void removeModelChangeListener(ModelChangeListener listener) {
+        ModelChangeListener[] current = changeListeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                ModelChangeListener[] updated = new ModelChangeListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                changeListeners = current.length == 1 ? NO_LISTENERS : updated;
+                return;
+            }
         }
+    }
 
-        double oldX = x;
-        double oldY = y;
+    /**
+     * Добавляет в модель нового робота и учитывает его в пространственном индексе.
+     * Роботов следует добавлять через модель, а не напрямую в {@link #getFleet()}, иначе
+     * индекс не знает о них до следующего шага. Добавление стоит O(1) в среднем.
+     * @param x         начальная координата X
+     * @param y         начальная координата Y
+     * @param direction начальное направление в радианах
+     * @return индекс добавленного робота
+     */
+    public int addRobot(double x, double y, double direction) {
+        int index = fleet.addRobot(x, y, direction);
+        spatialIndex.addNew();
+        return index;
+    }
 
-        double angleToTarget = Math.atan2(targetY - y, targetX - x);
-        double angleDiff = normalizeAngle(angleToTarget - direction);
+    /**
+     * Обновляет положение всех роботов, приближая каждого к его цели.
+     * Робот, находящийся близко к цели, остаётся на месте. Остальные либо поворачиваются в нужную
+     * сторону, либо двигаются вперёд по направлению.
+     * Если включены столкновения, после движения пересекающиеся роботы раздвигаются.
+     * После шага слушатели получают одно уведомление со всеми изменениями, включая смену цели
+     * с момента предыдущего шага.
+     */
+    public void updateRobotPosition() {
+        double oldX = getX();
+        double oldY = getY();
+        double oldDirection = getDirection();
 
-        if (Math.abs(angleDiff) > 0.1) {
-            // робот поворачивается к цели
-            direction += Math.signum(angleDiff) * 0.05;
+        int moved;
+        if (parallelStepper != null) {
+            moved = parallelStepper.step(fleet);
         } else {
-            // робот движется вперёд к цели
-            double speed = Math.min(2.0, distance);
-            x += speed * Math.cos(direction);
-            y += speed * Math.sin(direction);
+            moved = fleet.step();
+        }
+        if (moved > 0) {
+            spatialIndex.update();
+        }
+        if (collisionResolver != null && collisionResolver.resolve(fleet, spatialIndex) > 0) {
+            moved++;
+        }
+        tick++;
+        if (inputRecorder != null) {
+            inputRecorder.afterStep();
+        }
+
+        int changes = pendingChanges;
+        pendingChanges = 0;
+        if (moved > 0) {
+            changes |= FLEET_CHANGED;
+        }
+        if (getX() != oldX || getY() != oldY) {
+            changes |= POSITION_CHANGED;
+        }
+        if (getDirection() != oldDirection) {
+            changes |= DIRECTION_CHANGED;
+        }
+        if (changes != 0) {
+            fireModelChanged(changes);
+        }
+
+        if ((changes & (POSITION_CHANGED | DIRECTION_CHANGED)) != 0 && pcs.hasListeners(null)) {
+            pcs.firePropertyChange("position", new double[]{oldX, oldY}, new double[]{getX(), getY()});
+            pcs.firePropertyChange("direction", oldDirection, getDirection());
+        }
+    }
+
+    /**
+     * Рассылает объединённое уведомление всем слушателям.
+     * @param changes набор флагов изменившихся свойств
+     */
+    private void fireModelChanged(int changes) {
+        ModelChangeListener[] listeners = changeListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onModelChanged(this, changes);
+        }
+    }
+
+    /**
+     * Задаёт количество потоков, между которыми распределяется шаг симуляции.
+     * Значение 1 возвращает последовательный шаг. Результат шага не зависит от уровня параллелизма.
+     * @param parallelism количество потоков
+     * @throws IllegalArgumentException если значение не положительно
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Уровень параллелизма должен быть положительным: " + parallelism);
+        }
+        if (parallelStepper != null) {
+            parallelStepper.shutdown();
+            parallelStepper = null;
+        }
+        if (parallelism > 1) {
+            parallelStepper = new ParallelStepper(parallelism, ParallelStepper.DEFAULT_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Включает или выключает обнаружение и разрешение столкновений роботов.
+     * @param enabled {@code true}, чтобы роботы не проходили друг сквозь друга
+     */
+    public void setCollisionsEnabled(boolean enabled) {
+        if (enabled && collisionResolver == null) {
+            collisionResolver = new CollisionResolver();
+        } else if (!enabled) {
+            collisionResolver = null;
         }
+    }
+
+    /** @return {@code true}, если столкновения роботов разрешаются */
+    public boolean isCollisionsEnabled() {
+        return collisionResolver != null;
+    }
 
-        pcs.firePropertyChange("position", new double[]{oldX, oldY}, new double[]{x, y});
-        pcs.firePropertyChange("direction", angleDiff, direction);
+    /** @return количество потоков, между которыми распределяется шаг симуляции */
+    public int getParallelism() {
+        return parallelStepper == null ? 1 : parallelStepper.getParallelism();
     }
 
     /**
-     * Устанавливает новые координаты цели для робота.
-     * После установки координат уведомляет слушателей об изменении цели.
+     * Устанавливает новые координаты цели для основного робота.
+     * Слушатели изменений свойств уведомляются сразу, а слушатели объединённых уведомлений -
+     * вместе со следующим шагом симуляции.
      * @param x координата X цели
      * @param y координата Y цели
      */
     public void setTarget(int x, int y) {
-        double oldTargetX = this.targetX;
-        double oldTargetY = this.targetY;
-        this.targetX = x;
-        this.targetY = y;
+        double oldTargetX = getTargetX();
+        double oldTargetY = getTargetY();
+        fleet.setTarget(PRIMARY_ROBOT, x, y);
+        if (inputRecorder != null) {
+            inputRecorder.recordTarget(PRIMARY_ROBOT, x, y);
+        }
+        pendingChanges |= TARGET_CHANGED;
+
+        if (pcs.hasListeners(null)) {
+            pcs.firePropertyChange("target", new double[]{oldTargetX, oldTargetY}, new double[]{x, y});
+        }
+    }
+
+    /**
+     * Устанавливает новые координаты цели для произвольного робота.
+     * Для основного робота эквивалентно {@link #setTarget(int, int)}.
+     * Действие записывается только после того, как парк принял цель, поэтому запись
+     * не содержит целей несуществующих роботов.
+     * @param robot индекс робота
+     * @param x     координата X цели
+     * @param y     координата Y цели
+     * @throws IndexOutOfBoundsException если робота с таким индексом нет
+     */
+    public void setTarget(int robot, int x, int y) {
+        if (robot == PRIMARY_ROBOT) {
+            setTarget(x, y);
+            return;
+        }
+        fleet.setTarget(robot, x, y);
+        if (inputRecorder != null) {
+            inputRecorder.recordTarget(robot, x, y);
+        }
+        pendingChanges |= FLEET_CHANGED;
+    }
+
+    /**
+     * Ставит препятствие в клетку карты, содержащую точку, или убирает его оттуда.
+     * Пути, построенные по прежней карте, перестраиваются на следующем шаге.
+     * @param x координата X точки
+     * @param y координата Y точки
+     */
+    public void toggleObstacle(double x, double y) {
+        int version = obstacles.getVersion();
+        if (inputRecorder != null) {
+            inputRecorder.recordObstacle(x, y);
+        }
+        obstacles.toggle(x, y);
+        if (obstacles.getVersion() != version) {
+            pendingChanges |= OBSTACLES_CHANGED;
+        }
+    }
 
-        pcs.firePropertyChange("target", new double[]{oldTargetX, oldTargetY}, new double[]{targetX, targetY});
+    /**
+     * Возвращает карту препятствий. Изменять её можно только в потоке, продвигающем модель.
+     * @return карта препятствий
+     */
+    public ObstacleMap getObstacles() {
+        return obstacles;
     }
 
     /**
-     * Возвращает расстояние от текущего положения до цели.
-     *
-     * @return евклидово расстояние до цели
+     * Возвращает копию карты препятствий, которую можно читать из любого потока.
+     * Копия переиспользуется, пока карта не изменится.
+     * @return неизменяемая копия карты
      */
-    private double distanceToTarget() {
-        double dx = targetX - x;
-        double dy = targetY - y;
-        return Math.sqrt(dx * dx + dy * dy);
+    public ObstacleMap getObstaclesSnapshot() {
+        if (obstaclesCopy.getVersion() != obstacles.getVersion()) {
+            obstaclesCopy = obstacles.copy();
+        }
+        return obstaclesCopy;
     }
 
     /**
-     * Нормализует угол в диапазон [-π; π].
-     *
-     * @param angle угол в радианах
-     * @return нормализованный угол
+     * Записывает полное состояние симуляции в файл контрольной точки.
+     * Вызывается в потоке, продвигающем модель, или при остановленном цикле симуляции.
+     * Пути роботов сбрасываются так же, как при восстановлении, чтобы модель продолжила
+     * симуляцию точно так же, как модель, восстановленная из этого файла.
+     * @param path файл контрольной точки
+     * @throws IOException при ошибке записи
      */
-    private double normalizeAngle(double angle) {
-        while (angle < -Math.PI) angle += 2 * Math.PI;
-        while (angle > Math.PI) angle -= 2 * Math.PI;
-        return angle;
+    public void saveCheckpoint(Path path) throws IOException {
+        fleet.resetPaths();
+        SimulationCheckpoint.write(this, path);
+    }
+
+    /**
+     * Заменяет состояние симуляции состоянием из файла контрольной точки.
+     * Вызывается в потоке, продвигающем модель, или при остановленном цикле симуляции.
+     * Слушатели получают уведомление обо всех изменениях со следующим шагом.
+     * @param path файл контрольной точки
+     * @throws IOException если файл не читается, повреждён или записан для другой карты
+     */
+    public void loadCheckpoint(Path path) throws IOException {
+        SimulationCheckpoint.read(path, this);
+    }
+
+    /**
+     * Задаёт запись действий пользователя, изменяющих модель.
+     * Вызывается через {@link InputRecorder#start(GameModel, Path, int)} и {@link InputRecorder#close()}.
+     * @param recorder запись или {@code null}, чтобы прекратить запись
+     */
+    void setInputRecorder(InputRecorder recorder) {
+        inputRecorder = recorder;
+    }
+
+    /**
+     * Вычисляет хеш полного состояния симуляции: номера шага, препятствий и всех роботов.
+     * Совпадение хешей на одном шаге двух прогонов означает побитово одинаковое состояние
+     * с точностью до коллизий 64-битного хеша.
+     * @return хеш состояния
+     */
+    public long stateHash() {
+        long hash = RobotFleet.mixHash(tick, Arrays.hashCode(obstacles.toWords()));
+        return RobotFleet.mixHash(hash, fleet.stateHash());
+    }
+
+    /**
+     * Завершает восстановление из контрольной точки после замены роботов и препятствий.
+     * @param restoredTick номер шага, на котором была записана контрольная точка
+     */
+    void afterRestore(long restoredTick) {
+        tick = restoredTick;
+        spatialIndex.rebuild();
+        pendingChanges |= POSITION_CHANGED | DIRECTION_CHANGED | TARGET_CHANGED | FLEET_CHANGED | OBSTACLES_CHANGED;
+    }
+
+    /**
+     * Находит робота, тело которого содержит точку.
+     * @param x координата X точки
+     * @param y координата Y точки
+     * @return индекс робота или -1, если в точке нет робота
+     */
+    public int robotAt(double x, double y) {
+        return spatialIndex.robotAt(x, y);
+    }
+
+    /**
+     * Находит роботов, центры которых находятся не дальше заданного радиуса от точки.
+     * @param x      координата X точки
+     * @param y      координата Y точки
+     * @param radius радиус поиска
+     * @param out    массив для индексов найденных роботов
+     * @return количество найденных роботов (не больше длины массива)
+     */
+    public int robotsWithin(double x, double y, double radius, int[] out) {
+        return spatialIndex.queryRadius(x, y, radius, out);
+    }
+
+    /**
+     * Возвращает пространственный индекс роботов модели.
+     * Индекс актуален после каждого шага и каждого добавления робота.
+     * @return пространственный индекс
+     */
+    public SpatialGrid getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Возвращает состояние всех роботов модели.
+     * @return парк роботов
+     */
+    public RobotFleet getFleet() {
+        return fleet;
+    }
+
+    /** @return количество выполненных шагов симуляции */
+    public long getTick() {
+        return tick;
+    }
+
+    /** @return количество роботов в модели */
+    public int getRobotCount() {
+        return fleet.size();
     }
 
-    /** @return текущая координата X робота */
+    /** @return текущая координата X основного робота */
     public double getX() {
-        return x;
+        return fleet.getX(PRIMARY_ROBOT);
     }
 
-    /** @return текущая координата Y робота */
+    /** @return текущая координата Y основного робота */
     public double getY() {
-        return y;
+        return fleet.getY(PRIMARY_ROBOT);
     }
 
-    /** @return текущее направление движения робота (в радианах) */
+    /** @return текущее направление движения основного робота (в радианах) */
     public double getDirection() {
-        return direction;
+        return fleet.getDirection(PRIMARY_ROBOT);
     }
 
-    /** @return координата X текущей цели */
+    /** @return координата X текущей цели основного робота */
     public double getTargetX() {
-        return targetX;
+        return fleet.getTargetX(PRIMARY_ROBOT);
     }
 
-    /** @return координата Y текущей цели */
+    /** @return координата Y текущей цели основного робота */
     public double getTargetY() {
-        return targetY;
+        return fleet.getTargetY(PRIMARY_ROBOT);
     }
 }
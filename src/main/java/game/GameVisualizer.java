@@ -2,78 +2,180 @@ package game;
 
 import javax.swing.*;
 import java.awt.*;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
- * Визуализатор игрового поля и состояния робота.
- * Отображает текущую позицию и направление робота, а также цель.
- * Реализует {@link PropertyChangeListener}, чтобы реагировать на изменения модели и обновлять графику.
+ * Визуализатор игрового поля и состояния роботов.
+ * Отображает текущие позиции и направления роботов, а также их цели.
+ * Читает снимки состояния, публикуемые {@link SimulationLoop}, со своей частотой кадров,
+ * поэтому скорость симуляции не зависит от скорости отрисовки.
+ * Поле собирается в собственном кадре через {@link FieldRenderer} с учётом {@link Camera},
+ * после чего кадр выводится на панель одним {@link Graphics#drawImage}.
  * Является частью архитектуры MVC как "View".
  */
-public class GameVisualizer extends JPanel implements PropertyChangeListener {
-    /** Модель, содержащая данные о положении и цели робота */
-    private final GameModel model;
+public class GameVisualizer extends JPanel {
+    /** Период таймера кадров в миллисекундах (около 60 кадров в секунду) */
+    private static final int FRAME_PERIOD_MS = 16;
+
+    /** Цикл симуляции, публикующий снимки состояния */
+    private final SimulationLoop simulation;
+
+    /**
+     * Снимок, который показывает панель. Таймер кадров заменяет его новым снимком и перерисовывает
+     * только области, где они различаются; все перерисовки до следующей замены рисуют этот снимок.
+     */
+    private FleetSnapshot displayedSnapshot;
+
+    /** Камера, через которую показывается поле */
+    private final Camera camera;
+
+    /** Копия камеры, с которой нарисован показываемый снимок; заменяется вместе со снимком */
+    private Camera displayedCamera;
+
+    /** Повреждённые области между показанным и новым снимком */
+    private final DirtyRegions dirtyRegions = new DirtyRegions();
+
+    private final FieldRenderer renderer = new FieldRenderer();
+
+    /** Кадр размером с панель, в котором собирается изображение поля */
+    private BufferedImage frame;
 
     /**
-     * Создает панель визуализации, подписываясь на обновления модели.
-     * @param model модель игры, которую необходимо визуализировать
+     * Создает панель визуализации и запускает таймер кадров.
+     * @param simulation цикл симуляции, снимки которого необходимо визуализировать
+     * @param camera     камера, через которую показывается поле
      */
-    public GameVisualizer(GameModel model) {
-        this.model = model;
-        model.addPropertyChangeListener(this);
+    public GameVisualizer(SimulationLoop simulation, Camera camera) {
+        this.simulation = simulation;
+        this.camera = camera;
+        this.displayedSnapshot = simulation.getSnapshot();
+        this.displayedCamera = camera.copy();
         setDoubleBuffered(true); // улучшает производительность отрисовки
+
+        // Таймер кадров перерисовывает панель, только если появился новый снимок или сдвинулась камера
+        Timer frameTimer = new Timer(FRAME_PERIOD_MS, e -> {
+            FleetSnapshot snapshot = simulation.getSnapshot();
+            TrailLayer trails = renderer.getTrails();
+            if (trails != null && trails.update()) {
+                // следы гаснут по всему полю, поэтому их обновление перерисовывает панель целиком
+                displayedSnapshot = snapshot;
+                displayedCamera = camera.copy();
+                repaint();
+            } else if (camera.getVersion() != displayedCamera.getVersion()) {
+                displayedSnapshot = snapshot;
+                displayedCamera = camera.copy();
+                repaint();
+            } else if (snapshot != displayedSnapshot) {
+                showSnapshot(snapshot);
+            }
+        });
+        frameTimer.start();
+    }
+
+    /**
+     * Задаёт слой следов, выводимый под роботами.
+     * @param trails слой следов или {@code null}, чтобы не показывать следы
+     */
+    public void setTrailLayer(TrailLayer trails) {
+        renderer.setTrails(trails);
+        repaint();
     }
 
     /**
-     * Отрисовывает текущее состояние игры: робота и цель.
+     * Отрисовывает текущее состояние игры: препятствия, роботов и их цели.
      * @param g графический контекст
      */
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        drawRobot(g, model.getX(), model.getY(), model.getDirection());
-        drawTarget(g, model.getTargetX(), model.getTargetY());
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, width, height);
+        }
+
+        FleetSnapshot snapshot = displayedSnapshot;
+        renderer.render(frame, clip, displayedCamera, snapshot, snapshot, 1, getBackground());
+
+        g.drawImage(frame, 0, 0, null);
     }
 
     /**
-     * Отрисовывает робота на экране в заданной позиции и направлении.
-     * @param g         графический контекст
-     * @param x         координата X робота
-     * @param y         координата Y робота
-     * @param direction направление движения робота (в радианах)
+     * Делает снимок показываемым и перерисовывает области, где он отличается от прежнего:
+     * объединение старого и нового положения роботов, сменивших пиксель или направление,
+     * и целей, сменивших положение. Если повреждённых областей слишком много, изменились
+     * препятствия или количество роботов либо роботы рисуются не изображениями, а точками
+     * или картой плотности, панель перерисовывается целиком.
+     * Области рисуются сразу, поэтому далеко разнесённые изменения не сливаются в один
+     * охватывающий прямоугольник, как при {@link #repaint(Rectangle)}.
+     * @param snapshot новый снимок
      */
-    private void drawRobot(Graphics g, double x, double y, double direction) {
-        Graphics2D g2d = (Graphics2D) g.create();
-        g2d.translate(x, y);
-        g2d.rotate(direction);
-        g2d.setColor(Color.BLACK);
-        g2d.fillOval(-20, -5, 40, 10); // тело робота
-        g2d.setColor(Color.WHITE);
-        g2d.fillOval(20 - 2, -2, 4, 4); // "глаз" для направления
-        g2d.dispose();
+    private void showSnapshot(FleetSnapshot snapshot) {
+        FleetSnapshot previous = displayedSnapshot;
+        displayedSnapshot = snapshot;
+        if (!isShowing()) {
+            return;
+        }
+        dirtyRegions.reset(getWidth(), getHeight());
+        if (previous.size() != snapshot.size() || previous.getObstacles() != snapshot.getObstacles()
+                || !FieldRenderer.drawsSprites(displayedCamera.getScale())) {
+            dirtyRegions.markAll();
+        } else {
+            collectDamage(previous, snapshot);
+        }
+        if (dirtyRegions.isEmpty()) {
+            return;
+        }
+        List<Rectangle> regions = dirtyRegions.toRectangles();
+        if (regions == null) {
+            repaint();
+            return;
+        }
+        for (Rectangle region : regions) {
+            paintImmediately(region);
+        }
     }
 
-    /**
-     * Отрисовывает цель на экране.
-     * @param g        графический контекст
-     * @param targetX  координата X цели
-     * @param targetY  координата Y цели
-     */
-    private void drawTarget(Graphics g, double targetX, double targetY) {
-        g.setColor(Color.GREEN);
-        int targetCenterX = (int) targetX;
-        int targetCenterY = (int) targetY;
+    private void collectDamage(FleetSnapshot previous, FleetSnapshot snapshot) {
+        RobotSprites sprites = renderer.spritesFor(displayedCamera.getScale());
+        // запас в пиксель на округление экранных координат
+        int robotSize = sprites.getRobotSpriteSize() + 2;
+        int robotHalf = robotSize / 2;
+        int targetSize = sprites.getTargetSize() + 2;
+        int targetHalf = targetSize / 2;
+        for (int i = 0; i < snapshot.size() && !dirtyRegions.isFull(); i++) {
+            int oldX = toScreenX(previous.getX(i));
+            int oldY = toScreenY(previous.getY(i));
+            int newX = toScreenX(snapshot.getX(i));
+            int newY = toScreenY(snapshot.getY(i));
+            if (oldX != newX || oldY != newY
+                    || RobotSprites.bucketOf(previous.getDirection(i)) != RobotSprites.bucketOf(snapshot.getDirection(i))) {
+                dirtyRegions.add(Math.min(oldX, newX) - robotHalf, Math.min(oldY, newY) - robotHalf,
+                        Math.abs(newX - oldX) + robotSize, Math.abs(newY - oldY) + robotSize);
+            }
+            int oldTargetX = toScreenX(previous.getTargetX(i));
+            int oldTargetY = toScreenY(previous.getTargetY(i));
+            int newTargetX = toScreenX(snapshot.getTargetX(i));
+            int newTargetY = toScreenY(snapshot.getTargetY(i));
+            if (oldTargetX != newTargetX || oldTargetY != newTargetY) {
+                dirtyRegions.add(oldTargetX - targetHalf, oldTargetY - targetHalf, targetSize, targetSize);
+                dirtyRegions.add(newTargetX - targetHalf, newTargetY - targetHalf, targetSize, targetSize);
+            }
+        }
+    }
 
-        g.fillOval(targetCenterX - 5, targetCenterY - 5, 10, 10);
+    private int toScreenX(double worldX) {
+        return (int) Math.floor(displayedCamera.toScreenX(worldX));
     }
 
-    /**
-     * Обработчик изменения свойств модели. Перерисовывает панель при изменении позиции или цели.
-     * @param evt объект события, содержащий информацию об изменении
-     */
-    @Override
-    public void propertyChange(PropertyChangeEvent evt) {
-        repaint();
+    private int toScreenY(double worldY) {
+        return (int) Math.floor(displayedCamera.toScreenY(worldY));
     }
 }
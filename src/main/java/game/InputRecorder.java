@@ -0,0 +1,154 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Запись действий пользователя, изменяющих модель, для последующего воспроизведения
+ * через {@link InputReplay}.
+ * <p>
+ * При начале записи состояние модели сохраняется в контрольную точку рядом с файлом событий
+ * (см. {@link #checkpointFor(Path)}), а затем в файл событий дописываются записи фиксированной
+ * длины: новая цель робота и переключение препятствия с номером шага, на котором они применены,
+ * а каждые {@code hashInterval} шагов - хеш состояния для проверки воспроизведения.
+ * Запись ведётся в потоке, продвигающем модель, через буфер и не обращается к диску
+ * на каждом событии.
+ * <p>
+ * Формат файла: заголовок {@code magic | version | flags | hashInterval | startTick}, затем записи
+ * {@code type | tick | ...}: {@link #TARGET} - {@code robot | x | y}, {@link #OBSTACLE} - {@code x | y},
+ * {@link #HASH} и {@link #END} - {@code hash}.
+ */
+public class InputRecorder implements Closeable {
+    static final int MAGIC = 0x52425245;
+    static final int FORMAT_VERSION = 1;
+
+    /** Флаг заголовка: в модели включены столкновения */
+    static final int FLAG_COLLISIONS = 1;
+
+    static final byte TARGET = 1;
+    static final byte OBSTACLE = 2;
+    static final byte HASH = 3;
+    static final byte END = 4;
+
+    /** Интервал записи хеша состояния по умолчанию (в шагах) */
+    public static final int DEFAULT_HASH_INTERVAL = 100;
+
+    /** Размер буфера записи */
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final GameModel model;
+    private final DataOutputStream out;
+    private final int hashInterval;
+    private boolean closed;
+
+    private InputRecorder(GameModel model, OutputStream stream, int hashInterval) {
+        this.model = model;
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_BYTES));
+        this.hashInterval = hashInterval;
+    }
+
+    /**
+     * Сохраняет контрольную точку модели и начинает запись её изменений.
+     * Вызывается в потоке, продвигающем модель, или при остановленном цикле симуляции.
+     * @param model        модель
+     * @param events       файл событий; перезаписывается
+     * @param hashInterval через сколько шагов записывать хеш состояния; 0 - только в конце записи
+     * @return запись, уже подключённая к модели
+     * @throws IOException при ошибке записи контрольной точки или заголовка
+     */
+    public static InputRecorder start(GameModel model, Path events, int hashInterval) throws IOException {
+        if (hashInterval < 0) {
+            throw new IllegalArgumentException("Интервал хешей не может быть отрицательным: " + hashInterval);
+        }
+        model.saveCheckpoint(checkpointFor(events));
+        InputRecorder recorder = new InputRecorder(model, Files.newOutputStream(events), hashInterval);
+        recorder.out.writeInt(MAGIC);
+        recorder.out.writeInt(FORMAT_VERSION);
+        recorder.out.writeInt(model.isCollisionsEnabled() ? FLAG_COLLISIONS : 0);
+        recorder.out.writeInt(hashInterval);
+        recorder.out.writeLong(model.getTick());
+        recorder.writeHash(HASH);
+        model.setInputRecorder(recorder);
+        return recorder;
+    }
+
+    /**
+     * @param events файл событий
+     * @return файл контрольной точки, с которой начинается запись
+     */
+    public static Path checkpointFor(Path events) {
+        return events.resolveSibling(events.getFileName() + ".ckpt");
+    }
+
+    void recordTarget(int robot, int x, int y) {
+        try {
+            out.writeByte(TARGET);
+            out.writeLong(model.getTick());
+            out.writeInt(robot);
+            out.writeInt(x);
+            out.writeInt(y);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordObstacle(double x, double y) {
+        try {
+            out.writeByte(OBSTACLE);
+            out.writeLong(model.getTick());
+            out.writeDouble(x);
+            out.writeDouble(y);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Вызывается моделью после каждого шага; записывает хеш состояния, если подошёл интервал.
+     */
+    void afterStep() {
+        if (hashInterval > 0 && model.getTick() % hashInterval == 0) {
+            try {
+                writeHash(HASH);
+                out.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void writeHash(byte type) throws IOException {
+        out.writeByte(type);
+        out.writeLong(model.getTick());
+        out.writeLong(model.stateHash());
+    }
+
+    /**
+     * Ошибка записи не должна останавливать симуляцию: запись прекращается, а модель продолжает работу.
+     */
+    private void fail(IOException e) {
+        e.printStackTrace();
+        model.setInputRecorder(null);
+        closed = true;
+    }
+
+    /**
+     * Записывает итоговый хеш состояния, отключается от модели и закрывает файл.
+     * Вызывается в потоке, продвигающем модель, или при остановленном цикле симуляции.
+     * @throws IOException при ошибке записи
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            model.setInputRecorder(null);
+            writeHash(END);
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,187 @@
+package game;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Воспроизведение действий, записанных {@link InputRecorder}.
+ * Модель восстанавливается из контрольной точки записи, после чего шаги выполняются подряд
+ * без ожидания, а перед каждым шагом применяются события, записанные на этом шаге, - в том же
+ * порядке, что и при записи. После шагов с записанным хешем хеш состояния модели сравнивается
+ * с записанным; воспроизведение останавливается на первом расхождении.
+ * <p>
+ * Если запись оборвалась (например, при аварийном завершении), воспроизводятся все события
+ * до последней целой записи файла.
+ */
+public class InputReplay {
+    private final Path events;
+    private final ByteBuffer records;
+    private final boolean collisions;
+    private final int hashInterval;
+    private final long startTick;
+
+    /** Последний шаг записи: шаг итогового хеша или последнего целого события */
+    private final long endTick;
+
+    private long verifiedHashes;
+    private long appliedEvents;
+    private long mismatchTick = -1;
+
+    /**
+     * Читает файл событий в память.
+     * @param events файл событий
+     * @throws IOException если файл не читается или имеет неизвестный формат
+     */
+    public InputReplay(Path events) throws IOException {
+        this.events = events;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(events));
+        try {
+            if (buffer.getInt() != InputRecorder.MAGIC || buffer.getInt() != InputRecorder.FORMAT_VERSION) {
+                throw new IOException("Неизвестный формат записи: " + events);
+            }
+            collisions = (buffer.getInt() & InputRecorder.FLAG_COLLISIONS) != 0;
+            hashInterval = buffer.getInt();
+            startTick = buffer.getLong();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Запись повреждена: " + events, e);
+        }
+        records = buffer.slice();
+        endTick = scanEndTick();
+    }
+
+    /**
+     * Находит последний шаг записи, проходя по записям до конца файла или первой неполной записи.
+     */
+    private long scanEndTick() {
+        ByteBuffer buffer = records.duplicate();
+        long last = startTick;
+        while (buffer.remaining() >= 1 + Long.BYTES) {
+            byte type = buffer.get();
+            long tick = buffer.getLong();
+            int payload = payloadBytes(type);
+            if (payload < 0 || buffer.remaining() < payload) {
+                break;
+            }
+            buffer.position(buffer.position() + payload);
+            last = tick;
+            if (type == InputRecorder.END) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    private static int payloadBytes(byte type) {
+        return switch (type) {
+            case InputRecorder.TARGET -> 3 * Integer.BYTES;
+            case InputRecorder.OBSTACLE -> 2 * Double.BYTES;
+            case InputRecorder.HASH, InputRecorder.END -> Long.BYTES;
+            default -> -1;
+        };
+    }
+
+    /**
+     * Создаёт модель в состоянии начала записи.
+     * @return модель, восстановленная из контрольной точки записи
+     * @throws IOException если контрольная точка не читается или повреждена
+     */
+    public GameModel createModel() throws IOException {
+        GameModel model = new GameModel();
+        model.setCollisionsEnabled(collisions);
+        model.loadCheckpoint(InputRecorder.checkpointFor(events));
+        return model;
+    }
+
+    /**
+     * Воспроизводит запись на модели, созданной {@link #createModel()}, до последнего шага записи.
+     * @param model модель в состоянии начала записи
+     * @return {@code true}, если все записанные хеши совпали
+     * @throws IllegalStateException если шаг модели не совпадает с началом записи
+     */
+    public boolean run(GameModel model) {
+        if (model.getTick() != startTick) {
+            throw new IllegalStateException("Модель находится на шаге " + model.getTick()
+                    + ", а запись начинается с шага " + startTick);
+        }
+        ByteBuffer buffer = records.duplicate();
+        while (buffer.remaining() >= 1 + Long.BYTES) {
+            byte type = buffer.get();
+            long tick = buffer.getLong();
+            int payload = payloadBytes(type);
+            if (payload < 0 || buffer.remaining() < payload) {
+                break;
+            }
+            if (type == InputRecorder.TARGET || type == InputRecorder.OBSTACLE) {
+                // события применяются перед шагом, на котором были записаны
+                stepTo(model, tick);
+            }
+            switch (type) {
+                case InputRecorder.TARGET -> {
+                    model.setTarget(buffer.getInt(), buffer.getInt(), buffer.getInt());
+                    appliedEvents++;
+                }
+                case InputRecorder.OBSTACLE -> {
+                    model.toggleObstacle(buffer.getDouble(), buffer.getDouble());
+                    appliedEvents++;
+                }
+                default -> {
+                    stepTo(model, tick);
+                    if (model.stateHash() != buffer.getLong()) {
+                        mismatchTick = tick;
+                        return false;
+                    }
+                    verifiedHashes++;
+                    if (type == InputRecorder.END) {
+                        return true;
+                    }
+                }
+            }
+        }
+        stepTo(model, endTick);
+        return true;
+    }
+
+    private static void stepTo(GameModel model, long tick) {
+        while (model.getTick() < tick) {
+            model.updateRobotPosition();
+        }
+    }
+
+    /** @return признак включённых при записи столкновений */
+    public boolean isCollisionsEnabled() {
+        return collisions;
+    }
+
+    /** @return интервал записи хешей в шагах; 0 - хеш записан только в конце */
+    public int getHashInterval() {
+        return hashInterval;
+    }
+
+    /** @return шаг, на котором началась запись */
+    public long getStartTick() {
+        return startTick;
+    }
+
+    /** @return последний шаг записи */
+    public long getEndTick() {
+        return endTick;
+    }
+
+    /** @return количество совпавших хешей состояния */
+    public long getVerifiedHashes() {
+        return verifiedHashes;
+    }
+
+    /** @return количество применённых событий */
+    public long getAppliedEvents() {
+        return appliedEvents;
+    }
+
+    /** @return шаг первого расхождения хеша или -1, если расхождений не было */
+    public long getMismatchTick() {
+        return mismatchTick;
+    }
+}
@@ -0,0 +1,19 @@
+package game;
+
+/**
+ * Слушатель изменений модели игры.
+ * Получает одно объединённое уведомление на каждый шаг симуляции вместо отдельных событий
+ * для каждого свойства; изменившиеся свойства передаются набором битовых флагов
+ * {@link GameModel#POSITION_CHANGED}, {@link GameModel#DIRECTION_CHANGED},
+ * {@link GameModel#TARGET_CHANGED}, {@link GameModel#FLEET_CHANGED} и {@link GameModel#OBSTACLES_CHANGED}.
+ * Уведомление не создаёт объектов, поэтому подходит для высокой частоты шагов.
+ */
+public interface ModelChangeListener {
+
+    /**
+     * Вызывается в потоке симуляции после завершения шага.
+     * @param model   модель, состояние которой изменилось
+     * @param changes набор флагов изменившихся свойств (не равен нулю)
+     */
+    void onModelChanged(GameModel model, int changes);
+}
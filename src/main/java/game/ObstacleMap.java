@@ -0,0 +1,177 @@
+package game;
+
+import java.util.BitSet;
+
+/**
+ * Карта статических препятствий на игровом поле.
+ * Поле от (0, 0) до (ширина, высота) разбито на квадратные клетки, каждая из которых либо свободна,
+ * либо занята препятствием. Вне поля препятствий нет. Каждое изменение карты увеличивает её версию,
+ * по которой построенные поверх карты пути понимают, что устарели.
+ */
+public class ObstacleMap {
+    /** Сторона клетки */
+    private final double cellSize;
+
+    /** Количество клеток по горизонтали */
+    private final int columns;
+
+    /** Количество клеток по вертикали */
+    private final int rows;
+
+    /** Занятые клетки, нумерация построчная */
+    private final BitSet blocked;
+
+    /** Версия карты, увеличивается при каждом изменении */
+    private volatile int version;
+
+    /**
+     * Создаёт пустую карту.
+     * @param width    ширина поля
+     * @param height   высота поля
+     * @param cellSize сторона клетки
+     * @throws IllegalArgumentException если размеры не положительны
+     */
+    public ObstacleMap(double width, double height, double cellSize) {
+        if (!(width > 0) || !(height > 0) || !(cellSize > 0)) {
+            throw new IllegalArgumentException("Размеры карты должны быть положительными");
+        }
+        this.cellSize = cellSize;
+        this.columns = (int) Math.ceil(width / cellSize);
+        this.rows = (int) Math.ceil(height / cellSize);
+        this.blocked = new BitSet(columns * rows);
+    }
+
+    private ObstacleMap(ObstacleMap source) {
+        this.cellSize = source.cellSize;
+        this.columns = source.columns;
+        this.rows = source.rows;
+        this.blocked = (BitSet) source.blocked.clone();
+        this.version = source.version;
+    }
+
+    /**
+     * Делает независимую копию карты с той же версией.
+     * @return копия карты
+     */
+    public ObstacleMap copy() {
+        return new ObstacleMap(this);
+    }
+
+    /**
+     * Помечает клетку, содержащую точку, как занятую или свободную.
+     * Точки вне поля игнорируются.
+     * @param x       координата X точки
+     * @param y       координата Y точки
+     * @param isBlocked {@code true}, чтобы поставить препятствие
+     */
+    public void setBlocked(double x, double y, boolean isBlocked) {
+        int cell = cellAt(x, y);
+        if (cell < 0 || blocked.get(cell) == isBlocked) {
+            return;
+        }
+        blocked.set(cell, isBlocked);
+        version++;
+    }
+
+    /**
+     * Переключает препятствие в клетке, содержащей точку.
+     * @param x координата X точки
+     * @param y координата Y точки
+     */
+    public void toggle(double x, double y) {
+        int cell = cellAt(x, y);
+        if (cell >= 0) {
+            blocked.flip(cell);
+            version++;
+        }
+    }
+
+    /**
+     * Убирает все препятствия.
+     */
+    public void clear() {
+        if (!blocked.isEmpty()) {
+            blocked.clear();
+            version++;
+        }
+    }
+
+    /**
+     * @return занятые клетки в виде слов битовой маски (см. {@link BitSet#toLongArray()})
+     */
+    long[] toWords() {
+        return blocked.toLongArray();
+    }
+
+    /**
+     * Заменяет все препятствия карты битовой маской, полученной от {@link #toWords()}.
+     * @param words слова битовой маски
+     */
+    void restore(long[] words) {
+        blocked.clear();
+        blocked.or(BitSet.valueOf(words));
+        version++;
+    }
+
+    /**
+     * Возвращает номер клетки, содержащей точку.
+     * @return номер клетки или -1, если точка вне поля
+     */
+    public int cellAt(double x, double y) {
+        if (!(x >= 0) || !(y >= 0)) {
+            return -1;
+        }
+        int column = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        if (column >= columns || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    /** @return {@code true}, если клетка с указанным номером занята */
+    public boolean isBlocked(int cell) {
+        return blocked.get(cell);
+    }
+
+    /** @return {@code true}, если точка лежит в занятой клетке */
+    public boolean isBlocked(double x, double y) {
+        int cell = cellAt(x, y);
+        return cell >= 0 && blocked.get(cell);
+    }
+
+    /** @return {@code true}, если на карте нет ни одного препятствия */
+    public boolean isEmpty() {
+        return blocked.isEmpty();
+    }
+
+    /** @return координата X центра клетки */
+    public double centerX(int cell) {
+        return (cell % columns + 0.5) * cellSize;
+    }
+
+    /** @return координата Y центра клетки */
+    public double centerY(int cell) {
+        return (cell / columns + 0.5) * cellSize;
+    }
+
+    /** @return сторона клетки */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /** @return количество клеток по горизонтали */
+    public int getColumns() {
+        return columns;
+    }
+
+    /** @return количество клеток по вертикали */
+    public int getRows() {
+        return rows;
+    }
+
+    /** @return версия карты */
+    public int getVersion() {
+        return version;
+    }
+}
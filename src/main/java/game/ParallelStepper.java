@@ -0,0 +1,104 @@
+package game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельный шаг симуляции парка роботов.
+ * Разбивает роботов на непрерывные блоки индексов и продвигает их в {@link ForkJoinPool}.
+ * Каждый блок обрабатывается тем же методом {@link RobotFleet#stepRange(int, int)}, что и при
+ * последовательном шаге, а роботы не зависят друг от друга, поэтому результат побитово совпадает
+ * с {@link RobotFleet#step()}.
+ */
+public class ParallelStepper {
+    /** Размер блока по умолчанию: меньшие блоки не окупают накладные расходы на задачи */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    /** Пул потоков, выполняющий блоки */
+    private final ForkJoinPool pool;
+
+    /** Максимальное количество роботов в одном блоке */
+    private final int chunkSize;
+
+    /**
+     * Создаёт параллельный шаг с заданным уровнем параллелизма.
+     * @param parallelism количество рабочих потоков
+     * @param chunkSize   максимальное количество роботов в одном блоке
+     * @throws IllegalArgumentException если параметры не положительны
+     */
+    public ParallelStepper(int parallelism, int chunkSize) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Уровень параллелизма должен быть положительным: " + parallelism);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Размер блока должен быть положительным: " + chunkSize);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Продвигает всех роботов парка на один шаг, распределяя работу между потоками пула.
+     * Метод возвращает управление после завершения всех блоков.
+     * @param fleet парк роботов
+     * @return количество роботов, которые повернулись или сдвинулись
+     */
+    public int step(RobotFleet fleet) {
+        int count = fleet.size();
+        fleet.preparePaths();
+        if (count <= chunkSize) {
+            return fleet.stepRange(0, count);
+        }
+        StepTask task = new StepTask(fleet, 0, count);
+        pool.invoke(task);
+        return task.moved;
+    }
+
+    /** @return количество рабочих потоков */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /** @return максимальное количество роботов в одном блоке */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Останавливает потоки пула. После вызова экземпляр использовать нельзя.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Задача, делящая диапазон роботов пополам до размера блока.
+     */
+    private final class StepTask extends RecursiveAction {
+        private final RobotFleet fleet;
+        private final int from;
+        private final int to;
+
+        /** Количество сдвинувшихся роботов диапазона, заполняется после выполнения */
+        private int moved;
+
+        StepTask(RobotFleet fleet, int from, int to) {
+            this.fleet = fleet;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                moved = fleet.stepRange(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            StepTask left = new StepTask(fleet, from, middle);
+            StepTask right = new StepTask(fleet, middle, to);
+            invokeAll(left, right);
+            moved = left.moved + right.moved;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Планировщик путей по карте препятствий.
+ * Память планировщика ограничена количеством целей, а не роботов:
+ * <ul>
+ *     <li>цели, к которым едет не менее {@link #SHARED_FIELD_MIN_ROBOTS} роботов, получают общий
+ *     {@link FlowField}; таких полей не больше {@link #MAX_CACHED_FIELDS}, и роботы на них не ссылаются;</li>
+ *     <li>остальным роботам {@link #plan} находит промежуточную точку: если цель видна по прямой, робот
+ *     едет к ней напрямую, иначе поиск A* с ранним выходом прокладывает путь по клеткам, и робот едет
+ *     к самой дальней клетке пути, видимой по прямой. Робот хранит только номер этой клетки.</li>
+ * </ul>
+ * Общие поля выбираются в {@link #prepare(RobotFleet)} перед шагом в потоке, изменяющем парк;
+ * во время шага карта и набор полей не изменяются, и {@link #plan} можно вызывать из нескольких потоков.
+ */
+public class PathPlanner {
+    /** Наибольшее количество общих полей направлений (около 40 КБ каждое на поле 2000x2000) */
+    static final int MAX_CACHED_FIELDS = 256;
+
+    /** Наименьшее количество роботов с общей целевой клеткой, ради которых строится общее поле */
+    static final int SHARED_FIELD_MIN_ROBOTS = 32;
+
+    /** Признак того, что цель недостижима; робот едет к ней напрямую и не перепланирует путь */
+    static final int UNREACHABLE = -2;
+
+    /** Карта, по которой строятся пути */
+    private final ObstacleMap map;
+
+    /** Количество клеток по горизонтали и вертикали */
+    private final int columns;
+    private final int rows;
+
+    /** Величина, обратная стороне клетки */
+    private final double inverseCellSize;
+
+    /** Общие поля направлений по номеру целевой клетки; {@code null}, если общих полей нет */
+    private FlowField[] sharedFields;
+
+    /** Количество общих полей */
+    private int sharedFieldCount;
+
+    /** Счётчики роботов по целевым клеткам, используются только в {@link #prepare(RobotFleet)} */
+    private int[] demand;
+
+    /** Версия карты, для которой выбраны общие поля; -1, пока планировщик не подготовлен */
+    private int preparedVersion = -1;
+
+    /** Версия целей парка, для которой выбраны общие поля */
+    private int preparedTargets;
+
+    /** Признак того, что на карте есть препятствия и пути нужно прокладывать */
+    private boolean routing;
+
+    /** Рабочие массивы поиска, по одному набору на поток */
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+    /**
+     * Создаёт планировщик для карты.
+     * @param map карта препятствий
+     */
+    public PathPlanner(ObstacleMap map) {
+        this.map = map;
+        this.columns = map.getColumns();
+        this.rows = map.getRows();
+        this.inverseCellSize = 1 / map.getCellSize();
+    }
+
+    /**
+     * Подготавливает планировщик к шагу парка: если с прошлого шага изменились карта или цели роботов,
+     * заново выбирает цели, которым нужны общие поля направлений. Выбор зависит только от состояния
+     * парка, поэтому последовательный и параллельный шаги получают одинаковые пути.
+     * @param fleet парк роботов
+     */
+    void prepare(RobotFleet fleet) {
+        int version = map.getVersion();
+        int targets = fleet.getTargetsVersion();
+        if (version == preparedVersion && targets == preparedTargets) {
+            return;
+        }
+        preparedVersion = version;
+        preparedTargets = targets;
+        routing = !map.isEmpty();
+        FlowField[] previous = sharedFields;
+        sharedFields = null;
+        sharedFieldCount = 0;
+        if (!routing) {
+            return;
+        }
+
+        if (demand == null) {
+            demand = new int[columns * rows];
+        }
+        long[] candidates = new long[16];
+        int candidateCount = 0;
+        int count = fleet.size();
+        for (int i = 0; i < count; i++) {
+            int cell = map.cellAt(fleet.getTargetX(i), fleet.getTargetY(i));
+            if (cell >= 0 && ++demand[cell] == SHARED_FIELD_MIN_ROBOTS) {
+                if (candidateCount == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                }
+                candidates[candidateCount++] = cell;
+            }
+        }
+        // самые востребованные цели первыми, при равенстве - по номеру клетки
+        for (int k = 0; k < candidateCount; k++) {
+            int cell = (int) candidates[k];
+            candidates[k] = (long) (Integer.MAX_VALUE - demand[cell]) << 32 | cell;
+        }
+        Arrays.sort(candidates, 0, candidateCount);
+        for (int i = 0; i < count; i++) {
+            int cell = map.cellAt(fleet.getTargetX(i), fleet.getTargetY(i));
+            if (cell >= 0) {
+                demand[cell] = 0;
+            }
+        }
+
+        if (candidateCount == 0) {
+            return;
+        }
+        FlowField[] fields = new FlowField[columns * rows];
+        for (int k = 0; k < candidateCount && k < MAX_CACHED_FIELDS; k++) {
+            int cell = (int) candidates[k];
+            FlowField field = previous == null ? null : previous[cell];
+            fields[cell] = field != null && field.getMapVersion() == version ? field : new FlowField(map, cell);
+        }
+        sharedFields = fields;
+        sharedFieldCount = Math.min(candidateCount, MAX_CACHED_FIELDS);
+    }
+
+    /**
+     * @return {@code true}, если на карте есть препятствия; иначе роботы едут к целям напрямую
+     */
+    boolean isRouting() {
+        return routing;
+    }
+
+    /** @return версия карты, для которой подготовлен планировщик */
+    int getPreparedVersion() {
+        return preparedVersion;
+    }
+
+    /**
+     * Возвращает общее поле направлений к целевой клетке.
+     * @param targetCell номер целевой клетки
+     * @return поле или {@code null}, если для клетки нет общего поля
+     */
+    FlowField sharedField(int targetCell) {
+        FlowField[] fields = sharedFields;
+        return fields == null ? null : fields[targetCell];
+    }
+
+    /**
+     * Находит клетку, к которой роботу следует ехать, чтобы обойти препятствия по пути к цели.
+     * @param fromX      координата X робота
+     * @param fromY      координата Y робота
+     * @param toX        координата X цели
+     * @param toY        координата Y цели
+     * @param targetCell клетка, содержащая цель
+     * @return номер промежуточной клетки; {@link FlowField#NONE}, если цель видна по прямой или робот
+     * вне карты; {@link #UNREACHABLE}, если цель недостижима
+     */
+    int plan(double fromX, double fromY, double toX, double toY, int targetCell) {
+        int start = map.cellAt(fromX, fromY);
+        if (start < 0 || start == targetCell) {
+            return FlowField.NONE;
+        }
+        if (map.isBlocked(targetCell)) {
+            return UNREACHABLE;
+        }
+        if (isVisible(fromX, fromY, toX, toY)) {
+            return FlowField.NONE;
+        }
+        Search search = searches.get();
+        int length = search.find(start, targetCell);
+        if (length == 0) {
+            return UNREACHABLE;
+        }
+        // первый шаг пути берётся всегда, дальше - пока клетки видны по прямой
+        int[] path = search.path;
+        int waypoint = path[1];
+        for (int k = 2; k < length && isVisible(fromX, fromY, map.centerX(path[k]), map.centerY(path[k])); k++) {
+            waypoint = path[k];
+        }
+        return waypoint;
+    }
+
+    /**
+     * Проверяет, что отрезок проходит только по свободным клеткам. Клетка начала отрезка не проверяется,
+     * чтобы робот, оказавшийся в занятой клетке, мог из неё выехать. Отрезок, проходящий точно через
+     * угол клеток, требует свободы обеих боковых клеток, как и диагональный шаг поиска.
+     * @return {@code true}, если конец отрезка виден из его начала
+     */
+    boolean isVisible(double fromX, double fromY, double toX, double toY) {
+        double startX = fromX * inverseCellSize;
+        double startY = fromY * inverseCellSize;
+        double endX = toX * inverseCellSize;
+        double endY = toY * inverseCellSize;
+        int cx = SpatialGrid.floor(startX);
+        int cy = SpatialGrid.floor(startY);
+        int lastX = SpatialGrid.floor(endX);
+        int lastY = SpatialGrid.floor(endY);
+        int stepX = Integer.signum(lastX - cx);
+        int stepY = Integer.signum(lastY - cy);
+        double lengthX = Math.abs(endX - startX);
+        double lengthY = Math.abs(endY - startY);
+        // доля отрезка до ближайшей границы клеток по каждой оси и шаг этой доли на одну клетку
+        double nextX = stepX == 0 ? Double.POSITIVE_INFINITY
+                : (stepX > 0 ? cx + 1 - startX : startX - cx) / lengthX;
+        double nextY = stepY == 0 ? Double.POSITIVE_INFINITY
+                : (stepY > 0 ? cy + 1 - startY : startY - cy) / lengthY;
+        double deltaX = 1 / lengthX;
+        double deltaY = 1 / lengthY;
+
+        int remaining = Math.abs(lastX - cx) + Math.abs(lastY - cy);
+        while (remaining > 0) {
+            if (nextX < nextY) {
+                cx += stepX;
+                nextX += deltaX;
+                remaining--;
+            } else if (nextY < nextX) {
+                cy += stepY;
+                nextY += deltaY;
+                remaining--;
+            } else {
+                if (isBlocked(cx + stepX, cy) || isBlocked(cx, cy + stepY)) {
+                    return false;
+                }
+                cx += stepX;
+                cy += stepY;
+                nextX += deltaX;
+                nextY += deltaY;
+                remaining -= 2;
+            }
+            if (isBlocked(cx, cy)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBlocked(int cx, int cy) {
+        return cx >= 0 && cy >= 0 && cx < columns && cy < rows && map.isBlocked(cy * columns + cx);
+    }
+
+    /** @return количество общих полей направлений */
+    public int getCachedFieldCount() {
+        return sharedFieldCount;
+    }
+
+    /** @return карта, по которой строятся пути */
+    public ObstacleMap getMap() {
+        return map;
+    }
+
+    /**
+     * Рабочие массивы поиска A* одного потока. Отметка поколения позволяет не очищать массивы
+     * между поисками, поэтому поиск стоит пропорционально количеству просмотренных клеток.
+     */
+    private final class Search {
+        /** Стоимость пути от начала до клетки */
+        private final int[] cost = new int[columns * rows];
+
+        /** Предыдущая клетка пути */
+        private final int[] parent = new int[columns * rows];
+
+        /** Поколение поиска, в котором клетка была достигнута */
+        private final int[] visited = new int[columns * rows];
+
+        /** Найденный путь от начальной клетки до цели */
+        private final int[] path = new int[columns * rows];
+
+        /** Куча открытых клеток по оценке полной стоимости; допускаются устаревшие записи */
+        private int[] heapCell = new int[256];
+        private int[] heapKey = new int[256];
+
+        private int generation;
+
+        /**
+         * Ищет путь по тем же правилам, что и {@link FlowField}, с восьмиугольной эвристикой.
+         * Эвристика завышена на 1/64, чтобы из клеток с равной оценкой первыми раскрывались ближние
+         * к цели: это многократно сокращает поиск на открытом поле, а путь длиннее кратчайшего
+         * не более чем на 1/64.
+         * @return длина пути в клетках, записанного в {@link #path}, или 0, если цель недостижима
+         */
+        int find(int start, int target) {
+            if (++generation == 0) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+            int targetX = target % columns;
+            int targetY = target / columns;
+            visited[start] = generation;
+            cost[start] = 0;
+            parent[start] = FlowField.NONE;
+            int size = 0;
+            heapCell[size] = start;
+            heapKey[size++] = heuristic(start, targetX, targetY);
+
+            while (size > 0) {
+                int cell = heapCell[0];
+                int key = heapKey[0];
+                size--;
+                FlowField.siftDown(heapCell, heapKey, size, heapCell[size], heapKey[size]);
+                int cellCost = cost[cell];
+                if (key > cellCost + heuristic(cell, targetX, targetY)) {
+                    continue;
+                }
+                if (cell == target) {
+                    return tracePath(target);
+                }
+                int cx = cell % columns;
+                int cy = cell / columns;
+                for (int k = 0; k < FlowField.NEIGHBOUR_DX.length; k++) {
+                    int nx = cx + FlowField.NEIGHBOUR_DX[k];
+                    int ny = cy + FlowField.NEIGHBOUR_DY[k];
+                    if (nx < 0 || ny < 0 || nx >= columns || ny >= rows) {
+                        continue;
+                    }
+                    int neighbour = ny * columns + nx;
+                    if (map.isBlocked(neighbour)) {
+                        continue;
+                    }
+                    boolean diagonal = k >= 4;
+                    if (diagonal && (map.isBlocked(cy * columns + nx) || map.isBlocked(ny * columns + cx))) {
+                        continue;
+                    }
+                    int newCost = cellCost + (diagonal ? FlowField.DIAGONAL_COST : FlowField.STRAIGHT_COST);
+                    if (visited[neighbour] != generation || newCost < cost[neighbour]) {
+                        visited[neighbour] = generation;
+                        cost[neighbour] = newCost;
+                        parent[neighbour] = cell;
+                        if (size == heapCell.length) {
+                            heapCell = Arrays.copyOf(heapCell, size * 2);
+                            heapKey = Arrays.copyOf(heapKey, size * 2);
+                        }
+                        FlowField.siftUp(heapCell, heapKey, size++,
+                                neighbour, newCost + heuristic(neighbour, targetX, targetY));
+                    }
+                }
+            }
+            return 0;
+        }
+
+        private int heuristic(int cell, int targetX, int targetY) {
+            int dx = Math.abs(cell % columns - targetX);
+            int dy = Math.abs(cell / columns - targetY);
+            int octile = FlowField.STRAIGHT_COST * Math.max(dx, dy)
+                    + (FlowField.DIAGONAL_COST - FlowField.STRAIGHT_COST) * Math.min(dx, dy);
+            return octile + (octile >> 6);
+        }
+
+        private int tracePath(int target) {
+            int length = 0;
+            for (int cell = target; cell != FlowField.NONE; cell = parent[cell]) {
+                length++;
+            }
+            int position = length;
+            for (int cell = target; cell != FlowField.NONE; cell = parent[cell]) {
+                path[--position] = cell;
+            }
+            return length;
+        }
+    }
+}
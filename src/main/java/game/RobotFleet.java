@@ -0,0 +1,429 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Парк роботов, хранящий состояние в виде "структуры массивов".
+ * Координаты, направления и цели всех роботов лежат в отдельных примитивных массивах {@code double[]},
+ * поэтому шаг симуляции проходит по памяти последовательно и не создаёт объектов.
+ * Робот идентифицируется своим индексом в массивах.
+ */
+public class RobotFleet {
+    /** Расстояние до цели, при котором робот считается прибывшим */
+    static final double ARRIVAL_DISTANCE = 0.5;
+
+    /** Угловая погрешность, при которой робот перестаёт поворачивать и едет вперёд */
+    static final double ANGLE_TOLERANCE = 0.1;
+
+    /** Угол поворота робота за один шаг (в радианах) */
+    static final double ANGULAR_STEP = 0.05;
+
+    /** Максимальное расстояние, проходимое роботом за один шаг */
+    static final double MAX_SPEED = 2.0;
+
+    /** Длина тела робота вдоль направления движения */
+    public static final double BODY_LENGTH = 40;
+
+    /** Ширина тела робота */
+    public static final double BODY_WIDTH = 10;
+
+    /** Начальная ёмкость массивов */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Координаты X роботов */
+    private double[] x;
+
+    /** Координаты Y роботов */
+    private double[] y;
+
+    /** Направления движения роботов в радианах */
+    private double[] direction;
+
+    /** Координаты X целей */
+    private double[] targetX;
+
+    /** Координаты Y целей */
+    private double[] targetY;
+
+    /** Текущее количество роботов */
+    private int count;
+
+    /** Планировщик путей в обход препятствий; {@code null}, если роботы едут к цели напрямую */
+    private PathPlanner pathPlanner;
+
+    /** Версия целей: увеличивается при любом изменении целей или состава парка */
+    private int targetsVersion;
+
+    /**
+     * Промежуточная клетка пути робота от {@link PathPlanner#plan}; вместе с ней хранятся клетка цели
+     * и версия карты, для которых путь проложен (-1 - путь не прокладывался), и клетка робота
+     * на момент последней проверки пути.
+     */
+    private int[] pathWaypoint;
+    private int[] pathTarget;
+    private int[] pathVersion;
+    private int[] pathFrom;
+
+    /**
+     * Создаёт пустой парк роботов с ёмкостью по умолчанию.
+     */
+    public RobotFleet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Создаёт пустой парк роботов с заданной начальной ёмкостью.
+     * @param capacity количество роботов, под которое заранее выделяются массивы
+     * @throws IllegalArgumentException если ёмкость не положительна
+     */
+    public RobotFleet(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость должна быть положительной: " + capacity);
+        }
+        x = new double[capacity];
+        y = new double[capacity];
+        direction = new double[capacity];
+        targetX = new double[capacity];
+        targetY = new double[capacity];
+    }
+
+    /**
+     * Добавляет робота, цель которого совпадает с его начальной позицией.
+     * @param startX    начальная координата X
+     * @param startY    начальная координата Y
+     * @param startDirection начальное направление в радианах
+     * @return индекс добавленного робота
+     */
+    public int addRobot(double startX, double startY, double startDirection) {
+        ensureCapacity(count + 1);
+        int index = count++;
+        x[index] = startX;
+        y[index] = startY;
+        direction[index] = startDirection;
+        targetX[index] = startX;
+        targetY[index] = startY;
+        if (pathVersion != null) {
+            pathVersion[index] = -1;
+        }
+        targetsVersion++;
+        return index;
+    }
+
+    /**
+     * Гарантирует, что массивы вмещают не менее {@code required} роботов.
+     * @param required требуемая ёмкость
+     */
+    public void ensureCapacity(int required) {
+        if (required <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, x.length * 2);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        direction = Arrays.copyOf(direction, newCapacity);
+        targetX = Arrays.copyOf(targetX, newCapacity);
+        targetY = Arrays.copyOf(targetY, newCapacity);
+        if (pathVersion != null) {
+            pathWaypoint = Arrays.copyOf(pathWaypoint, newCapacity);
+            pathTarget = Arrays.copyOf(pathTarget, newCapacity);
+            pathVersion = Arrays.copyOf(pathVersion, newCapacity);
+            pathFrom = Arrays.copyOf(pathFrom, newCapacity);
+        }
+    }
+
+    /**
+     * Задаёт планировщик путей. С планировщиком робот едет к центру следующей клетки пути
+     * к своей цели, а без него - к цели напрямую.
+     * @param planner планировщик путей или {@code null}
+     */
+    public void setPathPlanner(PathPlanner planner) {
+        pathPlanner = planner;
+        if (planner == null) {
+            pathWaypoint = pathTarget = pathVersion = pathFrom = null;
+        } else {
+            pathWaypoint = new int[x.length];
+            pathTarget = new int[x.length];
+            pathVersion = new int[x.length];
+            pathFrom = new int[x.length];
+            Arrays.fill(pathVersion, -1);
+        }
+    }
+
+    /**
+     * Устанавливает цель для одного робота.
+     * @param index индекс робота
+     * @param newTargetX координата X цели
+     * @param newTargetY координата Y цели
+     */
+    public void setTarget(int index, double newTargetX, double newTargetY) {
+        checkIndex(index);
+        targetX[index] = newTargetX;
+        targetY[index] = newTargetY;
+        targetsVersion++;
+    }
+
+    /**
+     * Устанавливает общую цель для всех роботов.
+     * @param newTargetX координата X цели
+     * @param newTargetY координата Y цели
+     */
+    public void setTargetForAll(double newTargetX, double newTargetY) {
+        Arrays.fill(targetX, 0, count, newTargetX);
+        Arrays.fill(targetY, 0, count, newTargetY);
+        targetsVersion++;
+    }
+
+    /**
+     * Продвигает всех роботов на один шаг симуляции.
+     * Проход не выделяет памяти и работает непосредственно с массивами.
+     * @return количество роботов, которые повернулись или сдвинулись
+     */
+    public int step() {
+        preparePaths();
+        return stepRange(0, count);
+    }
+
+    /**
+     * Подготавливает планировщик путей к шагу. Вызывается перед {@link #stepRange(int, int)}
+     * в потоке, изменяющем парк.
+     */
+    void preparePaths() {
+        if (pathPlanner != null) {
+            pathPlanner.prepare(this);
+        }
+    }
+
+    /**
+     * Продвигает на один шаг роботов с индексами из полуинтервала [from; to).
+     * Перед шагом должен быть вызван {@link #preparePaths()}.
+     * @param from индекс первого робота (включительно)
+     * @param to   индекс последнего робота (не включительно)
+     * @return количество роботов диапазона, которые повернулись или сдвинулись
+     */
+    public int stepRange(int from, int to) {
+        final double[] xs = x;
+        final double[] ys = y;
+        final double[] dirs = direction;
+        final double[] txs = targetX;
+        final double[] tys = targetY;
+        final PathPlanner planner = pathPlanner != null && pathPlanner.isRouting() ? pathPlanner : null;
+        int moved = 0;
+
+        for (int i = from; i < to; i++) {
+            double px = xs[i];
+            double py = ys[i];
+            double dx = txs[i] - px;
+            double dy = tys[i] - py;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance < ARRIVAL_DISTANCE) {
+                continue; // робот уже у цели
+            }
+            moved++;
+
+            double aimX = dx;
+            double aimY = dy;
+            if (planner != null) {
+                int cell = nextCell(planner, i, px, py);
+                if (cell != FlowField.NONE) {
+                    ObstacleMap map = planner.getMap();
+                    aimX = map.centerX(cell) - px;
+                    aimY = map.centerY(cell) - py;
+                }
+            }
+
+            double dir = dirs[i];
+            double angleDiff = normalizeAngle(Math.atan2(aimY, aimX) - dir);
+            if (Math.abs(angleDiff) > ANGLE_TOLERANCE) {
+                // робот поворачивается к цели или к следующей клетке пути
+                dirs[i] = dir + Math.signum(angleDiff) * ANGULAR_STEP;
+            } else {
+                // робот движется вперёд к цели
+                double speed = Math.min(MAX_SPEED, distance);
+                xs[i] = px + speed * Math.cos(dir);
+                ys[i] = py + speed * Math.sin(dir);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Возвращает клетку, к которой робот должен ехать: по общему полю направлений, если оно есть
+     * для цели робота, иначе по собственному пути. Путь прокладывается заново, если сменились цель
+     * или карта, робот доехал до промежуточной клетки или, перейдя в другую клетку, потерял её из виду.
+     */
+    private int nextCell(PathPlanner planner, int i, double px, double py) {
+        ObstacleMap map = planner.getMap();
+        int target = map.cellAt(targetX[i], targetY[i]);
+        if (target < 0) {
+            return FlowField.NONE;
+        }
+        FlowField field = planner.sharedField(target);
+        if (field != null) {
+            return field.nextCell(px, py);
+        }
+        int from = map.cellAt(px, py);
+        int waypoint = pathWaypoint[i];
+        int version = planner.getPreparedVersion();
+        boolean replan;
+        if (pathVersion[i] != version || pathTarget[i] != target) {
+            replan = true;
+        } else if (from == pathFrom[i] || waypoint == PathPlanner.UNREACHABLE) {
+            replan = false;
+        } else if (waypoint == FlowField.NONE) {
+            replan = !planner.isVisible(px, py, targetX[i], targetY[i]);
+        } else {
+            replan = from == waypoint || !planner.isVisible(px, py, map.centerX(waypoint), map.centerY(waypoint));
+        }
+        if (replan) {
+            waypoint = planner.plan(px, py, targetX[i], targetY[i], target);
+            pathWaypoint[i] = waypoint;
+            pathTarget[i] = target;
+            pathVersion[i] = version;
+        }
+        pathFrom[i] = from;
+        return waypoint >= 0 ? waypoint : FlowField.NONE;
+    }
+
+    /**
+     * Проверяет, достиг ли робот своей цели.
+     * @param index индекс робота
+     * @return {@code true}, если робот ближе к цели, чем {@link #ARRIVAL_DISTANCE}
+     */
+    public boolean isAtTarget(int index) {
+        checkIndex(index);
+        double dx = targetX[index] - x[index];
+        double dy = targetY[index] - y[index];
+        return Math.sqrt(dx * dx + dy * dy) < ARRIVAL_DISTANCE;
+    }
+
+    /**
+     * Сдвигает робота на заданный вектор, не меняя его направления.
+     * Используется при разрешении столкновений.
+     */
+    void moveBy(int index, double dx, double dy) {
+        x[index] += dx;
+        y[index] += dy;
+    }
+
+    /**
+     * Копирует состояние первых {@link #size()} роботов в переданные массивы.
+     * Массивы должны вмещать не менее {@code size()} элементов.
+     */
+    void copyState(double[] xs, double[] ys, double[] dirs, double[] txs, double[] tys) {
+        System.arraycopy(x, 0, xs, 0, count);
+        System.arraycopy(y, 0, ys, 0, count);
+        System.arraycopy(direction, 0, dirs, 0, count);
+        System.arraycopy(targetX, 0, txs, 0, count);
+        System.arraycopy(targetY, 0, tys, 0, count);
+    }
+
+    /**
+     * Возвращает массивы состояния для пакетного чтения и записи без копирования:
+     * координаты X и Y, направления, координаты X и Y целей. Значимы первые {@link #size()} элементов.
+     * Ссылки действительны до следующего изменения ёмкости.
+     */
+    double[][] columns() {
+        return new double[][]{x, y, direction, targetX, targetY};
+    }
+
+    /**
+     * Задаёт количество роботов при восстановлении состояния, не трогая содержимое массивов.
+     * Проложенные пути сбрасываются.
+     * @param newCount новое количество роботов
+     */
+    void resize(int newCount) {
+        ensureCapacity(newCount);
+        count = newCount;
+        resetPaths();
+        targetsVersion++;
+    }
+
+    /**
+     * Сбрасывает пути, проложенные для роботов: на следующем шаге они прокладываются заново.
+     * Пути не входят в контрольную точку, поэтому сбрасываются и в сохраняемой модели,
+     * и в восстановленной - иначе продолжения симуляции в них разошлись бы.
+     */
+    void resetPaths() {
+        if (pathVersion != null) {
+            Arrays.fill(pathVersion, -1);
+        }
+    }
+
+    /**
+     * Вычисляет хеш точных двоичных значений состояния всех роботов.
+     * @return хеш состояния
+     */
+    public long stateHash() {
+        long hash = count;
+        for (double[] column : columns()) {
+            for (int i = 0; i < count; i++) {
+                hash = mixHash(hash, Double.doubleToRawLongBits(column[i]));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Подмешивает значение в хеш.
+     * @param hash  текущий хеш
+     * @param value значение
+     * @return новый хеш
+     */
+    static long mixHash(long hash, long value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Нормализует угол в диапазон [-π; π].
+     *
+     * @param angle угол в радианах
+     * @return нормализованный угол
+     */
+    static double normalizeAngle(double angle) {
+        while (angle < -Math.PI) angle += 2 * Math.PI;
+        while (angle > Math.PI) angle -= 2 * Math.PI;
+        return angle;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Робот " + index + " не существует, всего роботов: " + count);
+        }
+    }
+
+    /** @return версия целей, увеличивающаяся при каждом изменении целей или состава парка */
+    int getTargetsVersion() {
+        return targetsVersion;
+    }
+
+    /** @return текущее количество роботов */
+    public int size() {
+        return count;
+    }
+
+    /** @return координата X робота с указанным индексом */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /** @return координата Y робота с указанным индексом */
+    public double getY(int index) {
+        return y[index];
+    }
+
+    /** @return направление робота с указанным индексом (в радианах) */
+    public double getDirection(int index) {
+        return direction[index];
+    }
+
+    /** @return координата X цели робота с указанным индексом */
+    public double getTargetX(int index) {
+        return targetX[index];
+    }
+
+    /** @return координата Y цели робота с указанным индексом */
+    public double getTargetY(int index) {
+        return targetY[index];
+    }
+}
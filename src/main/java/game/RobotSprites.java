@@ -0,0 +1,289 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Заранее растеризованные изображения робота и цели для быстрой отрисовки большого парка.
+ * Поворот робота квантуется на {@link #ROTATION_BUCKETS} направлений; для каждого направления
+ * робот один раз рисуется в {@link BufferedImage}, после чего непрозрачные пиксели изображения
+ * сохраняются списком смещений и цветов. Кадр переносит эти пиксели прямо в массив кадра
+ * {@link BufferedImage#TYPE_INT_RGB} за один проход по снимку - без создания графических контекстов,
+ * поворотов и отдельного вызова {@link Graphics#drawImage} на каждого робота. Изображения
+ * растеризуются для одного масштаба камеры; при смене масштаба создаётся новый набор.
+ * <p>
+ * Фигуры рисуются без сглаживания, поэтому пиксели изображений либо непрозрачны, либо полностью
+ * прозрачны и переносятся без смешивания цветов. Экземпляр не потокобезопасен.
+ */
+public final class RobotSprites {
+    /** Количество направлений, на которые квантуется поворот робота */
+    public static final int ROTATION_BUCKETS = 64;
+
+    /** Диаметр отметки цели при масштабе 1 */
+    static final int TARGET_SIZE = 10;
+
+    /** Масштаб, в котором растеризованы изображения */
+    private final double scale;
+
+    /** Сторона квадратного изображения робота, вмещающая тело при любом повороте */
+    private final int robotSpriteSize;
+
+    /** Диаметр отметки цели на экране */
+    private final int targetSize;
+
+    private final Stamp[] robots = new Stamp[ROTATION_BUCKETS];
+    private final Stamp target;
+
+    /**
+     * Растеризует изображения робота для всех направлений и изображение цели в масштабе 1.
+     */
+    public RobotSprites() {
+        this(1);
+    }
+
+    /**
+     * Растеризует изображения робота для всех направлений и изображение цели.
+     * @param scale количество экранных пикселей на один мировой
+     */
+    public RobotSprites(double scale) {
+        this.scale = scale;
+        this.robotSpriteSize = (int) Math.ceil(Math.hypot(RobotFleet.BODY_LENGTH, RobotFleet.BODY_WIDTH) * scale) + 2;
+        this.targetSize = Math.max(2, (int) Math.round(TARGET_SIZE * scale));
+        for (int bucket = 0; bucket < ROTATION_BUCKETS; bucket++) {
+            robots[bucket] = new Stamp(rasterizeRobot(bucket * 2 * Math.PI / ROTATION_BUCKETS));
+        }
+        BufferedImage image = new BufferedImage(targetSize, targetSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GREEN);
+        g.fillOval(0, 0, targetSize, targetSize);
+        g.dispose();
+        target = new Stamp(image);
+    }
+
+    private BufferedImage rasterizeRobot(double direction) {
+        BufferedImage image = new BufferedImage(robotSpriteSize, robotSpriteSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.translate(robotSpriteSize / 2, robotSpriteSize / 2);
+        g.rotate(direction);
+        g.scale(scale, scale);
+        g.setColor(Color.BLACK);
+        g.fillOval(-20, -5, 40, 10); // тело робота
+        g.setColor(Color.WHITE);
+        g.fillOval(20 - 2, -2, 4, 4); // "глаз" для направления
+        g.dispose();
+        return image;
+    }
+
+    /** @return масштаб, в котором растеризованы изображения */
+    public double getScale() {
+        return scale;
+    }
+
+    /** @return сторона квадрата на экране, в который вписано изображение робота */
+    public int getRobotSpriteSize() {
+        return robotSpriteSize;
+    }
+
+    /** @return диаметр отметки цели на экране */
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    /**
+     * Возвращает индекс направления, ближайшего к заданному углу.
+     * @param direction направление в радианах
+     * @return индекс от 0 до {@link #ROTATION_BUCKETS} - 1
+     */
+    static int bucketOf(double direction) {
+        long bucket = Math.round(direction * (ROTATION_BUCKETS / (2 * Math.PI)));
+        return (int) Math.floorMod(bucket, (long) ROTATION_BUCKETS);
+    }
+
+    /**
+     * Рисует роботов в промежуточном положении между двумя снимками и цели из более нового снимка.
+     * Координаты интерполируются линейно, направление - по кратчайшей дуге. Если снимки содержат
+     * разное количество роботов, рисуется новый снимок без интерполяции. Просматриваются только
+     * роботы из ячеек {@link SnapshotIndex} нового снимка, попадающих в область отсечения.
+     * @param frame    кадр типа {@link BufferedImage#TYPE_INT_RGB}
+     * @param clip     область кадра, которую можно изменять, или {@code null} для всего кадра
+     * @param camera   положение камеры; её масштаб должен совпадать с {@link #getScale()}
+     * @param previous предыдущий снимок
+     * @param snapshot новый снимок
+     * @param alpha    доля пути от предыдущего снимка к новому, от 0 до 1
+     * @throws IllegalArgumentException если кадр другого типа
+     */
+    public void drawFleet(BufferedImage frame, Rectangle clip, Camera camera,
+                          FleetSnapshot previous, FleetSnapshot snapshot, double alpha) {
+        if (previous == null || previous.size() != snapshot.size()) {
+            previous = snapshot;
+        }
+        int[] pixels = pixelsOf(frame);
+        int width = frame.getWidth();
+        Rectangle bounds = clipBounds(frame, clip);
+        if (bounds.isEmpty()) {
+            return;
+        }
+        int minX = bounds.x;
+        int minY = bounds.y;
+        int maxX = bounds.x + bounds.width;
+        int maxY = bounds.y + bounds.height;
+        double offsetX = camera.getOffsetX();
+        double offsetY = camera.getOffsetY();
+
+        // ячейки, которые могут задевать область: запас на размер робота и сдвиг при интерполяции
+        SnapshotIndex index = snapshot.getIndex();
+        double margin = robotSpriteSize / scale + index.getCellSize();
+        int firstColumn = index.columnOf(offsetX + minX / scale - margin);
+        int lastColumn = index.columnOf(offsetX + maxX / scale + margin);
+        int firstRow = index.rowOf(offsetY + minY / scale - margin);
+        int lastRow = index.rowOf(offsetY + maxY / scale + margin);
+        int half = robotSpriteSize / 2;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * index.getColumns() + column;
+                for (int position = index.cellStart(cell); position < index.cellEnd(cell); position++) {
+                    int i = index.robotAt(position);
+                    double fromX = previous.getX(i);
+                    double fromY = previous.getY(i);
+                    int x = (int) Math.floor((fromX + (snapshot.getX(i) - fromX) * alpha - offsetX) * scale);
+                    int y = (int) Math.floor((fromY + (snapshot.getY(i) - fromY) * alpha - offsetY) * scale);
+                    // грубое отсечение до вычисления направления: изображение не выходит за квадрат спрайта
+                    if (x + half >= minX && x - half < maxX && y + half >= minY && y - half < maxY) {
+                        double fromDirection = previous.getDirection(i);
+                        double turn = Math.IEEEremainder(snapshot.getDirection(i) - fromDirection, 2 * Math.PI);
+                        robots[bucketOf(fromDirection + turn * alpha)].draw(pixels, width, x, y, minX, minY, maxX, maxY);
+                    }
+                }
+            }
+        }
+
+        int lastX = Integer.MIN_VALUE;
+        int lastY = Integer.MIN_VALUE;
+        for (int i = 0; i < snapshot.size(); i++) {
+            int x = (int) Math.floor((snapshot.getTargetX(i) - offsetX) * scale);
+            int y = (int) Math.floor((snapshot.getTargetY(i) - offsetY) * scale);
+            if (x != lastX || y != lastY) {
+                target.draw(pixels, width, x, y, minX, minY, maxX, maxY);
+                lastX = x;
+                lastY = y;
+            }
+        }
+    }
+
+    /**
+     * @param frame кадр типа {@link BufferedImage#TYPE_INT_RGB}
+     * @return массив пикселей кадра
+     * @throws IllegalArgumentException если кадр другого типа
+     */
+    static int[] pixelsOf(BufferedImage frame) {
+        if (frame.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("Ожидается кадр TYPE_INT_RGB, получен тип " + frame.getType());
+        }
+        return ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @return пересечение области отсечения с кадром
+     */
+    static Rectangle clipBounds(BufferedImage frame, Rectangle clip) {
+        Rectangle bounds = new Rectangle(0, 0, frame.getWidth(), frame.getHeight());
+        return clip == null ? bounds : bounds.intersection(clip);
+    }
+
+    /**
+     * Непрозрачные пиксели одного изображения: смещения относительно центра и цвета.
+     */
+    private static final class Stamp {
+        private final int[] dx;
+        private final int[] dy;
+        private final int[] colors;
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+
+        /** Смещения пикселей в массиве кадра для ширины {@link #offsetsWidth} */
+        private int[] offsets;
+        private int offsetsWidth = -1;
+
+        Stamp(BufferedImage image) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+            int count = 0;
+            for (int pixel : argb) {
+                if (pixel >>> 24 >= 0x80) {
+                    count++;
+                }
+            }
+            dx = new int[count];
+            dy = new int[count];
+            colors = new int[count];
+            int centerX = width / 2;
+            int centerY = height / 2;
+            int left = 0;
+            int top = 0;
+            int right = 0;
+            int bottom = 0;
+            int k = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = argb[y * width + x];
+                    if (pixel >>> 24 < 0x80) {
+                        continue;
+                    }
+                    dx[k] = x - centerX;
+                    dy[k] = y - centerY;
+                    colors[k] = pixel & 0xFFFFFF;
+                    left = Math.min(left, dx[k]);
+                    top = Math.min(top, dy[k]);
+                    right = Math.max(right, dx[k]);
+                    bottom = Math.max(bottom, dy[k]);
+                    k++;
+                }
+            }
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        /**
+         * Переносит пиксели изображения с центром в точке (x, y) в область кадра
+         * [minX, maxX) x [minY, maxY).
+         */
+        void draw(int[] pixels, int width, int x, int y, int minX, int minY, int maxX, int maxY) {
+            if (x + right < minX || x + left >= maxX || y + bottom < minY || y + top >= maxY) {
+                return;
+            }
+            if (x + left >= minX && x + right < maxX && y + top >= minY && y + bottom < maxY) {
+                int[] offsets = offsetsFor(width);
+                int base = y * width + x;
+                for (int k = 0; k < offsets.length; k++) {
+                    pixels[base + offsets[k]] = colors[k];
+                }
+                return;
+            }
+            for (int k = 0; k < colors.length; k++) {
+                int px = x + dx[k];
+                int py = y + dy[k];
+                if (px >= minX && px < maxX && py >= minY && py < maxY) {
+                    pixels[py * width + px] = colors[k];
+                }
+            }
+        }
+
+        private int[] offsetsFor(int width) {
+            if (offsetsWidth != width) {
+                int[] computed = new int[colors.length];
+                for (int k = 0; k < computed.length; k++) {
+                    computed[k] = dy[k] * width + dx[k];
+                }
+                offsets = computed;
+                offsetsWidth = width;
+            }
+            return offsets;
+        }
+    }
+}
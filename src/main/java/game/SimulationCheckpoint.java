@@ -0,0 +1,169 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Контрольная точка симуляции: номер шага, карта препятствий и состояние всех роботов
+ * в одном двоичном файле.
+ * <p>
+ * Файл состоит из заголовка фиксированной длины и тела: слов битовой маски препятствий, затем
+ * массивов координат X и Y, направлений и координат целей, каждый из {@code count} чисел
+ * {@code double} подряд. Тело пишется через {@link FileChannel} большими блоками, заполняемыми
+ * пакетным копированием массивов, а при восстановлении файл отображается в память и массивы
+ * парка заполняются из него напрямую. Порядок байтов - little-endian, совпадающий с порядком
+ * большинства процессоров, поэтому копирование обходится без перестановки байтов.
+ * <p>
+ * Пути, проложенные для роботов, в файл не входят: они сбрасываются и в сохраняемой модели
+ * ({@link GameModel#saveCheckpoint}), и в восстановленной, и прокладываются заново на следующем шаге.
+ * <p>
+ * Запись идёт во временный файл, который атомарно переименовывается поверх прежнего;
+ * целостность тела проверяется по CRC32 из заголовка.
+ */
+public final class SimulationCheckpoint {
+    private static final int MAGIC = 0x52424350;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Заголовок: magic, version, tick, count, columns, rows, obstacleWords, cellSize, crc32, резерв
+     */
+    static final int HEADER_BYTES = 48;
+
+    /** Количество массивов состояния робота в теле файла */
+    private static final int COLUMNS = 5;
+
+    /** Размер блока, через который тело пишется в файл */
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private SimulationCheckpoint() {
+    }
+
+    /**
+     * Записывает состояние модели в файл.
+     * @param model модель; не должна изменяться во время записи
+     * @param path  файл контрольной точки
+     * @throws IOException при ошибке записи
+     */
+    static void write(GameModel model, Path path) throws IOException {
+        RobotFleet fleet = model.getFleet();
+        ObstacleMap obstacles = model.getObstacles();
+        int count = fleet.size();
+        long[] words = obstacles.toWords();
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES);
+            for (int from = 0; from < words.length; ) {
+                chunk.clear();
+                int length = Math.min(words.length - from, CHUNK_BYTES / Long.BYTES);
+                chunk.asLongBuffer().put(words, from, length);
+                writeChunk(channel, chunk, length * Long.BYTES, crc);
+                from += length;
+            }
+            for (double[] column : fleet.columns()) {
+                for (int from = 0; from < count; ) {
+                    chunk.clear();
+                    int length = Math.min(count - from, CHUNK_BYTES / Double.BYTES);
+                    chunk.asDoubleBuffer().put(column, from, length);
+                    writeChunk(channel, chunk, length * Double.BYTES, crc);
+                    from += length;
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(model.getTick()).putInt(count)
+                    .putInt(obstacles.getColumns()).putInt(obstacles.getRows()).putInt(words.length)
+                    .putDouble(obstacles.getCellSize()).putInt((int) crc.getValue()).putInt(0).flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeChunk(FileChannel channel, ByteBuffer chunk, int bytes, CRC32 crc) throws IOException {
+        chunk.limit(bytes);
+        crc.update(chunk.duplicate());
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+    }
+
+    /**
+     * Заменяет состояние модели состоянием из файла.
+     * Модель изменяется только после того, как файл полностью проверен.
+     * @param path  файл контрольной точки
+     * @param model модель
+     * @throws IOException если файл не читается, повреждён или записан для карты другого размера
+     */
+    static void read(Path path, GameModel model) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Некорректный размер контрольной точки: " + size);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != FORMAT_VERSION) {
+                throw new IOException("Неизвестный формат контрольной точки: " + path);
+            }
+            long tick = mapped.getLong();
+            int count = mapped.getInt();
+            int columns = mapped.getInt();
+            int rows = mapped.getInt();
+            int wordCount = mapped.getInt();
+            double cellSize = mapped.getDouble();
+            int expectedCrc = mapped.getInt();
+
+            ObstacleMap obstacles = model.getObstacles();
+            if (columns != obstacles.getColumns() || rows != obstacles.getRows()
+                    || cellSize != obstacles.getCellSize()) {
+                throw new IOException("Контрольная точка записана для карты " + columns + "x" + rows);
+            }
+            long bodyBytes = (long) wordCount * Long.BYTES + (long) COLUMNS * count * Double.BYTES;
+            if (count <= GameModel.PRIMARY_ROBOT || wordCount < 0 || HEADER_BYTES + bodyBytes != size) {
+                throw new IOException("Некорректная контрольная точка: " + path);
+            }
+            ByteBuffer body = mapped.slice(HEADER_BYTES, (int) bodyBytes).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Контрольная точка повреждена: " + path);
+            }
+
+            long[] words = new long[wordCount];
+            body.asLongBuffer().get(words);
+            body.position(wordCount * Long.BYTES);
+            RobotFleet fleet = model.getFleet();
+            fleet.resize(count);
+            for (double[] column : fleet.columns()) {
+                body.asDoubleBuffer().get(column, 0, count);
+                body.position(body.position() + count * Double.BYTES);
+            }
+            obstacles.restore(words);
+            model.afterRestore(tick);
+        }
+    }
+}
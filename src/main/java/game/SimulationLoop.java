@@ -0,0 +1,177 @@
+package game;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Цикл симуляции с фиксированным шагом, работающий в отдельном потоке.
+ * Физика модели продвигается с заданной частотой независимо от отрисовки: если шаги опаздывают,
+ * цикл догоняет их (но не более {@link #MAX_CATCH_UP_TICKS} за раз), а после каждой серии шагов
+ * публикует неизменяемый {@link FleetSnapshot}, который визуализатор читает со своей частотой кадров.
+ * <p>
+ * Модель изменяется только потоком симуляции. Действия пользователя передаются в него
+ * через {@link #submit(Runnable)} и выполняются перед очередным шагом.
+ */
+public class SimulationLoop {
+    /** Частота шагов симуляции по умолчанию (шагов в секунду) */
+    public static final int DEFAULT_TICK_RATE = 20;
+
+    /** Максимальное количество шагов, выполняемых подряд при отставании от расписания */
+    static final int MAX_CATCH_UP_TICKS = 5;
+
+    /** Модель, которую продвигает цикл */
+    private final GameModel model;
+
+    /** Команды, ожидающие выполнения в потоке симуляции */
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    /** Последний опубликованный снимок состояния */
+    private volatile FleetSnapshot snapshot;
+
+    /** Снимок, опубликованный перед последним; нужен для интерполяции при отрисовке */
+    private volatile FleetSnapshot previousSnapshot;
+
+    /** Длительность одного шага в наносекундах */
+    private volatile long tickPeriodNanos;
+
+    /** Признак работы цикла */
+    private volatile boolean running;
+
+    /** Поток симуляции */
+    private Thread thread;
+
+    /**
+     * Создаёт цикл симуляции для модели.
+     * @param model    модель игры
+     * @param tickRate частота шагов в секунду
+     * @throws IllegalArgumentException если частота не положительна
+     */
+    public SimulationLoop(GameModel model, int tickRate) {
+        this.model = model;
+        setTickRate(tickRate);
+        this.snapshot = FleetSnapshot.of(model, System.nanoTime());
+        this.previousSnapshot = snapshot;
+    }
+
+    /**
+     * Запускает поток симуляции. Повторный вызов для работающего цикла ничего не делает.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "robots-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Останавливает поток симуляции и дожидается его завершения.
+     * Команды, не успевшие выполниться, выполняются в вызывающем потоке.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        drainCommands();
+        publish(FleetSnapshot.of(model, System.nanoTime()));
+    }
+
+    /**
+     * Ставит действие в очередь на выполнение в потоке симуляции перед следующим шагом.
+     * @param command действие, изменяющее модель
+     */
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * Изменяет частоту шагов симуляции. Новое значение применяется со следующего шага.
+     * @param tickRate частота шагов в секунду
+     * @throws IllegalArgumentException если частота не положительна
+     */
+    public void setTickRate(int tickRate) {
+        if (tickRate <= 0) {
+            throw new IllegalArgumentException("Частота шагов должна быть положительной: " + tickRate);
+        }
+        tickPeriodNanos = TimeUnit.SECONDS.toNanos(1) / tickRate;
+    }
+
+    /** @return частота шагов симуляции в секунду */
+    public int getTickRate() {
+        return (int) (TimeUnit.SECONDS.toNanos(1) / tickPeriodNanos);
+    }
+
+    /** @return длительность одного шага в наносекундах */
+    public long getTickPeriodNanos() {
+        return tickPeriodNanos;
+    }
+
+    /** @return последний опубликованный снимок состояния роботов */
+    public FleetSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Возвращает снимок, опубликованный перед последним. Читать его нужно после
+     * {@link #getSnapshot()}: если между чтениями опубликован новый снимок, предыдущим окажется
+     * уже прочитанный (с тем же номером шага), и интерполировать между ними нечего.
+     * @return предыдущий снимок состояния роботов
+     */
+    public FleetSnapshot getPreviousSnapshot() {
+        return previousSnapshot;
+    }
+
+    /** @return модель, которую продвигает цикл */
+    public GameModel getModel() {
+        return model;
+    }
+
+    /**
+     * Основной цикл потока симуляции.
+     * Выполняет все шаги, время которых наступило, публикует снимок и засыпает до следующего шага.
+     */
+    private void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            int ticks = 0;
+            while (now - nextTick >= 0 && ticks < MAX_CATCH_UP_TICKS) {
+                drainCommands();
+                model.updateRobotPosition();
+                nextTick += tickPeriodNanos;
+                ticks++;
+            }
+            if (now - nextTick >= 0) {
+                // отставание слишком велико: пропускаем накопившиеся шаги вместо бесконечной погони
+                nextTick = now + tickPeriodNanos;
+            }
+            if (ticks > 0) {
+                publish(FleetSnapshot.of(model, now));
+            }
+            LockSupport.parkNanos(nextTick - System.nanoTime());
+        }
+    }
+
+    private void publish(FleetSnapshot next) {
+        previousSnapshot = snapshot;
+        snapshot = next;
+    }
+
+    private void drainCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+        }
+    }
+}
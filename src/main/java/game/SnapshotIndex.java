@@ -0,0 +1,137 @@
+package game;
+
+/**
+ * Пространственный индекс снимка для отрисовки: роботы, отсортированные по ячейкам
+ * равномерной сетки, накрывающей всех роботов снимка. Строится сортировкой подсчётом за
+ * O(n + ячеек) и дальше не изменяется, поэтому его можно читать из любого потока.
+ * Отрисовка просматривает только ячейки, попадающие в видимую область, и за O(1) узнаёт
+ * количество роботов в ячейке для карты плотности.
+ */
+final class SnapshotIndex {
+    /** Сторона ячейки по умолчанию */
+    static final double CELL_SIZE = 32;
+
+    /** Наибольшее количество ячеек на одного робота; при большем сетка укрупняется */
+    private static final int MAX_CELLS_PER_ROBOT = 2;
+
+    /** Наименьшее допустимое количество ячеек независимо от числа роботов */
+    private static final int MIN_CELL_LIMIT = 4096;
+
+    private final double originX;
+    private final double originY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    /** Начало списка роботов каждой ячейки в {@link #order}; последний элемент - общее количество */
+    private final int[] cellStart;
+
+    /** Индексы роботов, упорядоченные по ячейкам */
+    private final int[] order;
+
+    /**
+     * Строит индекс по положениям роботов снимка.
+     * @param snapshot снимок
+     */
+    SnapshotIndex(FleetSnapshot snapshot) {
+        int count = snapshot.size();
+        double minX = 0;
+        double minY = 0;
+        double maxX = 0;
+        double maxY = 0;
+        for (int i = 0; i < count; i++) {
+            double x = snapshot.getX(i);
+            double y = snapshot.getY(i);
+            if (i == 0 || x < minX) {
+                minX = x;
+            }
+            if (i == 0 || x > maxX) {
+                maxX = x;
+            }
+            if (i == 0 || y < minY) {
+                minY = y;
+            }
+            if (i == 0 || y > maxY) {
+                maxY = y;
+            }
+        }
+        long cellLimit = Math.max(MIN_CELL_LIMIT, (long) count * MAX_CELLS_PER_ROBOT);
+        double size = CELL_SIZE;
+        while (cellCount(minX, maxX, size) * cellCount(minY, maxY, size) > cellLimit) {
+            size *= 2;
+        }
+        originX = minX;
+        originY = minY;
+        cellSize = size;
+        columns = (int) cellCount(minX, maxX, size);
+        rows = (int) cellCount(minY, maxY, size);
+
+        int[] cells = new int[count];
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++) {
+            int cell = rowOf(snapshot.getY(i)) * columns + columnOf(snapshot.getX(i));
+            cells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        order = new int[count];
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            order[cellStart[cell] + fill[cell]++] = i;
+        }
+    }
+
+    private static long cellCount(double min, double max, double size) {
+        return (long) ((max - min) / size) + 1;
+    }
+
+    /** @return столбец ячейки, ограниченный пределами сетки */
+    int columnOf(double x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - originX) / cellSize)));
+    }
+
+    /** @return строка ячейки, ограниченная пределами сетки */
+    int rowOf(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - originY) / cellSize)));
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    double getCellSize() {
+        return cellSize;
+    }
+
+    /** @return мировая координата X левого края столбца */
+    double cellLeft(int column) {
+        return originX + column * cellSize;
+    }
+
+    /** @return мировая координата Y верхнего края строки */
+    double cellTop(int row) {
+        return originY + row * cellSize;
+    }
+
+    /** @return позиция первого робота ячейки в {@link #robotAt(int)} */
+    int cellStart(int cell) {
+        return cellStart[cell];
+    }
+
+    /** @return позиция после последнего робота ячейки */
+    int cellEnd(int cell) {
+        return cellStart[cell + 1];
+    }
+
+    /** @return индекс робота по позиции в упорядоченном списке */
+    int robotAt(int position) {
+        return order[position];
+    }
+}
@@ -0,0 +1,282 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Пространственный индекс роботов на равномерной сетке.
+ * Поле разбито на квадратные ячейки; ячейка хешируется в одну из корзин, а роботы одной корзины
+ * связаны в двусвязный список, хранящийся в массивах {@code int[]}. Перемещение робота
+ * внутри ячейки ничего не стоит, переход в другую ячейку - O(1). Запросы точки и круга
+ * просматривают только ячейки, пересекающие область запроса, поэтому при радиусе порядка
+ * размера ячейки их средняя стоимость не зависит от общего количества роботов.
+ * <p>
+ * Индекс не потокобезопасен и должен изменяться и опрашиваться в потоке, изменяющем парк.
+ */
+public class SpatialGrid {
+    /** Признак конца списка и отсутствия робота */
+    private static final int NONE = -1;
+
+    /** Парк роботов, по которому построен индекс */
+    private final RobotFleet fleet;
+
+    /** Сторона ячейки */
+    private final double cellSize;
+
+    /** Величина, обратная стороне ячейки */
+    private final double inverseCellSize;
+
+    /** Первый робот в каждой корзине */
+    private int[] bucketHead;
+
+    /** Маска номера корзины (количество корзин - степень двойки) */
+    private int bucketMask;
+
+    /** Следующий и предыдущий робот в списке корзины */
+    private int[] next;
+    private int[] prev;
+
+    /** Ячейка, в которой робот учтён в индексе */
+    private int[] cellX;
+    private int[] cellY;
+
+    /** Количество роботов, учтённых в индексе */
+    private int indexed;
+
+    /**
+     * Строит индекс по текущему состоянию парка.
+     * @param fleet    парк роботов
+     * @param cellSize сторона ячейки; разумно брать порядка радиуса типичного запроса
+     * @throws IllegalArgumentException если сторона ячейки не положительна
+     */
+    public SpatialGrid(RobotFleet fleet, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Сторона ячейки должна быть положительной: " + cellSize);
+        }
+        this.fleet = fleet;
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1 / cellSize;
+        rebuild();
+    }
+
+    /**
+     * Полностью перестраивает индекс, подбирая количество корзин под размер парка.
+     */
+    public void rebuild() {
+        int count = fleet.size();
+        int buckets = Integer.highestOneBit(Math.max(16, count * 2 - 1)) << 1;
+        bucketHead = new int[buckets];
+        Arrays.fill(bucketHead, NONE);
+        bucketMask = buckets - 1;
+
+        int capacity = Math.max(16, count);
+        next = new int[capacity];
+        prev = new int[capacity];
+        cellX = new int[capacity];
+        cellY = new int[capacity];
+        indexed = 0;
+        for (int i = 0; i < count; i++) {
+            insert(i);
+        }
+    }
+
+    /**
+     * Приводит индекс в соответствие с текущими позициями роботов.
+     * Новые роботы добавляются, а перелинковываются только роботы, сменившие ячейку.
+     */
+    public void update() {
+        int count = fleet.size();
+        if (count > bucketHead.length) {
+            rebuild();
+            return;
+        }
+        for (int i = 0; i < indexed; i++) {
+            int cx = cellOf(fleet.getX(i));
+            int cy = cellOf(fleet.getY(i));
+            if (cx != cellX[i] || cy != cellY[i]) {
+                unlink(i);
+                link(i, cx, cy);
+            }
+        }
+        while (indexed < count) {
+            insert(indexed);
+        }
+    }
+
+    /**
+     * Добавляет в индекс роботов, появившихся в парке после последнего обновления, не проверяя
+     * уже учтённых. Подходит, пока учтённые роботы не двигались, например при заполнении парка:
+     * добавление n роботов по одному стоит O(n), а не O(n²), как при {@link #update()}.
+     */
+    public void addNew() {
+        if (fleet.size() > bucketHead.length) {
+            rebuild();
+            return;
+        }
+        while (indexed < fleet.size()) {
+            insert(indexed);
+        }
+    }
+
+    /**
+     * Находит роботов, центры которых лежат в круге заданного радиуса.
+     * Найденные индексы записываются в {@code out}; если их больше, чем помещается в массив,
+     * лишние отбрасываются.
+     * @param x      координата X центра круга
+     * @param y      координата Y центра круга
+     * @param radius радиус круга
+     * @param out    массив для индексов найденных роботов
+     * @return количество записанных индексов
+     */
+    public int queryRadius(double x, double y, double radius, int[] out) {
+        int found = 0;
+        double radiusSquared = radius * radius;
+        int minX = cellOf(x - radius);
+        int maxX = cellOf(x + radius);
+        int minY = cellOf(y - radius);
+        int maxY = cellOf(y + radius);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > indexed) {
+            // круг покрывает больше ячеек, чем есть роботов: дешевле проверить всех
+            for (int i = 0; i < indexed; i++) {
+                double dx = fleet.getX(i) - x;
+                double dy = fleet.getY(i) - y;
+                if (dx * dx + dy * dy <= radiusSquared) {
+                    if (found == out.length) {
+                        return found;
+                    }
+                    out[found++] = i;
+                }
+            }
+            return found;
+        }
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int i = bucketHead[bucketOf(cx, cy)]; i != NONE; i = next[i]) {
+                    // в корзине могут оказаться роботы других ячеек с тем же хешем
+                    if (cellX[i] != cx || cellY[i] != cy) {
+                        continue;
+                    }
+                    double dx = fleet.getX(i) - x;
+                    double dy = fleet.getY(i) - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        if (found == out.length) {
+                            return found;
+                        }
+                        out[found++] = i;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Находит робота, тело которого (эллипс {@link RobotFleet#BODY_LENGTH} x {@link RobotFleet#BODY_WIDTH},
+     * повёрнутый по направлению движения) содержит точку. Если таких несколько,
+     * возвращается робот с ближайшим к точке центром.
+     * @param x координата X точки
+     * @param y координата Y точки
+     * @return индекс робота или -1, если точка не попадает ни в одного робота
+     */
+    public int robotAt(double x, double y) {
+        double semiMajor = RobotFleet.BODY_LENGTH / 2;
+        double semiMinor = RobotFleet.BODY_WIDTH / 2;
+        int best = NONE;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        int minX = cellOf(x - semiMajor);
+        int maxX = cellOf(x + semiMajor);
+        int minY = cellOf(y - semiMajor);
+        int maxY = cellOf(y + semiMajor);
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int i = bucketHead[bucketOf(cx, cy)]; i != NONE; i = next[i]) {
+                    if (cellX[i] != cx || cellY[i] != cy) {
+                        continue;
+                    }
+                    double dx = x - fleet.getX(i);
+                    double dy = y - fleet.getY(i);
+                    double distance = dx * dx + dy * dy;
+                    if (distance >= bestDistance || distance > semiMajor * semiMajor) {
+                        continue;
+                    }
+                    // переводим точку в систему координат робота
+                    double direction = fleet.getDirection(i);
+                    double cos = Math.cos(direction);
+                    double sin = Math.sin(direction);
+                    double along = (dx * cos + dy * sin) / semiMajor;
+                    double across = (dy * cos - dx * sin) / semiMinor;
+                    if (along * along + across * across <= 1) {
+                        best = i;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** @return сторона ячейки */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    private void insert(int i) {
+        ensureCapacity(i + 1);
+        link(i, cellOf(fleet.getX(i)), cellOf(fleet.getY(i)));
+        indexed = Math.max(indexed, i + 1);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= next.length) {
+            return;
+        }
+        int capacity = Math.max(required, next.length * 2);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        cellX = Arrays.copyOf(cellX, capacity);
+        cellY = Arrays.copyOf(cellY, capacity);
+    }
+
+    private void link(int i, int cx, int cy) {
+        int bucket = bucketOf(cx, cy);
+        int head = bucketHead[bucket];
+        cellX[i] = cx;
+        cellY[i] = cy;
+        prev[i] = NONE;
+        next[i] = head;
+        if (head != NONE) {
+            prev[head] = i;
+        }
+        bucketHead[bucket] = i;
+    }
+
+    private void unlink(int i) {
+        int before = prev[i];
+        int after = next[i];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            bucketHead[bucketOf(cellX[i], cellY[i])] = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        }
+    }
+
+    private int cellOf(double coordinate) {
+        return floor(coordinate * inverseCellSize);
+    }
+
+    /**
+     * Округляет вниз до целого без обращения к {@link Math#floor(double)}, которая заметно медленнее
+     * на горячем пути. Значения за пределами {@code int} не поддерживаются.
+     */
+    static int floor(double value) {
+        int truncated = (int) value;
+        return value < truncated ? truncated - 1 : truncated;
+    }
+
+    private int bucketOf(int cx, int cy) {
+        int hash = cx * 73856093 ^ cy * 19349663;
+        return (hash ^ (hash >>> 16)) & bucketMask;
+    }
+}
@@ -0,0 +1,271 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Слой следов: карта того, где роботы бывали, с постепенным затуханием.
+ * <p>
+ * Накоплением занимается собственный поток {@code robots-trails}. Модель лишь будит его
+ * уведомлением {@link ModelChangeListener} после шага, а поток читает неизменяемый снимок
+ * {@link SimulationLoop} и добавляет положения роботов в массив {@code int[]} «тепла» поля.
+ * Раз в {@link #PUBLISH_PERIOD_NANOS} тепло ослабляется и переводится в цвета изображения
+ * {@link BufferedImage} на основе {@code int[]}. Изображений три (тройная буферизация): поток
+ * пишет в своё, отдаёт его через {@link AtomicReference} и берёт освободившееся, поэтому
+ * отрисовка всегда видит целое изображение, а работа потока не выделяет памяти.
+ * Компонент отрисовки выводит слой одним {@link Graphics#drawImage} за кадр.
+ */
+public final class TrailLayer implements ModelChangeListener, AutoCloseable {
+    /** Сторона клетки слоя в мировых пикселях по умолчанию */
+    public static final double DEFAULT_CELL_SIZE = 4;
+
+    /** Доля тепла, остающаяся через секунду, по умолчанию */
+    public static final double DEFAULT_RETENTION = 0.5;
+
+    /** Период ослабления тепла и обновления изображения */
+    static final long PUBLISH_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** Тепло, добавляемое клетке за каждое попадание робота */
+    private static final int HEAT_PER_VISIT = 4096;
+
+    /**
+     * Наибольшее тепло клетки: его старшие биты - последний индекс {@link #PALETTE}. Ослабление
+     * тепло не увеличивает, поэтому индекс не выходит за палитру и при доле 1, когда тепло не гаснет.
+     */
+    private static final int MAX_HEAT = (1 << 16) - 1;
+
+    /** Цвета слоя по уровню тепла (старшие биты тепла); нулевой уровень прозрачен */
+    private static final int[] PALETTE = createPalette(256);
+
+    /** Сдвиг тепла к индексу палитры */
+    private static final int PALETTE_SHIFT = 8;
+
+    private final SimulationLoop simulation;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    /** Множитель тепла за период в формате 16.16 */
+    private final int decayFactor;
+
+    /** Тепло клеток; используется только потоком слоя */
+    private final int[] heat;
+
+    /** Изображение, в которое пишет поток слоя */
+    private BufferedImage back;
+
+    /** Готовое изображение, ещё не забранное отрисовкой */
+    private final AtomicReference<BufferedImage> ready = new AtomicReference<>();
+
+    /** Изображение, освобождённое отрисовкой для потока слоя */
+    private final AtomicReference<BufferedImage> free = new AtomicReference<>();
+
+    /** Изображение, которое выводит отрисовка; используется только её потоком */
+    private BufferedImage front;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Создаёт слой над прямоугольником поля от (0, 0) до (width, height).
+     * @param simulation цикл симуляции, снимки которого накапливаются
+     * @param width      ширина поля в мировых пикселях
+     * @param height     высота поля в мировых пикселях
+     * @param cellSize   сторона клетки слоя в мировых пикселях
+     * @param retention  доля тепла, остающаяся через секунду, от 0 (следов нет) до 1 (следы не гаснут)
+     * @throws IllegalArgumentException если размеры не положительны или доля вне [0, 1]
+     */
+    public TrailLayer(SimulationLoop simulation, double width, double height, double cellSize, double retention) {
+        if (!(width > 0) || !(height > 0) || !(cellSize > 0)) {
+            throw new IllegalArgumentException("Размеры слоя должны быть положительными");
+        }
+        if (!(retention >= 0 && retention <= 1)) {
+            throw new IllegalArgumentException("Доля оставшегося тепла должна быть от 0 до 1: " + retention);
+        }
+        this.simulation = simulation;
+        this.cellSize = cellSize;
+        this.columns = (int) Math.ceil(width / cellSize);
+        this.rows = (int) Math.ceil(height / cellSize);
+        double periodsPerSecond = (double) TimeUnit.SECONDS.toNanos(1) / PUBLISH_PERIOD_NANOS;
+        this.decayFactor = (int) Math.round(Math.pow(retention, 1 / periodsPerSecond) * 65536);
+        this.heat = new int[columns * rows];
+        this.back = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+        this.front = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+        this.free.set(new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    private static int[] createPalette(int size) {
+        int[] palette = new int[size];
+        for (int i = 1; i < size; i++) {
+            float share = (float) i / (size - 1);
+            int alpha = 80 + (int) (150 * share);
+            // от голубого для редких проходов к оранжевому для протоптанных путей
+            int rgb = Color.HSBtoRGB(0.6f - 0.52f * share, 0.9f, 0.9f) & 0xFFFFFF;
+            palette[i] = alpha << 24 | rgb;
+        }
+        return palette;
+    }
+
+    /**
+     * Подписывается на уведомления модели и запускает поток слоя.
+     * Повторный вызов для работающего слоя ничего не делает.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "robots-trails");
+        thread.setDaemon(true);
+        thread.start();
+        simulation.getModel().addModelChangeListener(this);
+    }
+
+    /**
+     * Отписывается от модели, останавливает поток слоя и дожидается его завершения.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        simulation.getModel().removeModelChangeListener(this);
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Будит поток слоя после шага, в котором роботы сдвинулись. Вызывается в потоке симуляции
+     * и не выполняет никакой работы по накоплению.
+     */
+    @Override
+    public void onModelChanged(GameModel model, int changes) {
+        if ((changes & GameModel.FLEET_CHANGED) != 0) {
+            Thread current = thread;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+    }
+
+    /**
+     * Основной цикл потока слоя: накапливает каждый новый снимок, а раз в период ослабляет
+     * тепло и публикует изображение. Снимок публикуется циклом симуляции чуть позже уведомления,
+     * поэтому пропущенный снимок подбирается при следующем пробуждении.
+     */
+    private void run() {
+        FleetSnapshot accumulated = null;
+        boolean changed = false;
+        boolean warm = false;
+        long nextPublish = System.nanoTime() + PUBLISH_PERIOD_NANOS;
+        while (running) {
+            FleetSnapshot snapshot = simulation.getSnapshot();
+            if (snapshot != accumulated) {
+                accumulate(snapshot);
+                accumulated = snapshot;
+                changed = true;
+            }
+            long now = System.nanoTime();
+            if (now - nextPublish >= 0) {
+                nextPublish = now + PUBLISH_PERIOD_NANOS;
+                // остывшее поле без новых следов перерисовывать незачем; последнее остывание публикуется
+                if (changed || warm) {
+                    warm = decayAndPaint();
+                    publish();
+                }
+                changed = false;
+            }
+            LockSupport.parkNanos(nextPublish - System.nanoTime());
+        }
+    }
+
+    private void accumulate(FleetSnapshot snapshot) {
+        double inverseCellSize = 1 / cellSize;
+        for (int i = 0; i < snapshot.size(); i++) {
+            double x = snapshot.getX(i) * inverseCellSize;
+            double y = snapshot.getY(i) * inverseCellSize;
+            if (x >= 0 && x < columns && y >= 0 && y < rows) {
+                int cell = (int) y * columns + (int) x;
+                heat[cell] = Math.min(MAX_HEAT, heat[cell] + HEAT_PER_VISIT);
+            }
+        }
+    }
+
+    /**
+     * Ослабляет тепло всех клеток на один период и переводит его в цвета изображения потока.
+     * @return {@code true}, если на поле ещё есть тепло
+     */
+    private boolean decayAndPaint() {
+        int[] pixels = ((DataBufferInt) back.getRaster().getDataBuffer()).getData();
+        boolean warm = false;
+        for (int cell = 0; cell < heat.length; cell++) {
+            int value = heat[cell];
+            if (value != 0) {
+                value = (int) ((long) value * decayFactor >>> 16);
+                heat[cell] = value;
+                warm |= value != 0;
+            }
+            pixels[cell] = PALETTE[value >>> PALETTE_SHIFT];
+        }
+        return warm;
+    }
+
+    /**
+     * Отдаёт изображение потока отрисовке и берёт для следующего периода изображение,
+     * которое отрисовка не забрала или уже освободила.
+     */
+    private void publish() {
+        BufferedImage unclaimed = ready.getAndSet(back);
+        if (unclaimed != null) {
+            back = unclaimed;
+        } else {
+            BufferedImage released;
+            while ((released = free.getAndSet(null)) == null) {
+                Thread.onSpinWait(); // отрисовка между забором готового и возвратом прежнего
+            }
+            back = released;
+        }
+    }
+
+    /**
+     * Забирает свежее изображение слоя, если поток его опубликовал. Изображение, которое выводит
+     * {@link #draw(Graphics, Camera)}, меняется только здесь, поэтому все перерисовки до следующего
+     * вызова показывают одно и то же. Вызывается всегда из одного потока отрисовки.
+     * @return {@code true}, если изображение сменилось
+     */
+    public boolean update() {
+        BufferedImage fresh = ready.getAndSet(null);
+        if (fresh == null) {
+            return false;
+        }
+        free.set(front);
+        front = fresh;
+        return true;
+    }
+
+    /**
+     * Выводит слой через камеру одним {@link Graphics#drawImage}.
+     * Вызывается из того же потока, что и {@link #update()}.
+     * @param g      графический контекст кадра
+     * @param camera положение камеры
+     */
+    public void draw(Graphics g, Camera camera) {
+        double fieldWidth = columns * cellSize;
+        double fieldHeight = rows * cellSize;
+        int left = (int) Math.floor(camera.toScreenX(0));
+        int top = (int) Math.floor(camera.toScreenY(0));
+        int right = (int) Math.floor(camera.toScreenX(fieldWidth));
+        int bottom = (int) Math.floor(camera.toScreenY(fieldHeight));
+        g.drawImage(front, left, top, right, bottom, 0, 0, columns, rows, null);
+    }
+}
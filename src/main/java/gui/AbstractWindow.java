@@ -1,10 +1,9 @@
 package gui;
 
 import state.Save;
+import state.SettingsSection;
 
 import javax.swing.*;
-import java.util.HashMap;
-import java.util.Map;
 
 import static java.awt.Frame.ICONIFIED;
 import static java.awt.Frame.NORMAL;
@@ -32,35 +31,33 @@ public abstract class AbstractWindow extends JInternalFrame implements Save {
     }
 
     /**
-     * Сохраняет текущее состояние окна в виде словаря с параметрами.
-     * @return карта параметров, содержащая координаты, размеры и состояние окна
+     * Сохраняет текущее состояние окна в раздел настроек.
+     * @param section раздел, в который записываются координаты, размеры и состояние окна
      */
     @Override
-    public Map<String, Integer> saveWindowState() {
-        Map<String, Integer> state = new HashMap<>();
-        state.put("x", getX());
-        state.put("y", getY());
-        state.put("width", getWidth());
-        state.put("height", getHeight());
-        state.put("state", isIcon() ? ICONIFIED : NORMAL);
-        return state;
+    public void saveWindowState(SettingsSection section) {
+        section.putInt("x", getX());
+        section.putInt("y", getY());
+        section.putInt("width", getWidth());
+        section.putInt("height", getHeight());
+        section.putInt("state", isIcon() ? ICONIFIED : NORMAL);
     }
 
     /**
-     * Загружает состояние окна из переданной карты параметров.
-     * Если карта не содержит нужных ключей, используются значения по умолчанию.
-     * @param params карта параметров окна
+     * Загружает состояние окна из раздела настроек.
+     * Если раздел не содержит нужных параметров, используются значения по умолчанию.
+     * @param section раздел настроек окна
      */
     @Override
-    public void loadWindowState(Map<String, Integer> params) {
-        if (params != null) {
-            int x = params.getOrDefault("x", 50);
-            int y = params.getOrDefault("y", 50);
-            int width = params.getOrDefault("width", 200);
-            int height = params.getOrDefault("height", 300);
+    public void loadWindowState(SettingsSection section) {
+        if (section != null) {
+            int x = section.getInt("x", 50);
+            int y = section.getInt("y", 50);
+            int width = section.getInt("width", 200);
+            int height = section.getInt("height", 300);
             setBounds(x, y, width, height);
 
-            if (params.getOrDefault("state", NORMAL) == ICONIFIED) {
+            if (section.getInt("state", NORMAL) == ICONIFIED) {
                 try {
                     setIcon(true); // сворачиваем окно, если оно было иконфицировано
                 } catch (java.beans.PropertyVetoException e) {
@@ -1,53 +1,80 @@
 package gui;
 
 import game.GameModel;
+import game.ModelChangeListener;
 import localization.LocalizationManager;
 import state.Save;
 
 import javax.swing.*;
 import java.awt.*;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  *Окно с текущей позицией робота(координаты)
- * Реагирует на изменения позиции робота через механизм PropertyChangeListener
+ * Реагирует на изменения позиции робота через объединённые уведомления {@link ModelChangeListener}.
+ * Уведомления приходят из потока симуляции, поэтому обновление текста переносится в EDT,
+ * причём не более одного ожидающего обновления за раз.
  */
-public class CoordinateWindow extends AbstractWindow implements Save, PropertyChangeListener {
+public class CoordinateWindow extends AbstractWindow implements Save, ModelChangeListener {
     private final JTextArea textArea;
 
+    /** Последние полученные координаты робота */
+    private volatile double lastX;
+    private volatile double lastY;
+
+    /** Координаты, показанные в окне последними */
+    private double shownX = Double.NaN;
+    private double shownY = Double.NaN;
+
+    /** Признак того, что обновление текста уже поставлено в очередь EDT */
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+
+    /** Обновление текста, выполняемое в EDT; создаётся один раз */
+    private final Runnable textUpdate = () -> {
+        updateScheduled.set(false);
+        updateText(lastX, lastY);
+    };
+
     public CoordinateWindow(GameModel model) {
         super("Координаты", 300, 200, 100, 100);
         textArea = new JTextArea();
         textArea.setEditable(false);
         add(new JScrollPane(textArea), BorderLayout.CENTER);
         pack();
-        model.addPropertyChangeListener(this);
+        model.addModelChangeListener(this);
         updateText(model.getX(), model.getY());
     }
 
     /**
-     * Показывает координаты
+     * Показывает координаты. Если они не изменились, текст не форматируется заново.
      * @param x
      * @param y
      */
     private void updateText(double x, double y) {
+        if (x == shownX && y == shownY) {
+            return;
+        }
+        shownX = x;
+        shownY = y;
         String text = LocalizationManager.getInstance().getFormattedString(
                 "coordinates.text", x, y);
         textArea.setText(text);
     }
 
     /**
-     *Обрабатывает событие изменения координат робота,
-     *при получении события с именем "position" обновляет отображение координат
-     * @param evt Объект PropertyChangeEvent, описывающий источник события
-     *и свойство, которое изменилось.
+     *Обрабатывает объединённое уведомление об изменении модели,
+     *при изменении позиции основного робота планирует обновление отображения координат
+     * @param model модель, состояние которой изменилось
+     * @param changes набор флагов изменившихся свойств
      */
     @Override
-    public void propertyChange(PropertyChangeEvent evt) {
-        if ("position".equals(evt.getPropertyName())) {
-            double[] newPos = (double[]) evt.getNewValue();
-            updateText(newPos[0], newPos[1]);
+    public void onModelChanged(GameModel model, int changes) {
+        if ((changes & GameModel.POSITION_CHANGED) != 0) {
+            lastX = model.getX();
+            lastY = model.getY();
+            if (updateScheduled.compareAndSet(false, true)) {
+                EventQueue.invokeLater(textUpdate);
+            }
         }
     }
 
@@ -1,13 +1,21 @@
 package gui;
 
+import game.ActiveGameCanvas;
+import game.Camera;
 import game.GameController;
 import game.GameVisualizer;
 import game.GameModel;
+import game.InputRecorder;
+import game.SimulationLoop;
+import game.TrailLayer;
 import localization.LocalizationManager;
 import state.Save;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Окно игрового поля, отображающее движение робота и его цель.
@@ -16,26 +24,203 @@ import java.awt.*;
  * Создает и связывает между собой модель, визуализатор и контроллер.
  */
 public class GameWindow extends AbstractWindow implements Save {
-    /** Компонент, отвечающий за визуализацию игрового поля и робота */
-    private final GameVisualizer m_visualizer;
+    /** Системное свойство с путём к файлу контрольной точки; значение {@code none} отключает её */
+    public static final String CHECKPOINT_PROPERTY = "robots.checkpoint";
+
+    /** Системное свойство с путём к файлу, в который записываются действия пользователя */
+    public static final String RECORD_PROPERTY = "robots.record";
+
+    /** Системное свойство с количеством потоков шага симуляции; неположительное значение заменяется на 1 */
+    public static final String PARALLELISM_PROPERTY = "robots.parallelism";
+
+    /** Системное свойство режима отрисовки: {@code active} включает {@link ActiveGameCanvas} */
+    public static final String RENDER_PROPERTY = "robots.render";
+
+    /** Системное свойство с ограничением частоты кадров активной отрисовки; 0 - без ограничения */
+    public static final String MAX_FPS_PROPERTY = "robots.maxFps";
+
+    /** Системное свойство, включающее слой следов роботов */
+    public static final String TRAILS_PROPERTY = "robots.trails";
+
+    /** Системное свойство с долей следов, остающейся через секунду (от 0 до 1) */
+    public static final String TRAIL_RETENTION_PROPERTY = "robots.trails.retention";
+
+    /**
+     * Компонент, отвечающий за визуализацию игрового поля и робота:
+     * {@link GameVisualizer} или, в режиме активной отрисовки, {@link ActiveGameCanvas}
+     */
+    private final Component m_visualizer;
 
     /** Модель, содержащая логику движения робота и хранения его состояния */
     public final GameModel model;
 
+    /** Цикл симуляции, продвигающий модель в отдельном потоке */
+    private final SimulationLoop simulation;
+
+    /** Камера над игровым полем: масштаб колесом мыши, сдвиг перетаскиванием */
+    private final Camera camera = new Camera();
+
+    /** Слой следов роботов; {@code null}, если следы не включены */
+    private TrailLayer trails;
+
+    /** Запись действий пользователя; {@code null}, если запись не включена */
+    private InputRecorder recorder;
+
     /**
-     * Конструктор окна. Инициализирует модель, визуализатор и контроллер.
+     * Конструктор окна. Инициализирует модель, цикл симуляции, визуализатор и контроллер.
+     * Частота шагов симуляции задаётся системным свойством {@code robots.tickRate},
+     * количество потоков симуляции - свойством {@code robots.parallelism},
+     * столкновения роботов отключаются свойством {@code robots.collisions=false}.
+     * Если есть контрольная точка, записанная при прошлом выходе, симуляция продолжается с неё.
+     * Свойство {@code robots.record} включает запись действий пользователя для воспроизведения.
+     * Свойство {@code robots.render=active} включает активную отрисовку с частотой кадров
+     * не выше {@code robots.maxFps}. Свойство {@code robots.trails=true} включает слой следов,
+     * затухание которого задаётся свойством {@code robots.trails.retention}.
      * Настраивает размещение компонентов внутри окна.
      */
     public GameWindow() {
         super(LocalizationManager.getInstance().getString("game.window.title"), 400, 400, 50, 50);
         model = new GameModel();
-        m_visualizer = new GameVisualizer(model);
-        new GameController(model, m_visualizer);
+        applyParallelism();
+        model.setCollisionsEnabled(!"false".equals(System.getProperty("robots.collisions")));
+        restoreCheckpoint();
+        startRecording();
+        simulation = new SimulationLoop(model,
+                Integer.getInteger("robots.tickRate", SimulationLoop.DEFAULT_TICK_RATE));
+        m_visualizer = createVisualizer(simulation, camera);
+        new GameController(model, simulation, m_visualizer, camera);
+        startTrails();
 
         JPanel panel = new JPanel(new BorderLayout());
         panel.add(m_visualizer, BorderLayout.CENTER);
         getContentPane().add(panel);
         pack(); // подгоняет размеры окна под содержимое
+        simulation.start();
+    }
+
+    /**
+     * Задаёт количество потоков шага симуляции из свойства {@code robots.parallelism}.
+     * Неположительное значение сообщается, и шаг остаётся последовательным.
+     */
+    private void applyParallelism() {
+        try {
+            model.setParallelism(Integer.getInteger(PARALLELISM_PROPERTY, 1));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Создаёт компонент отрисовки поля в режиме, заданном свойством {@code robots.render}.
+     */
+    private static Component createVisualizer(SimulationLoop simulation, Camera camera) {
+        if ("active".equals(System.getProperty(RENDER_PROPERTY))) {
+            return new ActiveGameCanvas(simulation, camera,
+                    Integer.getInteger(MAX_FPS_PROPERTY, ActiveGameCanvas.DEFAULT_MAX_FPS));
+        }
+        return new GameVisualizer(simulation, camera);
+    }
+
+    /**
+     * Создаёт и запускает слой следов, если он включён, и передаёт его компоненту отрисовки.
+     */
+    private void startTrails() {
+        if (!Boolean.getBoolean(TRAILS_PROPERTY)) {
+            return;
+        }
+        double retention = TrailLayer.DEFAULT_RETENTION;
+        String value = System.getProperty(TRAIL_RETENTION_PROPERTY);
+        if (value != null) {
+            try {
+                retention = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            trails = new TrailLayer(simulation, GameModel.FIELD_WIDTH, GameModel.FIELD_HEIGHT,
+                    TrailLayer.DEFAULT_CELL_SIZE, retention);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (m_visualizer instanceof ActiveGameCanvas) {
+            ((ActiveGameCanvas) m_visualizer).setTrailLayer(trails);
+        } else {
+            ((GameVisualizer) m_visualizer).setTrailLayer(trails);
+        }
+        trails.start();
+    }
+
+    /**
+     * @return файл контрольной точки или {@code null}, если контрольная точка отключена
+     */
+    private static Path checkpointPath() {
+        String path = System.getProperty(CHECKPOINT_PROPERTY,
+                System.getProperty("user.home") + "/bleskin/simulation.ckpt");
+        return "none".equals(path) ? null : Path.of(path);
+    }
+
+    /**
+     * Восстанавливает модель из контрольной точки, если она есть. Повреждённая или несовместимая
+     * контрольная точка пропускается, и симуляция начинается заново.
+     */
+    private void restoreCheckpoint() {
+        Path path = checkpointPath();
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try {
+            model.loadCheckpoint(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Начинает запись действий пользователя, если она включена. Вызывается до запуска симуляции.
+     */
+    private void startRecording() {
+        String path = System.getProperty(RECORD_PROPERTY);
+        if (path == null) {
+            return;
+        }
+        try {
+            recorder = InputRecorder.start(model, Path.of(path), InputRecorder.DEFAULT_HASH_INTERVAL);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Останавливает симуляцию, завершает запись действий и записывает состояние симуляции
+     * в контрольную точку, с которой продолжится следующий запуск.
+     * @throws IOException при ошибке записи
+     */
+    public void shutdownSimulation() throws IOException {
+        if (m_visualizer instanceof ActiveGameCanvas) {
+            ((ActiveGameCanvas) m_visualizer).stopRendering();
+        }
+        if (trails != null) {
+            trails.close();
+        }
+        simulation.stop();
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+        Path path = checkpointPath();
+        if (path != null) {
+            model.saveCheckpoint(path);
+        }
+    }
+
+    /**
+     * Возвращает цикл симуляции игрового поля.
+     * @return цикл симуляции
+     */
+    public SimulationLoop getSimulation() {
+        return simulation;
     }
 
     /**
@@ -0,0 +1,117 @@
+package gui;
+
+import log.LogEntry;
+import log.LogWindowSource;
+
+import javax.swing.*;
+import java.util.Arrays;
+
+/**
+ * Модель списка записей лога для {@link JList}, читающая записи из {@link LogWindowSource} по запросу.
+ * Список запрашивает только видимые строки, а модель подгружает их блоками через
+ * {@link LogWindowSource#range(int, int)}, поэтому стоимость перерисовки не зависит от размера буфера.
+ * <p>
+ * Модель используется только в потоке обработки событий. Новые записи становятся видны после
+ * вызова {@link #refresh()}, который сбрасывает загруженные блоки.
+ */
+public class LogListModel extends AbstractListModel<LogEntry> {
+    /** Количество записей, загружаемых за одно обращение к источнику */
+    static final int BLOCK_SIZE = 256;
+
+    /** Количество одновременно хранимых блоков: видимая область и её соседи */
+    private static final int CACHED_BLOCKS = 4;
+
+    private final LogWindowSource m_source;
+
+    /** Размер лога на момент последнего обновления */
+    private int m_size;
+
+    /** Номера загруженных блоков (-1 - ячейка кэша пуста) */
+    private final int[] m_blockNumbers = new int[CACHED_BLOCKS];
+
+    /** Загруженные блоки записей */
+    private final LogEntry[][] m_blocks = new LogEntry[CACHED_BLOCKS][];
+
+    /** Ячейка кэша, которая будет занята следующим загруженным блоком */
+    private int m_nextVictim;
+
+    /**
+     * Создаёт модель поверх источника лога.
+     * @param source источник записей лога
+     */
+    public LogListModel(LogWindowSource source) {
+        m_source = source;
+        m_size = source.size();
+        invalidateBlocks();
+    }
+
+    @Override
+    public int getSize() {
+        return m_size;
+    }
+
+    /**
+     * Возвращает запись по индексу, загружая содержащий её блок при необходимости.
+     * @param index индекс записи (0 - самая старая)
+     * @return запись или {@code null}, если запись вытеснена из буфера после последнего обновления
+     */
+    @Override
+    public LogEntry getElementAt(int index) {
+        int blockNumber = index / BLOCK_SIZE;
+        for (int i = 0; i < CACHED_BLOCKS; i++) {
+            if (m_blockNumbers[i] == blockNumber) {
+                return m_blocks[i][index % BLOCK_SIZE];
+            }
+        }
+        LogEntry[] block = loadBlock(blockNumber);
+        return block[index % BLOCK_SIZE];
+    }
+
+    private LogEntry[] loadBlock(int blockNumber) {
+        int slot = m_nextVictim;
+        m_nextVictim = (m_nextVictim + 1) % CACHED_BLOCKS;
+        LogEntry[] block = m_blocks[slot];
+        if (block == null) {
+            block = new LogEntry[BLOCK_SIZE];
+            m_blocks[slot] = block;
+        }
+        // range сохраняет позиции: недоступная запись остаётся null на своём месте
+        int filled = 0;
+        for (LogEntry entry : m_source.range(blockNumber * BLOCK_SIZE, BLOCK_SIZE)) {
+            block[filled++] = entry;
+        }
+        Arrays.fill(block, filled, BLOCK_SIZE, null);
+        m_blockNumbers[slot] = blockNumber;
+        return block;
+    }
+
+    /**
+     * Перечитывает размер лога и сбрасывает загруженные блоки.
+     * Если буфер ещё не заполнен, список получает событие о добавленных строках; после заполнения
+     * старые записи вытесняются и индексы сдвигаются, поэтому сообщается об изменении всего списка,
+     * а перерисовываются всё равно только видимые строки.
+     */
+    public void refresh() {
+        int oldSize = m_size;
+        int newSize = m_source.size();
+        invalidateBlocks();
+        m_size = newSize;
+        if (newSize > oldSize) {
+            if (oldSize > 0) {
+                fireContentsChanged(this, 0, oldSize - 1);
+            }
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+            if (newSize > 0) {
+                fireContentsChanged(this, 0, newSize - 1);
+            }
+        } else if (newSize > 0) {
+            fireContentsChanged(this, 0, newSize - 1);
+        }
+    }
+
+    private void invalidateBlocks() {
+        Arrays.fill(m_blockNumbers, -1);
+    }
+}
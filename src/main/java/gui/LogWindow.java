@@ -3,50 +3,262 @@ package gui;
 import localization.LocalizationManager;
 import log.LogChangeListener;
 import log.LogEntry;
+import log.LogLevel;
+import log.LogSearchIndex;
 import log.LogWindowSource;
 import log.Logger;
 import state.Save;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
-import java.awt.EventQueue;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Окно протокола работы.
+ * Показывает записи лога в виртуализированном списке: отрисовываются и запрашиваются у источника
+ * только видимые строки. Уведомления об изменении лога лишь отмечают, что список устарел,
+ * а таймер кадров обновляет его не чаще одного раза за кадр.
+ * <p>
+ * Поле поиска над списком отбирает записи, содержащие все введённые слова, по {@link LogSearchIndex};
+ * пока запрос не пуст, список показывает только найденные записи. Поиск и чтение найденных записей
+ * выполняются в фоновом потоке: полностью - только при изменении запроса, а при появлении новых
+ * записей к результатам добавляются лишь новые совпадения, не сбрасывая прокрутку.
+ */
 public class LogWindow extends AbstractWindow implements LogChangeListener, Save {
+    /** Период таймера обновления списка в миллисекундах (около 60 кадров в секунду) */
+    private static final int REFRESH_PERIOD_MS = 16;
+
+    /** Образец строки, по которому список вычисляет размер ячейки без обхода всех записей */
+    private static final LogEntry PROTOTYPE_ENTRY = new LogEntry(LogLevel.Debug, "X".repeat(60));
+
+    /** Задержка поиска после последнего изменения запроса в миллисекундах */
+    private static final int SEARCH_DELAY_MS = 150;
+
+    /** Наибольшее количество показываемых результатов поиска */
+    private static final int SEARCH_LIMIT = 10_000;
+
     private final LogWindowSource m_logSource;
-    private final TextArea m_logContent;
+    private final LogSearchIndex m_searchIndex;
+    private final LogListModel m_logModel;
+    private final DefaultListModel<LogEntry> m_searchModel = new DefaultListModel<>();
+    private final JList<LogEntry> m_logList;
+    private final JTextField m_searchField = new JTextField();
+    private final Timer m_refreshTimer;
+    private final Timer m_searchTimer;
+
+    /** Признак того, что в логе появились записи, не показанные в списке */
+    private final AtomicBoolean m_dirty = new AtomicBoolean();
+
+    /** Фоновый поток поиска: обращения к индексу и чтение записей не выполняются в потоке событий */
+    private final ExecutorService m_searchExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "log-search");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public LogWindow(LogWindowSource logSource) {
+    /** Запрос, результаты которого показаны; {@code null}, если поиск не выполняется */
+    private String m_searchQuery;
+
+    /** Номер поиска; результаты устаревшего поиска отбрасываются */
+    private int m_searchGeneration;
+
+    /** Наименьший номер последовательности, с которого ищутся новые совпадения */
+    private long m_searchFrom;
+
+    /** Признак выполняющегося фонового поиска */
+    private boolean m_searchRunning;
+
+    public LogWindow(LogWindowSource logSource, LogSearchIndex searchIndex) {
         super(LocalizationManager.getInstance().getString("log.window.title"), 300, 800, 10, 10);
         m_logSource = logSource;
-        m_logSource.registerListener(this);
+        m_searchIndex = searchIndex;
+        m_logModel = new LogListModel(logSource);
 
-        m_logContent = new TextArea("");
-        m_logContent.setSize(200, 500);
+        m_logList = new JList<>(m_logModel);
+        m_logList.setPrototypeCellValue(PROTOTYPE_ENTRY);
+        m_logList.setCellRenderer(new LogEntryRenderer());
+        m_logList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        m_searchTimer = new Timer(SEARCH_DELAY_MS, e -> runSearch(false));
+        m_searchTimer.setRepeats(false);
+        m_searchField.setToolTipText(LocalizationManager.getInstance().getString("log.search"));
+        m_searchField.addActionListener(e -> runSearch(true));
+        m_searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                m_searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                m_searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                m_searchTimer.restart();
+            }
+        });
 
         JPanel panel = new JPanel(new BorderLayout());
-        panel.add(m_logContent, BorderLayout.CENTER);
+        panel.add(m_searchField, BorderLayout.NORTH);
+        panel.add(new JScrollPane(m_logList), BorderLayout.CENTER);
         getContentPane().add(panel);
         pack();
-        updateLogContent();
+
+        m_refreshTimer = new Timer(REFRESH_PERIOD_MS, e -> refreshIfDirty());
+        m_refreshTimer.start();
+        m_logSource.registerListener(this);
         Logger.debug(LocalizationManager.getInstance().getString("log.working"));
     }
 
-    private void updateLogContent() {
-        StringBuilder content = new StringBuilder();
-        for (LogEntry entry : m_logSource.all()) {
-            content.append(entry.getMessage()).append("\n");
+    /**
+     * Обновляет список, если с прошлого кадра лог изменился.
+     * Если список был прокручен до конца, он остаётся прокрученным до последней записи.
+     */
+    private void refreshIfDirty() {
+        if (isSearching()) {
+            // пока идёт поиск, признак не сбрасывается: новые записи будут учтены следующим
+            if (!m_searchRunning && m_dirty.getAndSet(false)) {
+                startSearch(false);
+            }
+            return;
+        }
+        if (!m_dirty.getAndSet(false)) {
+            return;
+        }
+        int lastVisible = m_logList.getLastVisibleIndex();
+        boolean followTail = lastVisible < 0 || lastVisible >= m_logModel.getSize() - 1;
+        m_logModel.refresh();
+        if (followTail && m_logModel.getSize() > 0) {
+            m_logList.ensureIndexIsVisible(m_logModel.getSize() - 1);
         }
-        m_logContent.setText(content.toString());
-        m_logContent.invalidate();
     }
 
+    private boolean isSearching() {
+        return m_searchQuery != null;
+    }
+
+    /**
+     * Применяет изменённый запрос: запускает поиск заново или, при пустом запросе,
+     * возвращает список ко всем записям лога.
+     * @param force искать заново, даже если запрос не изменился (нажатие Enter)
+     */
+    private void runSearch(boolean force) {
+        m_searchTimer.stop();
+        String query = m_searchField.getText();
+        if (LogSearchIndex.tokenize(query).isEmpty()) {
+            if (isSearching()) {
+                m_searchQuery = null;
+                m_searchGeneration++;
+                m_searchRunning = false;
+                m_logList.setModel(m_logModel);
+                m_dirty.set(true);
+            }
+            return;
+        }
+        if (!force && query.equals(m_searchQuery)) {
+            return;
+        }
+        m_searchQuery = query;
+        m_searchGeneration++;
+        m_searchFrom = Long.MIN_VALUE;
+        startSearch(true);
+    }
+
+    /**
+     * Запускает фоновый поиск по текущему запросу.
+     * @param replace {@code true} - заменить показанные результаты, {@code false} - дополнить их
+     *                совпадениями не старше {@link #m_searchFrom}
+     */
+    private void startSearch(boolean replace) {
+        String query = m_searchQuery;
+        int generation = m_searchGeneration;
+        long from = m_searchFrom;
+        m_searchRunning = true;
+        m_searchExecutor.execute(() -> {
+            long indexed = m_searchIndex.getIndexedSequence();
+            List<LogEntry> found = m_searchIndex.search(query, from, SEARCH_LIMIT);
+            // записи, ещё не попавшие в индекс, будут найдены следующим поиском
+            boolean behind = m_searchIndex.getIndexedSequence() < m_logSource.getPublishedSequence();
+            EventQueue.invokeLater(() -> showSearchResults(generation, replace, found, indexed, behind));
+        });
+    }
+
+    /**
+     * Показывает результаты фонового поиска, если запрос с тех пор не изменился.
+     * Новые совпадения добавляются в конец списка; при превышении {@link #SEARCH_LIMIT}
+     * удаляются самые старые результаты.
+     */
+    private void showSearchResults(int generation, boolean replace, List<LogEntry> found,
+                                   long indexed, boolean behind) {
+        if (generation != m_searchGeneration) {
+            return;
+        }
+        m_searchRunning = false;
+        if (behind) {
+            m_dirty.set(true);
+        }
+        int lastVisible = m_logList.getLastVisibleIndex();
+        boolean followTail = replace || lastVisible < 0 || lastVisible >= m_searchModel.getSize() - 1;
+        if (replace) {
+            m_searchModel.clear();
+        }
+        if (!found.isEmpty()) {
+            m_searchModel.addAll(found);
+            m_searchFrom = Math.max(indexed, found.get(found.size() - 1).getSequence() + 1);
+        } else {
+            m_searchFrom = Math.max(m_searchFrom, indexed);
+        }
+        int excess = m_searchModel.getSize() - SEARCH_LIMIT;
+        if (excess > 0) {
+            m_searchModel.removeRange(0, excess - 1);
+        }
+        if (m_logList.getModel() != m_searchModel) {
+            m_logList.setModel(m_searchModel);
+        }
+        if (followTail && m_searchModel.getSize() > 0) {
+            m_logList.ensureIndexIsVisible(m_searchModel.getSize() - 1);
+        }
+    }
+
+    /**
+     * Отмечает список как устаревший. Вызывается в потоке, добавившем запись,
+     * поэтому не обращается к Swing и не создаёт объектов.
+     */
     @Override
     public void onLogChanged() {
-        EventQueue.invokeLater(this::updateLogContent);
+        m_dirty.set(true);
+    }
+
+    @Override
+    public void dispose() {
+        m_refreshTimer.stop();
+        m_searchTimer.stop();
+        m_searchExecutor.shutdownNow();
+        m_logSource.unregisterListener(this);
+        super.dispose();
     }
 
     @Override
     public String getNameOfWindow() {
         return "LogWindow";
     }
-}
\ No newline at end of file
+
+    /**
+     * Отрисовывает запись лога её текстом; запись, вытесненная из буфера, отображается пустой строкой.
+     */
+    private static class LogEntryRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            String text = value instanceof LogEntry entry ? entry.getMessage() : "";
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+}
@@ -3,10 +3,7 @@ package gui;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.swing.*;
 
@@ -14,6 +11,7 @@ import log.Logger;
 import localization.LocalizationManager;
 import state.Save;
 import state.SaveState;
+import state.SettingsSection;
 
 /**
  * Главное окно приложения, содержащее все внутренние окна и элементы управления.
@@ -26,7 +24,13 @@ public class MainApplicationFrame extends JFrame implements Save {
     private final JDesktopPane desktopPane = new JDesktopPane();
 
     /** Класс для управления сохранением и загрузкой состояния окон */
-    private final SaveState saveState = new SaveState(new HashMap<>(), new HashSet<>());
+    private final SaveState saveState = new SaveState();
+
+    /** Период фонового сохранения состояния окон в миллисекундах */
+    private static final int AUTOSAVE_PERIOD_MS = 10_000;
+
+    /** Таймер, периодически передающий состояние окон на фоновое сохранение */
+    private final Timer autoSaveTimer = new Timer(AUTOSAVE_PERIOD_MS, e -> autoSave());
 
     /** Менеджер локализации */
     private final LocalizationManager localization = LocalizationManager.getInstance();
@@ -85,46 +89,39 @@ public class MainApplicationFrame extends JFrame implements Save {
                 exit();
             }
         });
+        autoSaveTimer.start();
     }
 
     /**
      * Сохраняет текущие параметры (позиция, размер, состояние) главного окна.
      *
-     * @return карта с параметрами состояния окна
+     * @param section раздел настроек главного окна
      */
     @Override
-    public Map<String, Integer> saveWindowState() {
-        Map<String, Integer> state = new HashMap<>();
-        state.put("x", getLocation().x);
-        state.put("y", getLocation().y);
-        state.put("width", getWidth());
-        state.put("height", getHeight());
-        state.put("state", getExtendedState());
-        return state;
+    public void saveWindowState(SettingsSection section) {
+        section.putInt("x", getLocation().x);
+        section.putInt("y", getLocation().y);
+        section.putInt("width", getWidth());
+        section.putInt("height", getHeight());
+        section.putInt("state", getExtendedState());
     }
 
     /**
-     * Загружает параметры состояния окна из сохранённой карты.
+     * Загружает параметры состояния окна из сохранённого раздела настроек.
      *
-     * @param params карта параметров состояния окна
+     * @param section раздел настроек главного окна
      */
     @Override
-    public void loadWindowState(Map<String, Integer> params) {
-        if (params != null) {
-            Integer x = params.get("x");
-            Integer y = params.get("y");
-            Integer width = params.get("width");
-            Integer height = params.get("height");
-            Integer state = params.get("state");
-
-            if (x != null && y != null) {
-                setLocation(x, y);
+    public void loadWindowState(SettingsSection section) {
+        if (section != null) {
+            if (section.contains("x") && section.contains("y")) {
+                setLocation(section.getInt("x", 0), section.getInt("y", 0));
             }
-            if (width != null && height != null) {
-                setSize(width, height);
+            if (section.contains("width") && section.contains("height")) {
+                setSize(section.getInt("width", 0), section.getInt("height", 0));
             }
-            if (state != null) {
-                setExtendedState(state);
+            if (section.contains("state")) {
+                setExtendedState(section.getInt("state", NORMAL));
             }
         }
     }
@@ -139,9 +136,10 @@ public class MainApplicationFrame extends JFrame implements Save {
     }
 
     /**
-     * Сохраняет состояние всех внутренних окон перед завершением работы приложения.
+     * Запоминает текущее состояние всех окон и локаль. Вызывается в потоке обработки событий,
+     * потому что читает параметры компонентов Swing.
      */
-    private void saveWindowStateBeforeExit() {
+    private void captureWindowState() {
         saveState.saveWindowParams(this);
         saveState.saveWindowParams(logWindow);
         saveState.saveWindowParams(gameWindow);
@@ -155,7 +153,7 @@ public class MainApplicationFrame extends JFrame implements Save {
      * @return объект {@link LogWindow}
      */
     protected LogWindow createLogWindow() {
-        LogWindow logWindow = new LogWindow(Logger.getDefaultLogSource());
+        LogWindow logWindow = new LogWindow(Logger.getDefaultLogSource(), Logger.getDefaultSearchIndex());
         logWindow.setLocation(10, 10);
         logWindow.setSize(300, 800);
         setMinimumSize(logWindow.getSize());
@@ -273,6 +271,15 @@ public class MainApplicationFrame extends JFrame implements Save {
         localization.setLocale(locale);
         updateUIForLocalization();
         saveState.saveLocale(locale);
+        saveState.saveAsync();
+    }
+
+    /**
+     * Передаёт изменившееся состояние окон на запись в фоновом потоке, не дожидаясь её.
+     */
+    private void autoSave() {
+        captureWindowState();
+        saveState.saveAsync();
     }
 
     /**
@@ -308,7 +315,7 @@ public class MainApplicationFrame extends JFrame implements Save {
     }
 
     /**
-     * Метод, вызываемый при завершении работы приложения. Сохраняет состояние и завершает программу.
+     * Метод, вызываемый при завершении работы приложения. Сохраняет состояние, останавливает симуляцию, дописывает лог и завершает программу.
      */
     private void exit() {
         int response = JOptionPane.showConfirmDialog(
@@ -320,12 +327,19 @@ public class MainApplicationFrame extends JFrame implements Save {
         );
 
         if (response == JOptionPane.YES_OPTION) {
-            saveWindowStateBeforeExit();
+            autoSaveTimer.stop();
+            captureWindowState();
+            try {
+                saveState.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
             try {
-                saveState.saveToFile();
+                gameWindow.shutdownSimulation();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            Logger.shutdown();
             System.exit(0);
         }
     }
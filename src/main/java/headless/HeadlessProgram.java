@@ -0,0 +1,154 @@
+package headless;
+
+import game.GameModel;
+import game.InputRecorder;
+import game.InputReplay;
+import game.ObstacleMap;
+import game.RobotFleet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Пакетный запуск симуляции без Swing: подходит для серверов без дисплея.
+ * Строит {@link GameModel} по сценарию, продвигает его заданное число шагов так быстро,
+ * как позволяет процессор, и печатает скорость симуляции и итоговое состояние.
+ * Контроллер, визуализатор и цикл симуляции с фиксированным шагом не используются.
+ * <p>
+ * С аргументом {@code --replay} вместо сценария воспроизводится запись {@link InputRecorder}
+ * с проверкой хешей состояния; при расхождении программа завершается с кодом 1.
+ * <p>
+ * Пример запуска из собранного jar:
+ * <pre>
+ * java -jar Robots-1.0-SNAPSHOT-headless.jar --robots 10000
+ * </pre>
+ */
+public final class HeadlessProgram {
+
+    private HeadlessProgram() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Scenario scenario;
+        try {
+            scenario = Scenario.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Scenario.usage());
+            System.exit(2);
+            return;
+        }
+
+        try {
+            if (scenario.getReplayFile() != null) {
+                System.exit(replay(scenario) ? 0 : 1);
+            }
+            run(scenario);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void run(Scenario scenario) throws IOException {
+        GameModel model = createModel(scenario);
+        InputRecorder recorder = scenario.getRecordFile() == null ? null
+                : InputRecorder.start(model, Path.of(scenario.getRecordFile()), scenario.getHashInterval());
+        long started = System.nanoTime();
+        for (long tick = 0; tick < scenario.getTicks(); tick++) {
+            model.updateRobotPosition();
+        }
+        long elapsed = System.nanoTime() - started;
+        if (recorder != null) {
+            recorder.close();
+        }
+        model.setParallelism(1);
+
+        printReport(scenario.getTicks(), scenario.getParallelism(), model, elapsed);
+    }
+
+    /**
+     * Воспроизводит запись так быстро, как позволяет процессор, и печатает результат проверки хешей.
+     * @return {@code true}, если все хеши совпали
+     */
+    private static boolean replay(Scenario scenario) throws IOException {
+        InputReplay replay = new InputReplay(Path.of(scenario.getReplayFile()));
+        GameModel model = replay.createModel();
+        model.setParallelism(scenario.getParallelism());
+        long started = System.nanoTime();
+        boolean verified = replay.run(model);
+        long elapsed = System.nanoTime() - started;
+        model.setParallelism(1);
+
+        printReport(model.getTick() - replay.getStartTick(), scenario.getParallelism(), model, elapsed);
+        System.out.printf(Locale.ROOT, "events:          %d%n", replay.getAppliedEvents());
+        System.out.printf(Locale.ROOT, "hashes verified: %d%n", replay.getVerifiedHashes());
+        if (!verified) {
+            System.out.printf(Locale.ROOT, "MISMATCH at tick %d%n", replay.getMismatchTick());
+        }
+        return verified;
+    }
+
+    /**
+     * Создаёт модель и расставляет роботов по сценарию.
+     * Основной робот модели остаётся на своём месте и получает ту же цель, что и остальные.
+     */
+    static GameModel createModel(Scenario scenario) {
+        GameModel model = new GameModel();
+        model.setParallelism(scenario.getParallelism());
+        model.setCollisionsEnabled(scenario.hasCollisions());
+        RobotFleet fleet = model.getFleet();
+        fleet.ensureCapacity(scenario.getRobots());
+
+        Random random = new Random(scenario.getSeed());
+        ObstacleMap obstacles = model.getObstacles();
+        for (int i = 0; i < scenario.getObstacles(); i++) {
+            obstacles.setBlocked(random.nextDouble() * scenario.getFieldWidth(),
+                    random.nextDouble() * scenario.getFieldHeight(), true);
+        }
+        for (int i = 1; i < scenario.getRobots(); i++) {
+            model.addRobot(random.nextDouble() * scenario.getFieldWidth(),
+                    random.nextDouble() * scenario.getFieldHeight(),
+                    random.nextDouble() * 2 * Math.PI);
+        }
+
+        if (scenario.hasRandomTargets()) {
+            for (int i = 0; i < fleet.size(); i++) {
+                fleet.setTarget(i, random.nextDouble() * scenario.getFieldWidth(),
+                        random.nextDouble() * scenario.getFieldHeight());
+            }
+        } else {
+            fleet.setTargetForAll(scenario.getTargetX(), scenario.getTargetY());
+        }
+        return model;
+    }
+
+    private static void printReport(long ticks, int parallelism, GameModel model, long elapsedNanos) {
+        RobotFleet fleet = model.getFleet();
+        double seconds = elapsedNanos / 1e9;
+        double sumX = 0;
+        double sumY = 0;
+        int arrived = 0;
+        for (int i = 0; i < fleet.size(); i++) {
+            sumX += fleet.getX(i);
+            sumY += fleet.getY(i);
+            if (fleet.isAtTarget(i)) {
+                arrived++;
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "robots:          %d%n", fleet.size());
+        System.out.printf(Locale.ROOT, "ticks:           %d%n", model.getTick());
+        System.out.printf(Locale.ROOT, "parallelism:     %d%n", parallelism);
+        System.out.printf(Locale.ROOT, "elapsed:         %.3f s%n", seconds);
+        System.out.printf(Locale.ROOT, "ticks/sec:       %.1f%n", ticks / seconds);
+        System.out.printf(Locale.ROOT, "robot-steps/sec: %.1f%n", ticks * (double) fleet.size() / seconds);
+        System.out.printf(Locale.ROOT, "arrived:         %d%n", arrived);
+        System.out.printf(Locale.ROOT, "centroid:        %.3f, %.3f%n", sumX / fleet.size(), sumY / fleet.size());
+        System.out.printf(Locale.ROOT, "robot 0:         x=%.3f y=%.3f direction=%.4f target=%.1f,%.1f%n",
+                model.getX(), model.getY(), model.getDirection(), model.getTargetX(), model.getTargetY());
+    }
+}
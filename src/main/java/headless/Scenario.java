@@ -0,0 +1,208 @@
+package headless;
+
+import game.InputRecorder;
+
+/**
+ * Сценарий пакетной симуляции без графического интерфейса.
+ * Описывает количество роботов, размер поля, цели и длительность прогона.
+ * Разбирается из аргументов командной строки вида {@code --имя значение}.
+ */
+public class Scenario {
+    /** Количество роботов */
+    private int robots = 1000;
+
+    /** Количество шагов симуляции */
+    private long ticks = 100_000;
+
+    /** Ширина поля, на котором случайно расставляются роботы */
+    private double fieldWidth = 1000;
+
+    /** Высота поля, на котором случайно расставляются роботы */
+    private double fieldHeight = 1000;
+
+    /** Общая цель всех роботов; игнорируется при {@link #randomTargets} */
+    private double targetX = 500;
+    private double targetY = 500;
+
+    /** Признак того, что каждому роботу выдаётся собственная случайная цель */
+    private boolean randomTargets;
+
+    /** Начальное значение генератора случайных чисел */
+    private long seed = 42;
+
+    /** Признак разрешения столкновений роботов */
+    private boolean collisions;
+
+    /** Количество случайно занятых клеток карты препятствий */
+    private int obstacles;
+
+    /** Количество потоков шага симуляции */
+    private int parallelism = 1;
+
+    /** Файл, в который записываются действия и хеши состояния; {@code null} - без записи */
+    private String recordFile;
+
+    /** Файл записи, которую нужно воспроизвести вместо сценария; {@code null} - обычный прогон */
+    private String replayFile;
+
+    /** Интервал записи хеша состояния в шагах */
+    private int hashInterval = InputRecorder.DEFAULT_HASH_INTERVAL;
+
+    /**
+     * Разбирает сценарий из аргументов командной строки.
+     * @param args аргументы вида {@code --robots 10000 --ticks 1000000 --target 500,500}
+     * @return сценарий
+     * @throws IllegalArgumentException если аргумент неизвестен или его значение некорректно
+     */
+    public static Scenario parse(String[] args) {
+        Scenario scenario = new Scenario();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if ("--random-targets".equals(name)) {
+                scenario.randomTargets = true;
+                continue;
+            }
+            if ("--collisions".equals(name)) {
+                scenario.collisions = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Не задано значение аргумента " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--robots" -> scenario.robots = positiveInt(name, value);
+                case "--ticks" -> scenario.ticks = positiveLong(name, value);
+                case "--seed" -> scenario.seed = Long.parseLong(value);
+                case "--parallelism" -> scenario.parallelism = positiveInt(name, value);
+                case "--obstacles" -> scenario.obstacles = nonNegativeInt(name, value);
+                case "--record" -> scenario.recordFile = value;
+                case "--replay" -> scenario.replayFile = value;
+                case "--hash-interval" -> scenario.hashInterval = nonNegativeInt(name, value);
+                case "--field" -> {
+                    double[] size = pair(name, value);
+                    scenario.fieldWidth = size[0];
+                    scenario.fieldHeight = size[1];
+                }
+                case "--target" -> {
+                    double[] target = pair(name, value);
+                    scenario.targetX = target[0];
+                    scenario.targetY = target[1];
+                }
+                default -> throw new IllegalArgumentException("Неизвестный аргумент " + name);
+            }
+        }
+        return scenario;
+    }
+
+    /**
+     * Возвращает описание аргументов командной строки.
+     * @return текст справки
+     */
+    public static String usage() {
+        return """
+                Аргументы:
+                  --robots N          количество роботов (по умолчанию 1000)
+                  --ticks N           количество шагов симуляции (по умолчанию 100000)
+                  --field W,H         размер поля для начальной расстановки (по умолчанию 1000,1000)
+                  --target X,Y        общая цель всех роботов (по умолчанию 500,500)
+                  --random-targets    выдать каждому роботу случайную цель на поле
+                  --collisions        разрешать столкновения роботов
+                  --obstacles N       занять препятствиями N случайных клеток поля (по умолчанию 0)
+                  --seed N            начальное значение генератора случайных чисел (по умолчанию 42)
+                  --parallelism N     количество потоков шага симуляции (по умолчанию 1)
+                  --record FILE       записать начальное состояние и хеши состояния для воспроизведения
+                  --hash-interval N   записывать хеш состояния каждые N шагов (по умолчанию 100);
+                                      0 - только в конце записи
+                  --replay FILE       воспроизвести запись с проверкой хешей; остальные аргументы,
+                                      кроме --parallelism, игнорируются""";
+    }
+
+    private static int positiveInt(String name, String value) {
+        int result = Integer.parseInt(value);
+        if (result <= 0) {
+            throw new IllegalArgumentException("Значение " + name + " должно быть положительным: " + value);
+        }
+        return result;
+    }
+
+    private static int nonNegativeInt(String name, String value) {
+        int result = Integer.parseInt(value);
+        if (result < 0) {
+            throw new IllegalArgumentException("Значение " + name + " не может быть отрицательным: " + value);
+        }
+        return result;
+    }
+
+    private static long positiveLong(String name, String value) {
+        long result = Long.parseLong(value);
+        if (result <= 0) {
+            throw new IllegalArgumentException("Значение " + name + " должно быть положительным: " + value);
+        }
+        return result;
+    }
+
+    private static double[] pair(String name, String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Значение " + name + " должно иметь вид X,Y: " + value);
+        }
+        return new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+    }
+
+    public int getRobots() {
+        return robots;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public double getFieldWidth() {
+        return fieldWidth;
+    }
+
+    public double getFieldHeight() {
+        return fieldHeight;
+    }
+
+    public double getTargetX() {
+        return targetX;
+    }
+
+    public double getTargetY() {
+        return targetY;
+    }
+
+    public boolean hasRandomTargets() {
+        return randomTargets;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean hasCollisions() {
+        return collisions;
+    }
+
+    public int getObstacles() {
+        return obstacles;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public int getHashInterval() {
+        return hashInterval;
+    }
+}
@@ -0,0 +1,299 @@
+package log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Асинхронная доставка записей лога в {@link LogWindowSource}.
+ * Писатели кладут записи в ограниченную очередь и сразу возвращаются, а отдельный поток забирает их
+ * пачками и добавляет в источник через {@link LogWindowSource#appendBatch(LogRecord[], int)},
+ * поэтому слушатели источника уведомляются один раз на пачку (или на порцию размером с буфер
+ * источника, если буфер меньше пачки) и медленный слушатель задерживает только поток доставки.
+ * Поведение при заполненной очереди задаётся {@link OverflowPolicy}; отброшенные записи
+ * подсчитываются по уровням.
+ * <p>
+ * Очередь - кольцевой буфер заранее созданных {@link LogRecord} под одной блокировкой,
+ * поэтому постановка записи в очередь не создаёт объектов.
+ */
+public class AsyncLogDispatcher implements AutoCloseable {
+    /** Ёмкость очереди по умолчанию */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Предельный размер пачки, передаваемой источнику за раз */
+    static final int MAX_BATCH = 1024;
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private final LogWindowSource m_target;
+    private final OverflowPolicy m_policy;
+
+    /** Порог уровня для {@link OverflowPolicy#DROP_BELOW_LEVEL} */
+    private final LogLevel m_minimumLevel;
+
+    /** Доля сохраняемых записей 1/N для {@link OverflowPolicy#SAMPLE} */
+    private final int m_sampleRate;
+
+    private final LogRecord[] m_slots;
+    private int m_head;
+    private int m_size;
+
+    /** Количество записей, забранных из очереди и ещё передаваемых источнику */
+    private int m_delivering;
+
+    /** Счётчик записей, пришедших при заполненной очереди, для выборки */
+    private long m_overflowCounter;
+
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_notEmpty = m_lock.newCondition();
+    private final Condition m_notFull = m_lock.newCondition();
+
+    /** Отброшенные записи по порядковому номеру уровня */
+    private final AtomicLongArray m_dropped = new AtomicLongArray(LEVELS.length);
+
+    private final Thread m_thread;
+    private volatile boolean m_running = true;
+
+    /**
+     * Создаёт и запускает доставку с очередью по умолчанию, вытесняющую самые старые записи.
+     * @param target источник, в который доставляются записи
+     */
+    public AsyncLogDispatcher(LogWindowSource target) {
+        this(target, DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST, LogLevel.Warning, 10);
+    }
+
+    /**
+     * Создаёт и запускает доставку.
+     * @param target источник, в который доставляются записи
+     * @param capacity ёмкость очереди
+     * @param policy поведение при заполненной очереди
+     * @param minimumLevel порог уровня для {@link OverflowPolicy#DROP_BELOW_LEVEL}
+     * @param sampleRate при {@link OverflowPolicy#SAMPLE} сохраняется каждая {@code sampleRate}-я запись
+     * @throws IllegalArgumentException если ёмкость или доля выборки не положительны
+     */
+    public AsyncLogDispatcher(LogWindowSource target, int capacity, OverflowPolicy policy,
+                              LogLevel minimumLevel, int sampleRate) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость очереди должна быть положительной: " + capacity);
+        }
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Доля выборки должна быть положительной: " + sampleRate);
+        }
+        m_target = target;
+        m_policy = policy;
+        m_minimumLevel = minimumLevel;
+        m_sampleRate = sampleRate;
+        m_slots = newRecords(capacity);
+
+        m_thread = new Thread(this::run, "log-dispatcher");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Ставит запись в очередь доставки.
+     * При заполненной очереди поступает согласно политике переполнения.
+     * @param logLevel уровень важности записи
+     * @param strMessage текст сообщения
+     */
+    public void append(LogLevel logLevel, String strMessage) {
+        m_lock.lock();
+        try {
+            if (m_size == m_slots.length && !makeRoom(logLevel)) {
+                m_dropped.incrementAndGet(logLevel.ordinal());
+                return;
+            }
+            m_slots[(m_head + m_size) % m_slots.length].reset(logLevel, strMessage);
+            m_size++;
+            m_notEmpty.signal();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Ставит в очередь копию структурированной записи.
+     * Переданная запись после возврата может быть переиспользована вызывающим.
+     * @param record запись
+     */
+    public void append(LogRecord record) {
+        m_lock.lock();
+        try {
+            if (m_size == m_slots.length && !makeRoom(record.getLevel())) {
+                m_dropped.incrementAndGet(record.getLevel().ordinal());
+                return;
+            }
+            m_slots[(m_head + m_size) % m_slots.length].copyFrom(record);
+            m_size++;
+            m_notEmpty.signal();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место в заполненной очереди согласно политике. Вызывается под блокировкой.
+     * @return {@code false}, если новую запись нужно отбросить
+     */
+    private boolean makeRoom(LogLevel logLevel) {
+        switch (m_policy) {
+            case BLOCK -> {
+                while (m_size == m_slots.length) {
+                    if (!m_running) {
+                        return false;
+                    }
+                    m_notFull.awaitUninterruptibly();
+                }
+                return true;
+            }
+            case DROP_BELOW_LEVEL -> {
+                if (logLevel.level() < m_minimumLevel.level()) {
+                    return false;
+                }
+            }
+            case SAMPLE -> {
+                if (m_overflowCounter++ % m_sampleRate != 0) {
+                    return false;
+                }
+            }
+            default -> {
+            }
+        }
+        dropOldest();
+        return true;
+    }
+
+    private void dropOldest() {
+        m_dropped.incrementAndGet(m_slots[m_head].getLevel().ordinal());
+        m_head = (m_head + 1) % m_slots.length;
+        m_size--;
+    }
+
+    private static LogRecord[] newRecords(int count) {
+        LogRecord[] records = new LogRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new LogRecord();
+        }
+        return records;
+    }
+
+    /**
+     * Основной цикл потока доставки: ждёт записей, забирает их пачкой и передаёт источнику.
+     */
+    private void run() {
+        LogRecord[] batch = newRecords(MAX_BATCH);
+        while (true) {
+            int count;
+            m_lock.lock();
+            try {
+                while (m_size == 0) {
+                    if (!m_running) {
+                        return;
+                    }
+                    m_notEmpty.awaitUninterruptibly();
+                }
+                count = Math.min(m_size, MAX_BATCH);
+                for (int i = 0; i < count; i++) {
+                    batch[i].copyFrom(m_slots[m_head]);
+                    m_head = (m_head + 1) % m_slots.length;
+                }
+                m_size -= count;
+                m_delivering = count;
+                m_overflowCounter = 0;
+                m_notFull.signalAll();
+            } finally {
+                m_lock.unlock();
+            }
+            try {
+                m_target.appendBatch(batch, count);
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // ошибка слушателя не должна останавливать доставку
+            }
+
+            m_lock.lock();
+            try {
+                m_delivering = 0;
+                m_notFull.signalAll();
+            } finally {
+                m_lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Ждёт, пока все записи, поставленные в очередь до вызова, будут доставлены.
+     * @param timeoutMillis предельное время ожидания
+     * @return {@code true}, если очередь опустела за отведённое время
+     * @throws InterruptedException если ожидание прервано
+     */
+    public boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        m_lock.lock();
+        try {
+            while (m_size > 0 || m_delivering > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                m_notFull.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Останавливает поток доставки, предварительно доставив записи, уже находящиеся в очереди.
+     * Записи, поставленные после вызова, доставлены не будут.
+     */
+    @Override
+    public void close() {
+        m_lock.lock();
+        try {
+            m_running = false;
+            m_notEmpty.signalAll();
+            m_notFull.signalAll();
+        } finally {
+            m_lock.unlock();
+        }
+        try {
+            m_thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param level уровень записей
+     * @return количество записей этого уровня, отброшенных из-за переполнения очереди
+     */
+    public long getDroppedCount(LogLevel level) {
+        return m_dropped.get(level.ordinal());
+    }
+
+    /** @return общее количество отброшенных записей */
+    public long getDroppedCount() {
+        long total = 0;
+        for (int i = 0; i < LEVELS.length; i++) {
+            total += m_dropped.get(i);
+        }
+        return total;
+    }
+
+    /** @return количество записей, ожидающих доставки */
+    public int getQueuedCount() {
+        m_lock.lock();
+        try {
+            return m_size;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /** @return политика переполнения очереди */
+    public OverflowPolicy getPolicy() {
+        return m_policy;
+    }
+}
@@ -1,24 +1,101 @@
 package log;
 
+/**
+ * Неизменяемая копия записи лога, выдаваемая читателям.
+ * Текст сообщения собирается из шаблона и аргументов при первом обращении к {@link #getMessage()}.
+ */
 public class LogEntry
 {
-    private LogLevel m_logLevel;
-    private String m_strMessage;
+    private final long m_sequence;
+    private final LogLevel m_logLevel;
+    private final String m_template;
+    private final long m_timestampNanos;
+    private final long m_threadId;
+    private final int m_argumentCount;
+    private final byte[] m_kinds;
+    private final long[] m_primitives;
+    private final Object[] m_objects;
+
+    /** Собранный текст сообщения; {@code null}, пока текст не запрошен */
+    private volatile String m_strMessage;
     
     public LogEntry(LogLevel logLevel, String strMessage)
     {
-        m_strMessage = strMessage;
+        this(-1, logLevel, strMessage);
+    }
+
+    /**
+     * Создаёт запись с готовым текстом и известным номером последовательности в источнике лога.
+     * @param sequence номер последовательности или -1, если он неизвестен
+     * @param logLevel уровень важности записи
+     * @param strMessage текст сообщения
+     */
+    public LogEntry(long sequence, LogLevel logLevel, String strMessage)
+    {
+        this(sequence, logLevel, strMessage, System.nanoTime(), Thread.currentThread().threadId(), 0, null, null, null);
+    }
+
+    LogEntry(long sequence, LogLevel logLevel, String template, long timestampNanos, long threadId,
+             int argumentCount, byte[] kinds, long[] primitives, Object[] objects)
+    {
+        m_sequence = sequence;
         m_logLevel = logLevel;
+        m_template = template;
+        m_timestampNanos = timestampNanos;
+        m_threadId = threadId;
+        m_argumentCount = argumentCount;
+        m_kinds = kinds;
+        m_primitives = primitives;
+        m_objects = objects;
+        if (argumentCount == 0) {
+            m_strMessage = template;
+        }
     }
     
     public String getMessage()
     {
-        return m_strMessage;
+        String message = m_strMessage;
+        if (message == null) {
+            message = LogRecord.format(m_template, m_argumentCount, m_kinds, m_primitives, m_objects);
+            m_strMessage = message;
+        }
+        return message;
     }
     
     public LogLevel getLevel()
     {
         return m_logLevel;
     }
-}
 
+    /**
+     * @return номер последовательности записи или -1, если запись создана вне источника лога
+     */
+    public long getSequence()
+    {
+        return m_sequence;
+    }
+
+    /** @return шаблон сообщения до подстановки аргументов */
+    public String getTemplate()
+    {
+        return m_template;
+    }
+
+    /** @return момент создания записи по {@link System#nanoTime()} */
+    public long getTimestampNanos()
+    {
+        return m_timestampNanos;
+    }
+
+    /** @return момент создания записи в миллисекундах от начала эпохи */
+    public long getTimeMillis()
+    {
+        return LogRecord.toEpochMillis(m_timestampNanos);
+    }
+
+    /** @return идентификатор потока, создавшего запись */
+    public long getThreadId()
+    {
+        return m_threadId;
+    }
+}
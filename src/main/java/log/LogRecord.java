@@ -0,0 +1,207 @@
+package log;
+
+import java.util.Arrays;
+
+/**
+ * Изменяемая структурированная запись лога: уровень, шаблон сообщения, монотонное время,
+ * идентификатор потока и до {@value #MAX_ARGUMENTS} аргументов. Примитивные аргументы хранятся
+ * в ячейках {@code long} без упаковки, а подстановка аргументов вместо {@code {}} в шаблоне
+ * откладывается до отображения записи.
+ * <p>
+ * Экземпляры переиспользуются: ячейки кольцевых буферов лога - заранее созданные записи,
+ * которые перезаписываются через {@link #copyFrom(LogRecord)}, а {@link Logger} собирает
+ * запись в экземпляре, закреплённом за потоком. Экземпляр не потокобезопасен.
+ */
+public final class LogRecord
+{
+    /** Максимальное количество аргументов; лишние аргументы игнорируются */
+    public static final int MAX_ARGUMENTS = 4;
+
+    static final byte KIND_LONG = 1;
+    static final byte KIND_DOUBLE = 2;
+    static final byte KIND_OBJECT = 3;
+
+    /** Соответствие между {@link System#nanoTime()} и временем по часам, зафиксированное при загрузке класса */
+    private static final long BASE_NANOS = System.nanoTime();
+    private static final long BASE_MILLIS = System.currentTimeMillis();
+
+    private LogLevel m_level;
+    private String m_template;
+    private long m_timestampNanos;
+    private long m_threadId;
+    private int m_argumentCount;
+    private final byte[] m_kinds = new byte[MAX_ARGUMENTS];
+    private final long[] m_primitives = new long[MAX_ARGUMENTS];
+    private final Object[] m_objects = new Object[MAX_ARGUMENTS];
+
+    /**
+     * Начинает новую запись в текущем потоке и в текущий момент времени.
+     * @param level уровень важности записи
+     * @param template шаблон сообщения; {@code {}} заменяются аргументами по порядку
+     * @return эта же запись
+     */
+    public LogRecord reset(LogLevel level, String template)
+    {
+        m_level = level;
+        m_template = template;
+        m_timestampNanos = System.nanoTime();
+        m_threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < m_argumentCount; i++) {
+            m_objects[i] = null;
+        }
+        m_argumentCount = 0;
+        return this;
+    }
+
+    /** Добавляет целочисленный аргумент */
+    public LogRecord arg(long value)
+    {
+        if (m_argumentCount < MAX_ARGUMENTS) {
+            m_kinds[m_argumentCount] = KIND_LONG;
+            m_primitives[m_argumentCount++] = value;
+        }
+        return this;
+    }
+
+    /** Добавляет вещественный аргумент */
+    public LogRecord arg(double value)
+    {
+        if (m_argumentCount < MAX_ARGUMENTS) {
+            m_kinds[m_argumentCount] = KIND_DOUBLE;
+            m_primitives[m_argumentCount++] = Double.doubleToRawLongBits(value);
+        }
+        return this;
+    }
+
+    /** Добавляет произвольный аргумент; его {@code toString()} вызывается только при отображении */
+    public LogRecord arg(Object value)
+    {
+        if (m_argumentCount < MAX_ARGUMENTS) {
+            m_kinds[m_argumentCount] = KIND_OBJECT;
+            m_objects[m_argumentCount++] = value;
+        }
+        return this;
+    }
+
+    /**
+     * Копирует в эту запись все поля другой записи без создания объектов.
+     * @param other исходная запись
+     */
+    public void copyFrom(LogRecord other)
+    {
+        m_level = other.m_level;
+        m_template = other.m_template;
+        m_timestampNanos = other.m_timestampNanos;
+        m_threadId = other.m_threadId;
+        int count = other.m_argumentCount;
+        for (int i = 0; i < count; i++) {
+            m_kinds[i] = other.m_kinds[i];
+            m_primitives[i] = other.m_primitives[i];
+            m_objects[i] = other.m_objects[i];
+        }
+        for (int i = count; i < m_argumentCount; i++) {
+            m_objects[i] = null;
+        }
+        m_argumentCount = count;
+    }
+
+    /**
+     * Подставляет аргументы в шаблон.
+     * @return готовый текст сообщения
+     */
+    public String formatMessage()
+    {
+        return format(m_template, m_argumentCount, m_kinds, m_primitives, m_objects);
+    }
+
+    /**
+     * Подставляет аргументы вместо {@code {}} в шаблоне по порядку. Если аргументов меньше,
+     * чем мест подстановки, оставшиеся {@code {}} выводятся как есть.
+     */
+    static String format(String template, int count, byte[] kinds, long[] primitives, Object[] objects)
+    {
+        if (template == null || count == 0) {
+            return template;
+        }
+        StringBuilder builder = new StringBuilder(template.length() + 16 * count);
+        int from = 0;
+        int argument = 0;
+        while (argument < count) {
+            int placeholder = template.indexOf("{}", from);
+            if (placeholder < 0) {
+                break;
+            }
+            builder.append(template, from, placeholder);
+            switch (kinds[argument]) {
+                case KIND_LONG -> builder.append(primitives[argument]);
+                case KIND_DOUBLE -> builder.append(Double.longBitsToDouble(primitives[argument]));
+                default -> builder.append(objects[argument]);
+            }
+            argument++;
+            from = placeholder + 2;
+        }
+        builder.append(template, from, template.length());
+        return builder.toString();
+    }
+
+    /**
+     * Переводит монотонное время в миллисекунды от начала эпохи.
+     * @param nanos значение {@link System#nanoTime()} в этом процессе
+     * @return время по часам в миллисекундах
+     */
+    public static long toEpochMillis(long nanos)
+    {
+        return BASE_MILLIS + Math.floorDiv(nanos - BASE_NANOS, 1_000_000L);
+    }
+
+    /**
+     * Переводит время по часам в монотонное время этого процесса (с точностью до миллисекунды).
+     * @param epochMillis время в миллисекундах от начала эпохи
+     * @return соответствующее значение {@link System#nanoTime()}
+     */
+    public static long toNanos(long epochMillis)
+    {
+        return BASE_NANOS + (epochMillis - BASE_MILLIS) * 1_000_000L;
+    }
+
+    public LogLevel getLevel()
+    {
+        return m_level;
+    }
+
+    public String getTemplate()
+    {
+        return m_template;
+    }
+
+    /** @return момент создания записи по {@link System#nanoTime()} */
+    public long getTimestampNanos()
+    {
+        return m_timestampNanos;
+    }
+
+    public long getThreadId()
+    {
+        return m_threadId;
+    }
+
+    public int getArgumentCount()
+    {
+        return m_argumentCount;
+    }
+
+    /**
+     * Создаёт неизменяемую копию записи.
+     * @param sequence номер последовательности записи в источнике
+     * @return копия записи
+     */
+    LogEntry toEntry(long sequence)
+    {
+        if (m_argumentCount == 0) {
+            return new LogEntry(sequence, m_level, m_template, m_timestampNanos, m_threadId, 0, null, null, null);
+        }
+        return new LogEntry(sequence, m_level, m_template, m_timestampNanos, m_threadId, m_argumentCount,
+                Arrays.copyOf(m_kinds, m_argumentCount), Arrays.copyOf(m_primitives, m_argumentCount),
+                Arrays.copyOf(m_objects, m_argumentCount));
+    }
+}
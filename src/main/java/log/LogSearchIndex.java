@@ -0,0 +1,383 @@
+package log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Полнотекстовый индекс записей {@link LogWindowSource}: для каждого слова хранится возрастающий
+ * список номеров последовательности записей, в которых оно встречается.
+ * <p>
+ * Индекс пополняется отдельным потоком: уведомление источника лишь будит его, а поток забирает
+ * новые записи через {@link LogWindowSource#since(long, int)}, поэтому индексирование не замедляет
+ * писателей. При подключении к источнику с историей поток сначала индексирует сохранённые записи.
+ * Записи, вытесненные из источника (из буфера, а при наличии истории - из хранилища),
+ * удаляются из начала списков.
+ * <p>
+ * Поиск разбивает запрос на слова так же, как записи, и возвращает записи, содержащие все слова
+ * запроса; время поиска пропорционально длине самого короткого из списков слов запроса.
+ */
+public class LogSearchIndex implements LogChangeListener, AutoCloseable {
+    /** Количество записей, индексируемых под одной блокировкой */
+    static final int BATCH_SIZE = 4096;
+
+    /** Период, с которым поток индексирования проверяет источник без уведомлений */
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    private final LogWindowSource m_source;
+
+    /** Слово - номера последовательности содержащих его записей */
+    private final Map<String, Postings> m_terms = new HashMap<>();
+    private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /** Номер последовательности первой ещё не проиндексированной записи */
+    private volatile long m_next;
+
+    /** Номер, ниже которого записи уже удалены из списков */
+    private long m_prunedBelow;
+
+    /** Количество проиндексированных записей, оставшихся в источнике */
+    private long m_indexedCount;
+
+    /** Слова текущей пачки; используются только потоком индексирования */
+    private String[] m_batchTerms = new String[BATCH_SIZE];
+
+    /** Номера записей слов текущей пачки */
+    private long[] m_batchRecords = new long[BATCH_SIZE];
+
+    private final Thread m_thread;
+    private volatile boolean m_running = true;
+
+    /**
+     * Создаёт индекс, подписывает его на источник и запускает поток индексирования.
+     * @param source источник записей лога
+     */
+    public LogSearchIndex(LogWindowSource source) {
+        m_source = source;
+        m_next = source.getFirstSequence();
+        m_prunedBelow = m_next;
+        m_thread = new Thread(this::run, "log-search-indexer");
+        m_thread.setDaemon(true);
+        m_thread.start();
+        source.registerListener(this);
+    }
+
+    /**
+     * Будит поток индексирования. Вызывается в потоке, добавившем запись, и ничего не индексирует сам.
+     */
+    @Override
+    public void onLogChanged() {
+        LockSupport.unpark(m_thread);
+    }
+
+    private void run() {
+        while (m_running) {
+            try {
+                if (m_next < m_source.getPublishedSequence()) {
+                    indexBatch();
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // ошибка одной пачки не должна останавливать индексирование
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Индексирует следующую пачку записей. Сообщения разбиваются на слова до взятия блокировки,
+     * а под блокировкой записи лишь добавляются в списки, поэтому поиск ждёт только это добавление.
+     * Записи, вытесненные до чтения или не найденные в истории, пропускаются.
+     */
+    private void indexBatch() {
+        long published = m_source.getPublishedSequence();
+        long from = Math.max(m_next, m_source.getFirstSequence());
+        List<LogEntry> entries = m_source.since(from, BATCH_SIZE);
+        long first = m_source.getFirstSequence();
+        int termCount = collectTerms(entries);
+        int indexed = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            LogEntry entry = entries.get(i);
+            if (entry != null) {
+                indexed++;
+                // позиция в выборке фиксирована, а её начало могло сдвинуться вслед за вытеснением
+                from = entry.getSequence() - i;
+            }
+        }
+        m_lock.writeLock().lock();
+        try {
+            for (int i = 0; i < termCount; i++) {
+                m_terms.computeIfAbsent(m_batchTerms[i], t -> new Postings()).add(m_batchRecords[i]);
+            }
+            m_indexedCount += indexed;
+            if (first > m_prunedBelow) {
+                prune(first);
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+        Arrays.fill(m_batchTerms, 0, termCount, null);
+        m_next = entries.isEmpty() ? published : from + entries.size();
+    }
+
+    /**
+     * Разбивает сообщения пачки на слова в {@link #m_batchTerms} и {@link #m_batchRecords}.
+     * @return количество слов пачки
+     */
+    private int collectTerms(List<LogEntry> entries) {
+        int count = 0;
+        for (LogEntry entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            long sequence = entry.getSequence();
+            String message = entry.getMessage();
+            if (message == null) {
+                continue;
+            }
+            int length = message.length();
+            int start = -1;
+            for (int i = 0; i <= length; i++) {
+                boolean wordChar = i < length && Character.isLetterOrDigit(message.charAt(i));
+                if (wordChar && start < 0) {
+                    start = i;
+                } else if (!wordChar && start >= 0) {
+                    if (count == m_batchTerms.length) {
+                        m_batchTerms = Arrays.copyOf(m_batchTerms, count * 2);
+                        m_batchRecords = Arrays.copyOf(m_batchRecords, count * 2);
+                    }
+                    m_batchTerms[count] = normalize(message, start, i);
+                    m_batchRecords[count] = sequence;
+                    count++;
+                    start = -1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Удаляет из списков записи, вытесненные из источника. Полный проход по словарю выполняется,
+     * только когда вытеснено не меньше восьмой части проиндексированных записей, поэтому его
+     * стоимость распределяется по многим пачкам.
+     */
+    private void prune(long first) {
+        long evicted = first - m_prunedBelow;
+        if (evicted * 8 < m_indexedCount && !m_terms.isEmpty()) {
+            return;
+        }
+        Iterator<Postings> iterator = m_terms.values().iterator();
+        while (iterator.hasNext()) {
+            Postings postings = iterator.next();
+            postings.removeBelow(first);
+            if (postings.m_size == postings.m_head) {
+                iterator.remove();
+            }
+        }
+        m_indexedCount = Math.max(0, m_indexedCount - evicted);
+        m_prunedBelow = first;
+    }
+
+    /**
+     * Находит последние записи, содержащие все слова запроса.
+     * @param query запрос; регистр букв и знаки между словами не учитываются
+     * @param limit максимальное количество записей
+     * @return найденные записи в порядке возрастания номеров последовательности
+     */
+    public List<LogEntry> search(String query, int limit) {
+        return search(query, Long.MIN_VALUE, limit);
+    }
+
+    /**
+     * Находит последние записи с номером не меньше заданного, содержащие все слова запроса.
+     * Позволяет дополнить уже показанные результаты только новыми записями.
+     * @param query запрос; регистр букв и знаки между словами не учитываются
+     * @param fromSequence наименьший номер последовательности искомых записей
+     * @param limit максимальное количество записей
+     * @return найденные записи в порядке возрастания номеров последовательности
+     */
+    public List<LogEntry> search(String query, long fromSequence, int limit) {
+        long[] sequences = searchSequences(query, fromSequence, limit);
+        List<LogEntry> result = new ArrayList<>(sequences.length);
+        for (int i = sequences.length - 1; i >= 0; i--) {
+            LogEntry entry = m_source.read(sequences[i]);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Находит номера последних записей, содержащих все слова запроса.
+     * @param query запрос
+     * @param limit максимальное количество номеров
+     * @return номера в порядке убывания
+     */
+    public long[] searchSequences(String query, int limit) {
+        return searchSequences(query, Long.MIN_VALUE, limit);
+    }
+
+    /**
+     * Находит номера последних записей с номером не меньше заданного, содержащих все слова запроса.
+     * @param query запрос
+     * @param fromSequence наименьший номер последовательности искомых записей
+     * @param limit максимальное количество номеров
+     * @return номера в порядке убывания
+     */
+    public long[] searchSequences(String query, long fromSequence, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return new long[0];
+        }
+        long first = Math.max(m_source.getFirstSequence(), fromSequence);
+        m_lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[tokens.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = m_terms.get(tokens.get(i));
+                if (lists[i] == null) {
+                    return new long[0];
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.m_size - a.m_head, b.m_size - b.m_head));
+
+            Postings shortest = lists[0];
+            int lowest = shortest.lowerBound(first);
+            long[] found = new long[Math.min(limit, shortest.m_size - lowest)];
+            int count = 0;
+            for (int i = shortest.m_size - 1; i >= lowest && count < found.length; i--) {
+                long candidate = shortest.m_values[i];
+                boolean inAll = true;
+                for (int k = 1; k < lists.length && inAll; k++) {
+                    inAll = lists[k].contains(candidate);
+                }
+                if (inAll) {
+                    found[count++] = candidate;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Разбивает текст на слова: непрерывные последовательности букв и цифр в нижнем регистре.
+     * @param text текст
+     * @return слова в порядке появления
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalize(text, start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String normalize(String text, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /** @return номер последовательности, до которого записи уже проиндексированы */
+    public long getIndexedSequence() {
+        return m_next;
+    }
+
+    /** @return количество различных слов в индексе */
+    public int getTermCount() {
+        m_lock.readLock().lock();
+        try {
+            return m_terms.size();
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Отписывает индекс от источника и останавливает поток индексирования.
+     */
+    @Override
+    public void close() {
+        m_source.unregisterListener(this);
+        m_running = false;
+        LockSupport.unpark(m_thread);
+        try {
+            m_thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Возрастающий список номеров последовательности записей одного слова. Номера хранятся
+     * полностью, а не смещениями, поэтому не переполняются, сколько бы записей ни прошло через индекс.
+     * Удаление из начала сдвигает только индекс головы; место освобождается при следующем
+     * расширении массива.
+     */
+    private static final class Postings {
+        private long[] m_values = new long[4];
+        private int m_head;
+        private int m_size;
+
+        void add(long value) {
+            if (m_size > m_head && m_values[m_size - 1] == value) {
+                return; // слово повторяется в той же записи
+            }
+            if (m_size == m_values.length) {
+                int live = m_size - m_head;
+                long[] values = live * 2 <= m_values.length ? m_values : new long[m_values.length * 2];
+                System.arraycopy(m_values, m_head, values, 0, live);
+                m_values = values;
+                m_head = 0;
+                m_size = live;
+            }
+            m_values[m_size++] = value;
+        }
+
+        void removeBelow(long minimum) {
+            while (m_head < m_size && m_values[m_head] < minimum) {
+                m_head++;
+            }
+        }
+
+        /** @return позиция первого номера не меньше заданного (m_size, если таких нет) */
+        int lowerBound(long minimum) {
+            int low = m_head;
+            int high = m_size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (m_values[middle] < minimum) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        boolean contains(long value) {
+            return Arrays.binarySearch(m_values, m_head, m_size, value) >= 0;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Постоянное хранилище записей лога в виде сегментов, отображённых в память.
+ * Записи только дописываются в конец активного сегмента; заполненный сегмент закрывается
+ * и начинается новый, а самые старые сегменты удаляются при превышении общего размера или возраста.
+ * Файл сегмента называется номером последовательности его первой записи.
+ * <p>
+ * Формат записи: {@code int} длина (1 + длина текста в байтах), {@code long} номер последовательности,
+ * {@code byte} уровень, {@code long} время по часам в миллисекундах, {@code long} идентификатор потока,
+ * текст в UTF-8. Текст сохраняется уже отформатированным: хранилище - первое место, где он нужен.
+ * Длина пишется последней, поэтому запись, прерванная сбоем, при открытии хранилища выглядит
+ * как конец сегмента. Для каждого сегмента в памяти держится
+ * разреженный индекс - позиция каждой {@value #INDEX_INTERVAL}-й записи, - так что чтение записи
+ * по номеру просматривает не больше {@value #INDEX_INTERVAL} заголовков прямо в отображённой памяти.
+ * <p>
+ * Хранилище подключается к {@link LogWindowSource} как слушатель: по уведомлению оно забирает
+ * из буфера новые записи, а источник читает из хранилища вытесненную из буфера историю.
+ * Источник не занимает ячейку буфера, пока хранилище не забрало запись предыдущего круга
+ * (см. {@link #getDrainedSequence()}), поэтому записи не теряются даже при маленьком буфере
+ * и нескольких писателях.
+ */
+public class LogSegmentStore implements LogChangeListener, LogSink, Closeable {
+    /** Размер сегмента по умолчанию */
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+
+    /** Предельный общий размер сегментов по умолчанию */
+    public static final long DEFAULT_MAX_TOTAL_BYTES = 256L << 20;
+
+    /** Предельный возраст закрытого сегмента по умолчанию: семь суток */
+    public static final long DEFAULT_MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    /** Шаг разреженного индекса в записях */
+    static final int INDEX_INTERVAL = 64;
+
+    /** Размер заголовка записи: длина, номер последовательности, уровень, время и поток */
+    private static final int HEADER_BYTES = 4 + 8 + 1 + 8 + 8;
+
+    /** Предельная длина текста записи в байтах; более длинные тексты обрезаются */
+    private static final int MAX_MESSAGE_BYTES = 64 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private final Path m_directory;
+    private final int m_segmentBytes;
+    private final long m_maxTotalBytes;
+    private final long m_maxAgeMillis;
+
+    /** Сегменты в порядке возрастания номеров; последний - активный */
+    private final List<Segment> m_segments = new ArrayList<>();
+
+    /** Номер последовательности, который получит следующая сохранённая запись */
+    private long m_nextSequence;
+
+    /** Источник, из которого хранилище забирает записи */
+    private LogWindowSource m_source;
+
+    /**
+     * Номер первой записи, которую хранилище ещё не забрало из источника. Писатели источника
+     * читают его без блокировки, поэтому поле volatile
+     */
+    private volatile long m_drained;
+
+    /**
+     * Количество записей, вытесненных из буфера раньше, чем хранилище успело их забрать;
+     * такое возможно, только если хранилище подключено к источнику, уже вытеснившему записи
+     */
+    private long m_missed;
+
+    /** Признак ошибки ввода-вывода, после которой запись прекращается */
+    private boolean m_failed;
+
+    /**
+     * Открывает хранилище с параметрами по умолчанию.
+     * @param directory каталог сегментов; создаётся при необходимости
+     * @return хранилище
+     * @throws IOException если каталог или сегменты недоступны
+     */
+    public static LogSegmentStore open(Path directory) throws IOException {
+        return new LogSegmentStore(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_TOTAL_BYTES, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * Открывает хранилище, восстанавливая сегменты, найденные в каталоге.
+     * @param directory каталог сегментов; создаётся при необходимости
+     * @param segmentBytes размер одного сегмента в байтах
+     * @param maxTotalBytes предельный общий размер сегментов
+     * @param maxAgeMillis предельный возраст закрытого сегмента
+     * @throws IOException если каталог или сегменты недоступны
+     * @throws IllegalArgumentException если размер сегмента слишком мал
+     */
+    public LogSegmentStore(Path directory, int segmentBytes, long maxTotalBytes, long maxAgeMillis) throws IOException {
+        if (segmentBytes < HEADER_BYTES + 4 + 1024) {
+            throw new IllegalArgumentException("Слишком маленький сегмент: " + segmentBytes);
+        }
+        m_directory = directory;
+        m_segmentBytes = segmentBytes;
+        m_maxTotalBytes = maxTotalBytes;
+        m_maxAgeMillis = maxAgeMillis;
+
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null); // имена - номера фиксированной ширины
+        for (int i = 0; i < files.size(); i++) {
+            Segment segment = Segment.recover(files.get(i), i == files.size() - 1);
+            if (segment.m_count > 0 || i == files.size() - 1) {
+                m_segments.add(segment);
+                m_nextSequence = Math.max(m_nextSequence, segment.m_lastSequence + 1);
+            }
+        }
+        if (m_segments.isEmpty()) {
+            m_segments.add(Segment.create(segmentPath(0), 0, segmentBytes));
+        }
+        m_drained = m_nextSequence;
+    }
+
+    /**
+     * Подключает хранилище к источнику: регистрирует его слушателем и историей источника.
+     * Источник должен нумеровать записи начиная с {@link #getNextSequence()}.
+     * @param source источник записей лога
+     */
+    public synchronized void attach(LogWindowSource source) {
+        m_source = source;
+        source.setHistory(this);
+        source.registerListener(this);
+    }
+
+    /**
+     * Забирает из источника записи, опубликованные с прошлого вызова. Кроме потока, рассылающего
+     * уведомления, метод вызывают писатели источника, ожидающие ячейку буфера; вызовы
+     * упорядочены блокировкой хранилища, поэтому записи приходят по порядку.
+     */
+    @Override
+    public synchronized void onLogChanged() {
+        if (m_source == null || m_failed) {
+            return;
+        }
+        long buffered = m_source.getBufferedSequence();
+        if (buffered > m_nextSequence) {
+            m_missed += buffered - m_nextSequence;
+        }
+        long drained = m_source.drainTo(m_nextSequence, this);
+        m_drained = m_failed ? Long.MAX_VALUE : drained;
+    }
+
+    @Override
+    public synchronized void write(long sequence, LogRecord record) {
+        if (m_failed || sequence < m_nextSequence) {
+            return;
+        }
+        String message = record.formatMessage();
+        byte[] bytes = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_MESSAGE_BYTES);
+        int recordBytes = HEADER_BYTES + length;
+        try {
+            Segment active = activeSegment();
+            if (!active.hasRoom(recordBytes)) {
+                active = roll(sequence);
+            }
+            active.append(sequence, record, bytes, length);
+            m_nextSequence = sequence + 1;
+        } catch (IOException e) {
+            m_failed = true;
+            m_drained = Long.MAX_VALUE; // источник не должен ждать хранилище, которое больше не пишет
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Читает запись по номеру последовательности прямо из отображённой памяти.
+     * @param sequence номер последовательности
+     * @return запись или {@code null}, если записи с таким номером в хранилище нет
+     */
+    public synchronized LogEntry read(long sequence) {
+        int index = findSegment(sequence);
+        return index < 0 ? null : m_segments.get(index).read(sequence);
+    }
+
+    @Override
+    public synchronized void flush() {
+        activeSegment().m_buffer.force();
+    }
+
+    /**
+     * Забирает из источника ещё не сохранённые записи, отключает хранилище от источника
+     * и сбрасывает активный сегмент на диск.
+     */
+    @Override
+    public synchronized void close() {
+        if (m_source != null) {
+            onLogChanged();
+            m_source.unregisterListener(this);
+            m_source.setHistory(null);
+            m_source = null;
+        }
+        m_drained = Long.MAX_VALUE;
+        flush();
+    }
+
+    /** @return номер последовательности самой старой сохранённой записи */
+    public synchronized long getFirstSequence() {
+        for (Segment segment : m_segments) {
+            if (segment.m_count > 0) {
+                return segment.m_firstSequence;
+            }
+        }
+        return m_nextSequence;
+    }
+
+    /** @return номер последовательности, который получит следующая сохранённая запись */
+    public synchronized long getNextSequence() {
+        return m_nextSequence;
+    }
+
+    /**
+     * Возвращает номер первой записи, которую хранилище ещё не забрало из источника.
+     * Источник не перезаписывает ячейки с записями не меньше этого номера. После ошибки
+     * ввода-вывода или закрытия хранилища возвращается {@link Long#MAX_VALUE}.
+     * @return номер первой не забранной записи
+     */
+    public long getDrainedSequence() {
+        return m_drained;
+    }
+
+    /** @return количество записей, потерянных из-за переполнения буфера источника */
+    public synchronized long getMissedCount() {
+        return m_missed;
+    }
+
+    /** @return количество сегментов на диске */
+    public synchronized int getSegmentCount() {
+        return m_segments.size();
+    }
+
+    private Segment activeSegment() {
+        return m_segments.get(m_segments.size() - 1);
+    }
+
+    /**
+     * Закрывает активный сегмент, начинает новый с заданного номера и применяет ограничения хранения.
+     */
+    private Segment roll(long firstSequence) throws IOException {
+        activeSegment().seal();
+        Segment segment = Segment.create(segmentPath(firstSequence), firstSequence, m_segmentBytes);
+        m_segments.add(segment);
+        applyRetention();
+        return segment;
+    }
+
+    private void applyRetention() {
+        long total = 0;
+        for (Segment segment : m_segments) {
+            total += segment.m_capacity;
+        }
+        long oldestAllowed = System.currentTimeMillis() - m_maxAgeMillis;
+        while (m_segments.size() > 1) {
+            Segment oldest = m_segments.get(0);
+            if (total <= m_maxTotalBytes && oldest.m_sealedAtMillis >= oldestAllowed) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(oldest.m_file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                break; // попробуем ещё раз при следующей смене сегмента
+            }
+            m_segments.remove(0);
+            total -= oldest.m_capacity;
+        }
+    }
+
+    /** @return индекс последнего сегмента, начинающегося не позже номера, или -1 */
+    private int findSegment(long sequence) {
+        int low = 0;
+        int high = m_segments.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (m_segments.get(middle).m_firstSequence <= sequence) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return m_directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Один файл сегмента, целиком отображённый в память.
+     */
+    private static final class Segment {
+        private final Path m_file;
+        private final MappedByteBuffer m_buffer;
+        private final int m_capacity;
+
+        /** Номер первой записи (по имени файла) */
+        private final long m_firstSequence;
+
+        /** Позиция, с которой будет записана следующая запись */
+        private int m_position;
+
+        private long m_lastSequence = -1;
+        private int m_count;
+
+        /** Разреженный индекс: номера и позиции каждой {@link #INDEX_INTERVAL}-й записи */
+        private long[] m_indexSequences = new long[16];
+        private int[] m_indexPositions = new int[16];
+        private int m_indexSize;
+
+        /** Момент закрытия сегмента; для активного сегмента - бесконечность */
+        private long m_sealedAtMillis = Long.MAX_VALUE;
+
+        private Segment(Path file, MappedByteBuffer buffer, int capacity, long firstSequence) {
+            m_file = file;
+            m_buffer = buffer;
+            m_capacity = capacity;
+            m_firstSequence = firstSequence;
+        }
+
+        static Segment create(Path file, long firstSequence, int capacity) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength(capacity);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                return new Segment(file, buffer, capacity, firstSequence);
+            }
+        }
+
+        /**
+         * Открывает существующий сегмент и восстанавливает позицию конца и индекс, просматривая записи.
+         * Закрытые сегменты отображаются только для чтения.
+         */
+        static Segment recover(Path file, boolean active) throws IOException {
+            String name = file.getFileName().toString();
+            long firstSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment;
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), active ? "rw" : "r")) {
+                int capacity = (int) Math.min(raf.length(), Integer.MAX_VALUE);
+                FileChannel.MapMode mode = active ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+                segment = new Segment(file, raf.getChannel().map(mode, 0, capacity), capacity, firstSequence);
+            }
+            segment.scan();
+            if (!active) {
+                segment.m_sealedAtMillis = Files.getLastModifiedTime(file).toMillis();
+            }
+            return segment;
+        }
+
+        private void scan() {
+            int position = 0;
+            while (position + HEADER_BYTES <= m_capacity) {
+                int length = m_buffer.getInt(position);
+                if (length <= 0 || position + HEADER_BYTES - 1 + length > m_capacity) {
+                    break;
+                }
+                long sequence = m_buffer.getLong(position + 4);
+                if (sequence <= m_lastSequence || sequence < m_firstSequence) {
+                    break;
+                }
+                addToIndex(sequence, position);
+                position += HEADER_BYTES - 1 + length;
+            }
+            m_position = position;
+        }
+
+        boolean hasRoom(int recordBytes) {
+            // после записи должно остаться место под нулевую длину - признак конца сегмента
+            return m_position + recordBytes + 4 <= m_capacity;
+        }
+
+        void append(long sequence, LogRecord record, byte[] message, int length) {
+            int position = m_position;
+            m_buffer.putLong(position + 4, sequence);
+            m_buffer.put(position + 12, (byte) record.getLevel().ordinal());
+            m_buffer.putLong(position + 13, LogRecord.toEpochMillis(record.getTimestampNanos()));
+            m_buffer.putLong(position + 21, record.getThreadId());
+            m_buffer.put(position + HEADER_BYTES, message, 0, length);
+            m_buffer.putInt(position, length + 1);
+            addToIndex(sequence, position);
+            m_position = position + HEADER_BYTES + length;
+        }
+
+        private void addToIndex(long sequence, int position) {
+            if (m_count % INDEX_INTERVAL == 0) {
+                if (m_indexSize == m_indexSequences.length) {
+                    m_indexSequences = Arrays.copyOf(m_indexSequences, m_indexSize * 2);
+                    m_indexPositions = Arrays.copyOf(m_indexPositions, m_indexSize * 2);
+                }
+                m_indexSequences[m_indexSize] = sequence;
+                m_indexPositions[m_indexSize] = position;
+                m_indexSize++;
+            }
+            m_count++;
+            m_lastSequence = sequence;
+        }
+
+        LogEntry read(long sequence) {
+            if (m_count == 0 || sequence > m_lastSequence) {
+                return null;
+            }
+            int low = 0;
+            int high = m_indexSize - 1;
+            int position = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (m_indexSequences[middle] <= sequence) {
+                    position = m_indexPositions[middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (position < 0) {
+                return null;
+            }
+            while (position < m_position) {
+                int length = m_buffer.getInt(position);
+                long current = m_buffer.getLong(position + 4);
+                if (current == sequence) {
+                    LogLevel level = LEVELS[m_buffer.get(position + 12)];
+                    long timestampNanos = LogRecord.toNanos(m_buffer.getLong(position + 13));
+                    long threadId = m_buffer.getLong(position + 21);
+                    byte[] bytes = new byte[length - 1];
+                    m_buffer.get(position + HEADER_BYTES, bytes);
+                    String message = new String(bytes, StandardCharsets.UTF_8);
+                    return new LogEntry(sequence, level, message, timestampNanos, threadId, 0, null, null, null);
+                }
+                if (current > sequence) {
+                    return null; // запись была потеряна до сохранения
+                }
+                position += HEADER_BYTES - 1 + length;
+            }
+            return null;
+        }
+
+        void seal() throws IOException {
+            m_buffer.force();
+            m_sealedAtMillis = System.currentTimeMillis();
+            Files.setLastModifiedTime(m_file, FileTime.fromMillis(m_sealedAtMillis));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package log;
+
+/**
+ * Приёмник записей лога, получающий их в порядке возрастания номеров последовательности.
+ * Одновременно приёмник вызывается не более чем из одного потока.
+ */
+public interface LogSink
+{
+    /**
+     * Принимает запись лога. Запись переиспользуется после возврата, поэтому приёмник
+     * должен скопировать или отформатировать всё, что ему нужно.
+     * @param sequence номер последовательности записи
+     * @param record запись
+     */
+    public void write(long sequence, LogRecord record);
+
+    /**
+     * Сбрасывает накопленные записи на постоянный носитель.
+     */
+    public void flush();
+}
@@ -1,28 +1,96 @@
 package log;
 
+import java.lang.invoke.VarHandle;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 
+/**
+ * Источник записей лога на основе кольцевого буфера без блокировок.
+ * Каждая запись получает порядковый номер (последовательность) атомарным инкрементом, после чего
+ * писатель заполняет заранее выделенную ячейку буфера и публикует её через штамп ячейки:
+ * {@code 2 * seq + 1} - запись идёт, {@code 2 * seq + 2} - запись опубликована. Читатели проверяют
+ * штамп до и после чтения ячейки и отбрасывают записи, перезаписанные во время чтения.
+ * Писатели не ждут друг друга, пока один из них не обгонит другого на целый круг буфера.
+ * Если подключено хранилище истории, ячейка занимается только после того, как хранилище
+ * забрало запись предыдущего круга: писатель, ждущий ячейку, сам передаёт хранилищу
+ * опубликованные записи, так что запись не теряется между двумя уведомлениями.
+ * <p>
+ * Слушатели уведомляются пачками: пока один писатель рассылает уведомление, остальные только
+ * увеличивают счётчик, и все накопленные записи покрываются следующим уведомлением.
+ */
 public class LogWindowSource {
+    /** Количество активных ожиданий занятой ячейки перед уступкой процессора */
+    private static final int MAX_SPINS = 64;
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
     private final int m_iQueueLength;
-    private final LogEntry[] m_messages;
-    private int m_start;
-    private int m_size;
-    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /** Номер последовательности первой записи этого источника */
+    private final long m_startSequence;
+
+    /** Ячейки буфера: заранее созданные записи, перезаписываемые на каждом круге */
+    private final LogRecord[] m_slots;
+
+    /** Штампы ячеек: номер последовательности записи и признак завершения её публикации */
+    private final AtomicLongArray m_stamps;
+
+    /** Следующий свободный номер последовательности */
+    private final AtomicLong m_claimed = new AtomicLong();
+
+    /** Количество записей, опубликованных без пропусков: все номера меньше него доступны читателям */
+    private final AtomicLong m_published = new AtomicLong();
+
+    /** Количество записей, о которых слушатели ещё не уведомлены */
+    private final AtomicInteger m_pendingNotifications = new AtomicInteger();
+
     private final CopyOnWriteArrayList<LogChangeListener> m_listeners = new CopyOnWriteArrayList<>();
 
+    /**
+     * Вторичные индексы по уровням: для каждого уровня - кольцо номеров последовательности записей
+     * этого уровня той же ёмкости, что и буфер. Кольцо создаётся при первой записи уровня.
+     * Индексы пополняет только поток, рассылающий уведомления
+     */
+    private final long[][] m_levelSequences = new long[LEVELS.length][];
+
+    /** Количество проиндексированных записей каждого уровня */
+    private final AtomicLongArray m_levelCounts = new AtomicLongArray(LEVELS.length);
+
+    /** Номер последовательности первой ещё не проиндексированной записи */
+    private long m_indexed;
+
+    /** Хранилище более старых записей, вытесненных из буфера; {@code null}, если истории нет */
+    private volatile LogSegmentStore m_history;
+
     /**
      * Создает новый источник лога с указанным максимальным размером буфера.
      * @param iQueueLength максимальное количество хранимых записей (должно быть положительным)
      */
     public LogWindowSource(int iQueueLength) {
+        this(iQueueLength, 0);
+    }
+
+    /**
+     * Создает новый источник лога, нумерующий записи начиная с заданного номера.
+     * Используется, чтобы продолжить нумерацию записей, уже сохранённых на диске.
+     * @param iQueueLength максимальное количество хранимых записей (должно быть положительным)
+     * @param startSequence номер последовательности первой записи
+     */
+    public LogWindowSource(int iQueueLength, long startSequence) {
         m_iQueueLength = iQueueLength;
-        m_messages = new LogEntry[iQueueLength];
-        m_start = 0;
-        m_size = 0;
+        m_startSequence = startSequence;
+        m_claimed.set(startSequence);
+        m_published.set(startSequence);
+        m_indexed = startSequence;
+        m_slots = new LogRecord[iQueueLength];
+        for (int i = 0; i < iQueueLength; i++) {
+            m_slots[i] = new LogRecord();
+        }
+        m_stamps = new AtomicLongArray(iQueueLength);
     }
 
 
@@ -40,85 +108,361 @@ public class LogWindowSource {
     /**
      * Добавляет новую запись в лог.
      * Если буфер заполнен, самая старая запись вытесняется.
-     * После добавления уведомляет всех зарегистрированных слушателей.
+     * Запись не выделяет памяти и не берёт блокировок; после неё слушатели уведомляются
+     * одним из писателей, возможно сразу о нескольких записях.
      * @param logLevel уровень важности записи
      * @param strMessage текст сообщения
      */
     public void append(LogLevel logLevel, String strMessage) {
-        LogEntry entry = new LogEntry(logLevel, strMessage);
+        long seq = m_claimed.getAndIncrement();
+        int slot = acquireSlot(seq);
+        m_slots[slot].reset(logLevel, strMessage);
+        publishSlot(slot, seq);
+        advancePublished();
+        notifyListeners();
+    }
 
-        m_lock.writeLock().lock();
-        try {
-            int index = (m_start + m_size) % m_iQueueLength;
-            m_messages[index] = entry;
+    /**
+     * Добавляет структурированную запись, копируя её в ячейку буфера.
+     * Переданная запись после возврата может быть переиспользована вызывающим.
+     * @param record запись
+     */
+    public void append(LogRecord record) {
+        long seq = m_claimed.getAndIncrement();
+        int slot = acquireSlot(seq);
+        m_slots[slot].copyFrom(record);
+        publishSlot(slot, seq);
+        advancePublished();
+        notifyListeners();
+    }
 
-            if (m_size < m_iQueueLength) {
-                m_size++;
+    /**
+     * Добавляет пачку записей, захватывая номера последовательности порциями не больше буфера.
+     * Слушатели получают одно уведомление на порцию: пачка не обгоняет буфер на круг, пока
+     * слушатели не забрали из него предыдущую порцию.
+     * @param records записи
+     * @param count количество записей, взятых с начала массива
+     */
+    public void appendBatch(LogRecord[] records, int count) {
+        for (int offset = 0; offset < count; offset += m_iQueueLength) {
+            int chunk = Math.min(count - offset, m_iQueueLength);
+            long first = m_claimed.getAndAdd(chunk);
+            for (int i = 0; i < chunk; i++) {
+                int slot = acquireSlot(first + i);
+                m_slots[slot].copyFrom(records[offset + i]);
+                publishSlot(slot, first + i);
+            }
+            advancePublished();
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Дожидается, пока ячейка освободится от записи предыдущего круга, и помечает её занятой.
+     * @param seq уже захваченный номер последовательности
+     * @return номер ячейки
+     */
+    private int acquireSlot(long seq) {
+        int slot = (int) (seq % m_iQueueLength);
+
+        // ячейку можно занять только после того, как запись предыдущего круга опубликована
+        // и забрана хранилищем истории
+        long previous = seq - m_iQueueLength;
+        long expected = previous < m_startSequence ? 0 : 2 * previous + 2;
+        LogSegmentStore history = m_history;
+        for (int spins = 0; m_stamps.get(slot) != expected
+                || history != null && previous >= history.getDrainedSequence(); spins++) {
+            if (spins < MAX_SPINS) {
+                Thread.onSpinWait();
+            } else if (m_stamps.get(slot) == expected && advancePublishedPast(previous)) {
+                // запись предыдущего круга ждёт только хранилище: передаём ему опубликованные записи,
+                // не дожидаясь уведомления - его может разослать и сам этот поток после своей пачки
+                history.onLogChanged();
             } else {
-                m_start = (m_start + 1) % m_iQueueLength;
+                // владелец ячейки вытеснен с процессора: отдаём ему квант вместо пустого вращения
+                Thread.yield();
             }
-        } finally {
-            m_lock.writeLock().unlock();
         }
+        m_stamps.set(slot, 2 * seq + 1);
+        VarHandle.storeStoreFence();
+        return slot;
+    }
 
-        notifyListeners();
+    private void publishSlot(int slot, long seq) {
+        // volatile-запись, а не release: курсор читается после неё без переупорядочивания
+        m_stamps.set(slot, 2 * seq + 2);
+    }
+
+    /**
+     * Сдвигает курсор опубликованных записей через все подряд завершённые ячейки.
+     * Курсор двигает тот писатель, который застал следующую ячейку опубликованной,
+     * поэтому он не отстаёт от последней записи без пропусков.
+     */
+    private void advancePublished() {
+        while (true) {
+            long cursor = m_published.get();
+            if (cursor >= m_claimed.get()) {
+                return;
+            }
+            // штамп больше ожидаемого означает, что ячейку уже занял следующий круг
+            if (m_stamps.get((int) (cursor % m_iQueueLength)) < 2 * cursor + 2) {
+                return;
+            }
+            m_published.compareAndSet(cursor, cursor + 1);
+        }
+    }
+
+    /**
+     * Сдвигает курсор опубликованных записей и проверяет, что он прошёл заданную запись.
+     * @return {@code true}, если запись {@code seq} и все предыдущие опубликованы
+     */
+    private boolean advancePublishedPast(long seq) {
+        advancePublished();
+        return m_published.get() > seq;
     }
 
 
     private void notifyListeners() {
-        for (LogChangeListener listener : m_listeners) {
-            listener.onLogChanged();
+        if (m_pendingNotifications.getAndIncrement() != 0) {
+            return; // уведомления уже рассылает другой писатель и учтёт эту запись
+        }
+        int pending = 1;
+        do {
+            try {
+                indexPublished();
+                for (LogChangeListener listener : m_listeners) {
+                    listener.onLogChanged();
+                }
+            } finally {
+                pending = m_pendingNotifications.addAndGet(-pending);
+            }
+        } while (pending != 0);
+    }
+
+
+    /**
+     * Добавляет в индексы по уровням записи, опубликованные с прошлого вызова.
+     * Вызывается только потоком, рассылающим уведомления, поэтому у индексов один писатель.
+     */
+    private void indexPublished() {
+        long published = m_published.get();
+        for (long seq = Math.max(m_indexed, getBufferedSequence()); seq < published; seq++) {
+            int slot = (int) (seq % m_iQueueLength);
+            long stamp = m_stamps.getAcquire(slot);
+            LogLevel level = m_slots[slot].getLevel();
+            VarHandle.loadLoadFence();
+            if (stamp != 2 * seq + 2 || m_stamps.get(slot) != stamp) {
+                continue; // запись уже вытеснена и в выборки всё равно не попадёт
+            }
+            int ordinal = level.ordinal();
+            long[] sequences = m_levelSequences[ordinal];
+            if (sequences == null) {
+                sequences = new long[m_iQueueLength];
+                m_levelSequences[ordinal] = sequences;
+            }
+            long count = m_levelCounts.get(ordinal);
+            sequences[(int) (count % m_iQueueLength)] = seq;
+            m_levelCounts.set(ordinal, count + 1);
         }
+        m_indexed = published;
     }
 
+    /**
+     * Возвращает последние записи уровня не ниже заданного.
+     * Записи выбираются по индексам уровней, поэтому время работы пропорционально размеру результата,
+     * а не размеру буфера. Выборка охватывает записи буфера, о которых уже разосланы уведомления.
+     * @param minimumLevel минимальный уровень записей
+     * @param count максимальное количество записей
+     * @return записи в порядке возрастания номеров последовательности
+     */
+    public List<LogEntry> lastAtLevel(LogLevel minimumLevel, int count) {
+        int levels = LEVELS.length;
+        long[] cursors = new long[levels];
+        for (int i = minimumLevel.ordinal(); i < levels; i++) {
+            cursors[i] = m_levelCounts.get(i);
+        }
+        List<LogEntry> result = new ArrayList<>(Math.min(count, m_iQueueLength));
+        while (result.size() < count) {
+            // слияние убывающих последовательностей уровней: берём наибольший номер
+            int bestLevel = -1;
+            long bestSequence = -1;
+            for (int i = minimumLevel.ordinal(); i < levels; i++) {
+                long sequence = levelSequence(i, cursors[i] - 1);
+                if (sequence < 0) {
+                    cursors[i] = 0;
+                } else if (sequence > bestSequence) {
+                    bestSequence = sequence;
+                    bestLevel = i;
+                }
+            }
+            if (bestLevel < 0) {
+                break;
+            }
+            cursors[bestLevel]--;
+            LogEntry entry = get(bestSequence);
+            if (entry == null) {
+                break; // запись вытеснена, более старые тоже
+            }
+            result.add(entry);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Читает из индекса уровня номер записи с заданной позицией.
+     * @return номер последовательности или -1, если позиции нет или она уже перезаписана
+     */
+    private long levelSequence(int ordinal, long position) {
+        long[] sequences = m_levelSequences[ordinal];
+        if (position < 0 || sequences == null) {
+            return -1;
+        }
+        long sequence = sequences[(int) (position % m_iQueueLength)];
+        VarHandle.loadLoadFence();
+        return m_levelCounts.get(ordinal) - position > m_iQueueLength ? -1 : sequence;
+    }
+
+    /**
+     * Возвращает записи с номером последовательности не меньше заданного, включая историю.
+     * Время работы пропорционально размеру результата.
+     * @param sequence номер первой интересующей записи
+     * @param count максимальное количество записей
+     * @return записи в порядке возрастания номеров последовательности
+     */
+    public List<LogEntry> since(long sequence, int count) {
+        long first = getFirstSequence();
+        long from = Math.max(sequence, first);
+        long published = m_published.get();
+        List<LogEntry> result = new ArrayList<>((int) Math.max(0, Math.min(count, published - from)));
+        for (long seq = from; seq < published && result.size() < count; seq++) {
+            result.add(read(seq));
+        }
+        return result;
+    }
+
+    /**
+     * Подключает хранилище истории. После этого индексы {@link #range(int, int)} и {@link #size()}
+     * охватывают и записи, вытесненные из буфера, но сохранённые в хранилище.
+     * @param history хранилище истории или {@code null}
+     */
+    public void setHistory(LogSegmentStore history) {
+        m_history = history;
+    }
+
+    /** @return количество опубликованных записей, то есть номер последовательности следующей записи */
+    public long getPublishedSequence() {
+        return m_published.get();
+    }
+
+    /** @return номер последовательности самой старой записи, ещё находящейся в буфере */
+    public long getBufferedSequence() {
+        return Math.max(m_startSequence, m_published.get() - m_iQueueLength);
+    }
+
+    /**
+     * Возвращает номер последовательности записи с индексом 0 в {@link #range(int, int)}.
+     * Без истории это самая старая запись буфера, с историей - самая старая запись хранилища.
+     * @return номер последовательности первой доступной записи
+     */
+    public long getFirstSequence() {
+        long buffered = getBufferedSequence();
+        LogSegmentStore history = m_history;
+        return history == null ? buffered : Math.min(buffered, history.getFirstSequence());
+    }
 
     /**
      * Возвращает текущее количество записей в логе.
-     * @return число записей (0 <= size <= m_iQueueLength)
+     * @return число записей (без истории 0 <= size <= m_iQueueLength)
      */
     public int size() {
-        m_lock.readLock().lock();
-        try {
-            return m_size;
-        } finally {
-            m_lock.readLock().unlock();
-        }
+        return (int) Math.min(m_published.get() - getFirstSequence(), Integer.MAX_VALUE);
     }
 
     /**
      * Возвращает диапазон записей из лога.
+     * Записи копируются из буфера или читаются из истории. Элемент списка с индексом i всегда
+     * соответствует записи startFrom + i: на месте записи, вытесненной во время чтения или
+     * не прочитанной из истории, стоит {@code null}, чтобы последующие записи не сдвигались.
      * @param startFrom начальный индекс (0-based)
      * @param count максимальное количество записей для возврата
-     * @return неизменяемый список записей (пустой список, если startFrom некорректен)
-     * @throws IndexOutOfBoundsException если startFrom < 0
+     * @return неизменяемый список записей, возможно с {@code null} на месте недоступных
+     *         (пустой список, если startFrom некорректен)
      */
     public Iterable<LogEntry> range(int startFrom, int count) {
-        m_lock.readLock().lock();
-        try {
-            if (startFrom < 0 || startFrom >= m_size) {
-                return Collections.emptyList();
-            }
+        long published = m_published.get();
+        long first = getFirstSequence();
+        long size = published - first;
+        if (startFrom < 0 || startFrom >= size || count <= 0) {
+            return Collections.emptyList();
+        }
+
+        long end = Math.min((long) startFrom + count, size);
+        List<LogEntry> result = new ArrayList<>((int) (end - startFrom));
+        for (long seq = first + startFrom; seq < first + end; seq++) {
+            result.add(read(seq));
+        }
+        return Collections.unmodifiableList(result);
+    }
 
-            int end = Math.min(startFrom + count, m_size);
-            List<LogEntry> result = new ArrayList<>(end - startFrom);
+    /**
+     * Возвращает запись по номеру последовательности из буфера или, если она уже вытеснена, из истории.
+     * @param seq номер последовательности записи
+     * @return запись или {@code null}, если она недоступна
+     */
+    public LogEntry read(long seq) {
+        LogSegmentStore history = m_history;
+        return seq < getBufferedSequence() && history != null ? history.read(seq) : get(seq);
+    }
 
-            for (int i = startFrom; i < end; i++) {
-                int index = (m_start + i) % m_iQueueLength;
-                result.add(m_messages[index]);
-            }
+    /**
+     * Копирует запись из буфера.
+     * @param seq номер последовательности записи
+     * @return запись или {@code null}, если она ещё не опубликована или уже вытеснена
+     */
+    public LogEntry get(long seq) {
+        int slot = (int) (seq % m_iQueueLength);
+        long stamp = m_stamps.getAcquire(slot);
+        if (stamp != 2 * seq + 2) {
+            return null;
+        }
+        LogEntry entry = m_slots[slot].toEntry(seq);
+        VarHandle.loadLoadFence();
+        return m_stamps.get(slot) == stamp ? entry : null;
+    }
 
-            return Collections.unmodifiableList(result);
-        } finally {
-            m_lock.readLock().unlock();
+    /**
+     * Передаёт приёмнику копии записей буфера, начиная с заданного номера.
+     * Для всех записей используется одна и та же копия, поэтому приёмник не должен её сохранять.
+     * Записи, уже вытесненные из буфера, пропускаются.
+     * @param fromSequence номер первой записи, которую нужно передать
+     * @param sink приёмник записей
+     * @return номер последовательности, с которого нужно продолжить при следующем вызове
+     */
+    public long drainTo(long fromSequence, LogSink sink) {
+        long published = m_published.get();
+        LogRecord copy = new LogRecord();
+        for (long seq = Math.max(fromSequence, getBufferedSequence()); seq < published; seq++) {
+            int slot = (int) (seq % m_iQueueLength);
+            long stamp = m_stamps.getAcquire(slot);
+            if (stamp != 2 * seq + 2) {
+                continue;
+            }
+            copy.copyFrom(m_slots[slot]);
+            VarHandle.loadLoadFence();
+            if (m_stamps.get(slot) == stamp) {
+                sink.write(seq, copy);
+            }
         }
+        return published;
     }
 
     /**
      * Возвращает все записи лога.
      * Эквивалентно вызову range(0, size()).
-     * @return неизменяемый список всех записей
+     * @return неизменяемый список всех записей, возможно с {@code null} на месте недоступных
      */
     public Iterable<LogEntry> all() {
-        return range(0, m_size);
+        return range(0, Integer.MAX_VALUE);
     }
-}
\ No newline at end of file
+}
@@ -1,28 +1,283 @@
 package log;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public final class Logger
 {
+    /**
+     * Системное свойство с каталогом постоянного лога; значение {@code none} отключает
+     * сохранение записей на диск
+     */
+    public static final String LOG_DIRECTORY_PROPERTY = "robots.logDir";
+
+    /**
+     * Системное свойство, включающее асинхронную доставку записей: значение - имя
+     * {@link OverflowPolicy}. Без него записи добавляются в потоке вызывающего
+     */
+    public static final String ASYNC_POLICY_PROPERTY = "robots.logOverflow";
+
+    /** Системное свойство с минимальным уровнем записей, попадающих в лог */
+    public static final String LEVEL_PROPERTY = "robots.logLevel";
+
+    /** Минимальный уровень записей, попадающих в лог */
+    private static volatile int minimumLevel = LogLevel.Debug.level();
+
+    /** Запись, в которой поток собирает структурированное сообщение перед передачей в лог */
+    private static final ThreadLocal<LogRecord> stagingRecord = ThreadLocal.withInitial(LogRecord::new);
+
     private static final LogWindowSource defaultLogSource;
+    private static final LogSegmentStore defaultLogStore;
+    private static final AsyncLogDispatcher defaultDispatcher;
+    private static LogSearchIndex defaultSearchIndex;
     static {
-        defaultLogSource = new LogWindowSource(3);
+        defaultLogStore = openStore();
+        defaultLogSource = new LogWindowSource(3, defaultLogStore == null ? 0 : defaultLogStore.getNextSequence());
+        if (defaultLogStore != null) {
+            defaultLogStore.attach(defaultLogSource);
+        }
+        readLevel();
+        OverflowPolicy policy = readPolicy();
+        defaultDispatcher = policy == null ? null : new AsyncLogDispatcher(defaultLogSource,
+                AsyncLogDispatcher.DEFAULT_CAPACITY, policy, LogLevel.Warning, 10);
     }
     
     private Logger()
     {
     }
 
+    private static LogSegmentStore openStore()
+    {
+        String directory = System.getProperty(LOG_DIRECTORY_PROPERTY,
+                Paths.get(System.getProperty("user.home"), "bleskin", "logs").toString());
+        if ("none".equals(directory)) {
+            return null;
+        }
+        try {
+            return LogSegmentStore.open(Path.of(directory));
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace(); // без постоянного лога остаётся только буфер в памяти
+            return null;
+        }
+    }
+
+    /**
+     * Задаёт минимальный уровень из {@link #LEVEL_PROPERTY}. О неизвестном имени уровня сообщается,
+     * а уровень остаётся {@link LogLevel#Debug}.
+     */
+    private static void readLevel()
+    {
+        String level = System.getProperty(LEVEL_PROPERTY);
+        if (level == null) {
+            return;
+        }
+        try {
+            minimumLevel = LogLevel.valueOf(level).level();
+        } catch (IllegalArgumentException e) {
+            reportBadProperty(LEVEL_PROPERTY, level, LogLevel.Debug);
+        }
+    }
+
+    /**
+     * Читает политику асинхронной доставки из {@link #ASYNC_POLICY_PROPERTY}. Неизвестное имя
+     * не должно ломать инициализацию логгера, поэтому о нём сообщается, а доставка остаётся
+     * асинхронной с политикой {@link OverflowPolicy#DROP_OLDEST}.
+     * @return политика или {@code null}, если свойство не задано
+     */
+    private static OverflowPolicy readPolicy()
+    {
+        String policy = System.getProperty(ASYNC_POLICY_PROPERTY);
+        if (policy == null) {
+            return null;
+        }
+        try {
+            return OverflowPolicy.valueOf(policy);
+        } catch (IllegalArgumentException e) {
+            reportBadProperty(ASYNC_POLICY_PROPERTY, policy, OverflowPolicy.DROP_OLDEST);
+            return OverflowPolicy.DROP_OLDEST;
+        }
+    }
+
+    /**
+     * Сообщает о некорректном значении системного свойства в поток ошибок и в сам лог.
+     */
+    private static void reportBadProperty(String property, String value, Object fallback)
+    {
+        String message = "Некорректное значение " + property + "=" + value + ", используется " + fallback;
+        System.err.println(message);
+        defaultLogSource.append(LogLevel.Error, message);
+    }
+
     public static void debug(String strMessage)
     {
-        defaultLogSource.append(LogLevel.Debug, strMessage);
+        append(LogLevel.Debug, strMessage);
     }
     
     public static void error(String strMessage)
     {
-        defaultLogSource.append(LogLevel.Error, strMessage);
+        append(LogLevel.Error, strMessage);
+    }
+
+    /**
+     * Добавляет отладочную запись с шаблоном; {@code {}} в шаблоне заменяется аргументом
+     * только при отображении записи, поэтому отключённый уровень не стоит ничего.
+     */
+    public static void debug(String template, long arg)
+    {
+        if (isDebugEnabled()) {
+            log(record(LogLevel.Debug, template).arg(arg));
+        }
+    }
+
+    public static void debug(String template, long arg1, long arg2)
+    {
+        if (isDebugEnabled()) {
+            log(record(LogLevel.Debug, template).arg(arg1).arg(arg2));
+        }
+    }
+
+    public static void debug(String template, double arg)
+    {
+        if (isDebugEnabled()) {
+            log(record(LogLevel.Debug, template).arg(arg));
+        }
+    }
+
+    public static void debug(String template, double arg1, double arg2)
+    {
+        if (isDebugEnabled()) {
+            log(record(LogLevel.Debug, template).arg(arg1).arg(arg2));
+        }
+    }
+
+    public static void debug(String template, Object arg)
+    {
+        if (isDebugEnabled()) {
+            log(record(LogLevel.Debug, template).arg(arg));
+        }
+    }
+
+    public static void error(String template, Object arg)
+    {
+        if (isEnabled(LogLevel.Error)) {
+            log(record(LogLevel.Error, template).arg(arg));
+        }
+    }
+
+    /**
+     * Начинает структурированную запись в экземпляре, закреплённом за текущим потоком.
+     * Запись нужно заполнить аргументами и передать в {@link #log(LogRecord)} до следующего
+     * вызова этого метода в том же потоке.
+     * @param level уровень записи
+     * @param template шаблон сообщения
+     * @return запись текущего потока
+     */
+    public static LogRecord record(LogLevel level, String template)
+    {
+        return stagingRecord.get().reset(level, template);
+    }
+
+    /**
+     * Добавляет копию структурированной записи в лог, если её уровень включён.
+     * @param record запись; после возврата её можно переиспользовать
+     */
+    public static void log(LogRecord record)
+    {
+        if (record.getLevel().level() < minimumLevel) {
+            return;
+        }
+        if (defaultDispatcher != null) {
+            defaultDispatcher.append(record);
+        } else {
+            defaultLogSource.append(record);
+        }
+    }
+
+    /**
+     * Задаёт минимальный уровень записей; записи ниже него отбрасываются сразу при вызове.
+     * @param level минимальный уровень
+     */
+    public static void setLevel(LogLevel level)
+    {
+        minimumLevel = level.level();
+    }
+
+    /**
+     * Проверяет, попадут ли в лог записи указанного уровня. Позволяет не собирать текст
+     * сообщения, которое всё равно будет отброшено.
+     * @param level уровень записи
+     * @return {@code true}, если уровень не ниже минимального
+     */
+    public static boolean isEnabled(LogLevel level)
+    {
+        return level.level() >= minimumLevel;
+    }
+
+    /** @return {@code true}, если отладочные записи попадают в лог */
+    public static boolean isDebugEnabled()
+    {
+        return LogLevel.Debug.level() >= minimumLevel;
+    }
+
+    private static void append(LogLevel level, String strMessage)
+    {
+        if (level.level() < minimumLevel) {
+            return;
+        }
+        if (defaultDispatcher != null) {
+            defaultDispatcher.append(level, strMessage);
+        } else {
+            defaultLogSource.append(level, strMessage);
+        }
+    }
+
+    /**
+     * Завершает работу лога при выходе из приложения: доставляет записи, ожидающие в очереди
+     * асинхронной доставки, и сбрасывает постоянное хранилище на диск. Записи, добавленные
+     * после вызова, остаются только в буфере в памяти.
+     */
+    public static void shutdown()
+    {
+        if (defaultDispatcher != null) {
+            defaultDispatcher.close();
+        }
+        if (defaultLogStore != null) {
+            defaultLogStore.close();
+        }
     }
 
     public static LogWindowSource getDefaultLogSource()
     {
         return defaultLogSource;
     }
+
+    /**
+     * @return асинхронная доставка записей или {@code null}, если записи добавляются синхронно
+     */
+    public static AsyncLogDispatcher getDefaultDispatcher()
+    {
+        return defaultDispatcher;
+    }
+
+    /**
+     * @return постоянное хранилище лога или {@code null}, если записи не сохраняются на диск
+     */
+    public static LogSegmentStore getDefaultLogStore()
+    {
+        return defaultLogStore;
+    }
+
+    /**
+     * Возвращает поисковый индекс лога, создавая его при первом обращении:
+     * пока поиск не нужен, записи не индексируются.
+     * @return поисковый индекс записей {@link #getDefaultLogSource()}
+     */
+    public static synchronized LogSearchIndex getDefaultSearchIndex()
+    {
+        if (defaultSearchIndex == null) {
+            defaultSearchIndex = new LogSearchIndex(defaultLogSource);
+        }
+        return defaultSearchIndex;
+    }
 }
@@ -0,0 +1,25 @@
+package log;
+
+/**
+ * Поведение {@link AsyncLogDispatcher} при заполненной очереди.
+ */
+public enum OverflowPolicy
+{
+    /** Писатель ждёт, пока в очереди не освободится место */
+    BLOCK,
+
+    /** Новая запись вытесняет самую старую запись очереди */
+    DROP_OLDEST,
+
+    /**
+     * Новая запись уровня ниже порогового отбрасывается, а запись не ниже порога
+     * вытесняет самую старую запись очереди
+     */
+    DROP_BELOW_LEVEL,
+
+    /**
+     * Из новых записей сохраняется каждая N-я (вытесняя самую старую), остальные отбрасываются,
+     * так что при перегрузке в лог попадает равномерная выборка
+     */
+    SAMPLE
+}
@@ -1,7 +1,5 @@
 package state;
 
-import java.util.Map;
-
 /**
  * Сохраняет и восстанавливает состояние окна
  */
@@ -9,15 +7,15 @@ public interface Save {
 
     /**
      * Сохраняет состояние окна
-     * @return Возвращает мапу, в которой в ключе лежит название
-     * параметра, а в значение - состояние
+     * @param section раздел настроек окна, в который записываются его параметры
      */
-    Map<String, Integer> saveWindowState();
+    void saveWindowState(SettingsSection section);
 
     /**
      * Загружает состояние окна
+     * @param section раздел настроек окна; пуст, если параметры ещё не сохранялись
      */
-    void loadWindowState(Map<String, Integer> params);
+    void loadWindowState(SettingsSection section);
 
     /**
      *
@@ -1,95 +1,219 @@
 package state;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Сохраняет и управляет параметрами окон
+ * <p>
+ * Параметры каждого окна хранятся в собственном разделе {@link Settings}, который находится
+ * по имени окна за O(1). На диске настройки хранятся в двоичном виде ({@link StateStore}):
+ * полный снимок с контрольной суммой и журнал изменений после него. {@link #saveAsync()} передаёт
+ * фоновому потоку только разделы, изменённые с прошлого сохранения, и не ждёт записи на диск;
+ * когда журнал разрастается, поток переписывает снимок целиком. Прежний текстовый
+ * {@code save.txt} читается, только пока двоичного снимка ещё нет.
  */
 public class SaveState {
 
+    /** Раздел с настройками локализации */
+    static final String LOCALE_SECTION = "locale";
+
+    /** Параметр раздела локализации с тегом языка (см. {@link Locale#toLanguageTag()}) */
+    static final String LANGUAGE_KEY = "language";
+
+    /** Размер журнала, после которого изменения сворачиваются в новый снимок */
+    private static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    /** Предельное время ожидания фоновой записи при закрытии */
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    /** Настройки всех окон приложения по разделам */
+    private final Settings settings = new Settings();
+    private final Set<String> windowsNames = new HashSet<>();
+    private final Path configDirectory;
+    private final Path legacyFile;
+    private final StateStore store;
+
+    /** Признак того, что фоновая запись уже поставлена в очередь */
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private ExecutorService writer;
 
     /**
-     * Параметры всех сохраненных окон приложения
-     * Формат имени - "windowName.parameterName"
+     * Создаёт хранилище настроек в каталоге {@code ~/bleskin}.
      */
-    private final Map<String, Integer> windowParams;
-    private final Set<String> windowsNames;
-    private final String configFilePath;
-
-    public SaveState(Map<String, Integer> windowParams, Set<String> windowsNames) {
-        this.windowParams = windowParams;
-        this.windowsNames = windowsNames;
-        this.configFilePath = System.getProperty("user.home") + "/bleskin/save.txt";
+    public SaveState() {
+        this(Path.of(System.getProperty("user.home"), "bleskin"));
     }
 
-    public void registerWindow(String windowName) {
+    /**
+     * Создаёт хранилище настроек в заданном каталоге.
+     * @param configDirectory каталог файлов настроек; создаётся при первой записи
+     */
+    public SaveState(Path configDirectory) {
+        this.configDirectory = configDirectory;
+        this.legacyFile = configDirectory.resolve("save.txt");
+        this.store = new StateStore(configDirectory);
+    }
+
+    public synchronized void registerWindow(String windowName) {
         windowsNames.add(windowName);
     }
 
     /**
-     * Получаем Мапу с параметрами окна по имени этого окна
+     * Получаем раздел с параметрами окна по имени этого окна
      *
      * @param windowName название окна
-     * @return Мапа с параметрами окна, ключ - название параметра, значение - его значение
-     * @throws IllegalArgumentException если окно не найдено
+     * @return раздел параметров окна; пустой, если параметры ещё не сохранялись
+     * @throws IllegalArgumentException если окно не зарегистрировано
      */
-    public Map<String, Integer> getWindowParams(String windowName) {
-        if (windowsNames.isEmpty() || !windowsNames.contains(windowName)) {
+    public synchronized SettingsSection getWindowSection(String windowName) {
+        if (!windowsNames.contains(windowName)) {
             throw new IllegalArgumentException("Окно '" + windowName + "' не найдено");
         }
-        Map<String, Integer> result = new HashMap<>();
-        String prefix = windowName + ".";
-        for (Map.Entry<String, Integer> entry : windowParams.entrySet()) {
-            String key = entry.getKey();
-            if (key.startsWith(prefix)) {
-                String paramName = key.substring(prefix.length());
-                result.put(paramName, entry.getValue());
+        return settings.section(windowName);
+    }
+
+    /**
+     * Записывает полный снимок настроек и ждёт окончания записи.
+     * Разделы копируются под блокировкой хранилища, поэтому фоновая запись журнала не может
+     * оказаться между копированием и записью снимка и потеряться вместе с журналом.
+     * @throws IOException при ошибке записи
+     */
+    public void saveToFile() throws IOException {
+        synchronized (store) {
+            List<SettingsSection> sections;
+            synchronized (this) {
+                sections = settings.takeAll();
             }
+            configDirectory.toFile().mkdirs();
+            store.writeSnapshot(sections);
         }
-        return result;
     }
 
+    /**
+     * Ставит в очередь фоновую запись изменённых разделов и сразу возвращается.
+     * Если предыдущая запись ещё не началась, новая не добавляется: она запишет и эти изменения.
+     */
+    public void saveAsync() {
+        if (!savePending.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            if (writer == null) {
+                writer = Executors.newSingleThreadExecutor(task -> {
+                    Thread thread = new Thread(task, "state-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            writer.execute(() -> {
+                savePending.set(false);
+                try {
+                    flushDirty();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
 
     /**
-     * Сохраняет параметры окон в файл
-     * @throws IOException если файл не существует - метод ничего
-     * не делает
+     * Дописывает изменённые разделы в журнал, а при большом журнале или отсутствии журнала
+     * переписывает снимок целиком. При ошибке записи разделы остаются изменёнными.
+     * @throws IOException при ошибке записи
      */
-    public void saveToFile() throws IOException {
-        File configDir = new File(System.getProperty("user.home") + "/bleskin/");
-        if (!configDir.exists()) {
-            configDir.mkdirs();
+    private void flushDirty() throws IOException {
+        synchronized (store) {
+            // изменения забираются под блокировкой хранилища, чтобы в журнал не попала копия
+            // старше снимка, записанного другим потоком
+            List<SettingsSection> changes;
+            synchronized (this) {
+                if (!settings.hasDirty()) {
+                    return;
+                }
+                changes = settings.takeDirty();
+            }
+            try {
+                // без журнала снимок ещё не записан или не загружен этим экземпляром
+                if (store.getJournalSize() == 0 || store.getJournalSize() >= COMPACT_THRESHOLD_BYTES) {
+                    saveToFile();
+                } else {
+                    store.appendJournal(changes);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    settings.restoreDirty(changes);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Дожидается фоновой записи, записывает оставшиеся изменения и останавливает фоновый поток.
+     * @throws IOException при ошибке записи
+     */
+    public void close() throws IOException {
+        ExecutorService current;
+        synchronized (this) {
+            current = writer;
+            writer = null;
         }
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(configFilePath))) {
-            for (Map.Entry<String, Integer> entry : windowParams.entrySet()) {
-                writer.write(entry.getKey() + "=" + entry.getValue());
-                writer.newLine();
+        if (current != null) {
+            current.shutdown();
+            try {
+                current.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+        flushDirty();
     }
 
     /**
-     * Загружает параметры окон из файла
-     * @throws IOException если файл не существует - метод ничего
-     * не делает
+     * Загружает настройки из двоичного снимка и журнала, а если снимка ещё нет -
+     * из прежнего текстового файла. Настройки, прочитанные в прежнем формате,
+     * будут записаны в текущем при следующем сохранении.
+     * @throws IOException если снимок повреждён или не читается
      */
     public void loadFromFile() throws IOException {
-        File configFile = new File(configFilePath);
+        synchronized (store) {
+            synchronized (this) {
+                if (!store.load(settings)) {
+                    settings.importFlat(loadLegacyFile());
+                }
+                if (store.getJournalSize() == 0) {
+                    settings.markAllDirty();
+                }
+            }
+        }
+    }
+
+    private Map<String, Integer> loadLegacyFile() throws IOException {
+        Map<String, Integer> params = new HashMap<>();
+        File configFile = legacyFile.toFile();
         if (configFile.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(configFilePath))) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(configFile))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     String[] parts = line.split("=");
                     if (parts.length == 2) {
-                        windowParams.put(parts[0], Integer.parseInt(parts[1]));
+                        params.put(parts[0], Integer.parseInt(parts[1]));
                     }
                 }
             }
         }
+        return params;
     }
 
 
@@ -98,36 +222,26 @@ public class SaveState {
      *
      * @param window окно, параметры которого нужно сохранить
      */
-    public void saveWindowParams(Save window) {
-        String windowName = window.getNameOfWindow();
-        Map<String, Integer> params = window.saveWindowState();
-        for (Map.Entry<String, Integer> entry : params.entrySet()) {
-            windowParams.put(windowName + "." + entry.getKey(),
-                    entry.getValue());
-        }
+    public synchronized void saveWindowParams(Save window) {
+        window.saveWindowState(settings.section(window.getNameOfWindow()));
     }
 
-    public void saveLocale(Locale locale) {
-        windowParams.put("locale.language", locale.getLanguage().hashCode());
+    public synchronized void saveLocale(Locale locale) {
+        settings.section(LOCALE_SECTION).putString(LANGUAGE_KEY, locale.toLanguageTag());
     }
 
-    public Locale loadLocale() {
-        if (windowParams.containsKey("locale.language")) {
-            int langCode = windowParams.get("locale.language");
-            // Простая логика для определения языка по хеш-коду
-            if (langCode == "en".hashCode()) {
-                return new Locale("en");
-            }
-        }
-        return new Locale("ru"); // По умолчанию русский
+    public synchronized Locale loadLocale() {
+        SettingsSection section = settings.findSection(LOCALE_SECTION);
+        String language = section == null ? null : section.getString(LANGUAGE_KEY, null);
+        return Locale.forLanguageTag(language == null ? "ru" : language); // По умолчанию русский
     }
 
 
     /**
-     * Геттер для параметров всех окон
+     * Геттер для настроек всех окон. Изменять их можно только из потока, сохраняющего параметры окон.
      */
-    public Map<String, Integer> getWindowParams() {
-        return windowParams;
+    public Settings getSettings() {
+        return settings;
     }
 
 
@@ -137,6 +251,6 @@ public class SaveState {
      * @param window
      */
     public void setWindowParams(Save window) {
-        window.loadWindowState(getWindowParams(window.getNameOfWindow()));
+        window.loadWindowState(getWindowSection(window.getNameOfWindow()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package state;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Иерархические настройки приложения: разделы по именам окон и подсистем,
+ * в каждом - типизированные параметры ({@link SettingsSection}).
+ * Раздел находится по имени за O(1), поэтому загрузка и сохранение тысяч окон и раскладок
+ * линейны по количеству параметров.
+ * <p>
+ * Настройки помнят разделы, изменённые после последнего {@link #takeDirty()}, чтобы сохранять
+ * только их. Экземпляр не потокобезопасен; {@link SaveState} обращается к нему под блокировкой.
+ */
+public final class Settings {
+    private final Map<String, SettingsSection> sections = new HashMap<>();
+
+    /** Разделы, изменённые после последнего сохранения, по имени */
+    private final Map<String, SettingsSection> dirty = new LinkedHashMap<>();
+
+    /**
+     * Возвращает раздел, создавая пустой при первом обращении.
+     * @param name имя раздела
+     * @return раздел
+     */
+    public SettingsSection section(String name) {
+        SettingsSection section = sections.get(name);
+        if (section == null) {
+            section = new SettingsSection(name, this);
+            sections.put(name, section);
+        }
+        return section;
+    }
+
+    /**
+     * @param name имя раздела
+     * @return раздел или {@code null}, если его нет
+     */
+    public SettingsSection findSection(String name) {
+        return sections.get(name);
+    }
+
+    /** @return все разделы в произвольном порядке */
+    public Collection<SettingsSection> sections() {
+        return Collections.unmodifiableCollection(sections.values());
+    }
+
+    /** @return количество разделов */
+    public int size() {
+        return sections.size();
+    }
+
+    void markDirty(SettingsSection section) {
+        dirty.put(section.getName(), section);
+    }
+
+    /** Отмечает изменёнными все разделы, например чтобы записать их в новом формате */
+    void markAllDirty() {
+        dirty.putAll(sections);
+    }
+
+    /** @return {@code true}, если есть несохранённые изменения */
+    boolean hasDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Забирает изменённые разделы и снимает с них отметку об изменении.
+     * @return копии изменённых разделов
+     */
+    List<SettingsSection> takeDirty() {
+        List<SettingsSection> copies = new ArrayList<>(dirty.size());
+        for (SettingsSection section : dirty.values()) {
+            copies.add(section.copy());
+        }
+        dirty.clear();
+        return copies;
+    }
+
+    /**
+     * Возвращает отметку об изменении разделам, которые не удалось сохранить.
+     * @param unsaved копии, полученные от {@link #takeDirty()}
+     */
+    void restoreDirty(List<SettingsSection> unsaved) {
+        for (SettingsSection copy : unsaved) {
+            dirty.putIfAbsent(copy.getName(), section(copy.getName()));
+        }
+    }
+
+    /**
+     * Снимает отметки об изменении и копирует все разделы для записи полного снимка.
+     * @return копии всех разделов
+     */
+    List<SettingsSection> takeAll() {
+        dirty.clear();
+        List<SettingsSection> copies = new ArrayList<>(sections.size());
+        for (SettingsSection section : sections.values()) {
+            copies.add(section.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Переносит параметры прежнего плоского формата {@code "окно.параметр" = число}.
+     * Язык, хранившийся как хеш-код {@code locale.language}, становится строкой.
+     * @param flat параметры прежнего формата
+     */
+    void importFlat(Map<String, Integer> flat) {
+        for (Map.Entry<String, Integer> entry : flat.entrySet()) {
+            String key = entry.getKey();
+            int separator = key.indexOf('.');
+            if (separator <= 0 || separator == key.length() - 1) {
+                continue;
+            }
+            String sectionName = key.substring(0, separator);
+            String parameter = key.substring(separator + 1);
+            int value = entry.getValue();
+            if (SaveState.LOCALE_SECTION.equals(sectionName) && SaveState.LANGUAGE_KEY.equals(parameter)) {
+                String language = value == "en".hashCode() ? "en" : "ru";
+                section(sectionName).putRaw(parameter, SettingsSection.STRING, 0, language);
+            } else {
+                section(sectionName).putRaw(parameter, SettingsSection.INT, value, null);
+            }
+        }
+    }
+}
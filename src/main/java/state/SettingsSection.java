@@ -0,0 +1,189 @@
+package state;
+
+import java.util.Arrays;
+
+/**
+ * Раздел настроек одного окна или подсистемы: набор именованных типизированных параметров.
+ * Значения примитивных типов хранятся в массиве {@code long} без упаковки, строки - отдельно.
+ * Разделы небольшие (единицы параметров), поэтому параметр ищется проходом по массиву имён,
+ * что быстрее хеширования строки.
+ * <p>
+ * Изменение значения отмечает раздел как изменённый в {@link Settings}, которому он принадлежит,
+ * и попадает в следующее сохранение. Экземпляр не потокобезопасен.
+ */
+public final class SettingsSection {
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte BOOLEAN = 4;
+    static final byte STRING = 5;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final String name;
+
+    /** Настройки, которым принадлежит раздел; {@code null} у копий для записи на диск */
+    private final Settings owner;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private String[] strings;
+    private int size;
+
+    SettingsSection(String name, Settings owner) {
+        this.name = name;
+        this.owner = owner;
+    }
+
+    /** @return имя раздела */
+    public String getName() {
+        return name;
+    }
+
+    /** @return количество параметров в разделе */
+    public int size() {
+        return size;
+    }
+
+    /** @return {@code true}, если параметр задан */
+    public boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 && kinds[index] == INT ? (int) values[index] : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 && (kinds[index] == LONG || kinds[index] == INT) ? values[index] : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 && kinds[index] == DOUBLE ? Double.longBitsToDouble(values[index]) : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 && kinds[index] == BOOLEAN ? values[index] != 0 : defaultValue;
+    }
+
+    public String getString(String key, String defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 && kinds[index] == STRING ? strings[index] : defaultValue;
+    }
+
+    public void putInt(String key, int value) {
+        put(key, INT, value, null);
+    }
+
+    public void putLong(String key, long value) {
+        put(key, LONG, value, null);
+    }
+
+    public void putDouble(String key, double value) {
+        put(key, DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        put(key, BOOLEAN, value ? 1 : 0, null);
+    }
+
+    /**
+     * Задаёт строковый параметр.
+     * @throws NullPointerException если значение {@code null}
+     */
+    public void putString(String key, String value) {
+        if (value == null) {
+            throw new NullPointerException("Значение параметра " + key + " не задано");
+        }
+        put(key, STRING, 0, value);
+    }
+
+    private void put(String key, byte kind, long value, String string) {
+        int index = indexOf(key);
+        if (index >= 0 && kinds[index] == kind && values[index] == value
+                && (string == null || string.equals(strings[index]))) {
+            return;
+        }
+        putRaw(key, kind, value, string);
+        if (owner != null) {
+            owner.markDirty(this);
+        }
+    }
+
+    /**
+     * Задаёт параметр без отметки об изменении; используется при загрузке и копировании.
+     */
+    void putRaw(String key, byte kind, long value, String string) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                values = Arrays.copyOf(values, capacity);
+                if (strings != null) {
+                    strings = Arrays.copyOf(strings, capacity);
+                }
+            }
+            index = size++;
+            keys[index] = key;
+        }
+        kinds[index] = kind;
+        values[index] = value;
+        if (string != null || strings != null) {
+            if (strings == null) {
+                strings = new String[keys.length];
+            }
+            strings[index] = string;
+        }
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String keyAt(int index) {
+        return keys[index];
+    }
+
+    byte kindAt(int index) {
+        return kinds[index];
+    }
+
+    long valueAt(int index) {
+        return values[index];
+    }
+
+    String stringAt(int index) {
+        return strings == null ? null : strings[index];
+    }
+
+    /**
+     * Копирует раздел для записи на диск в другом потоке.
+     * @return независимая копия, изменения которой никуда не отмечаются
+     */
+    SettingsSection copy() {
+        SettingsSection copy = new SettingsSection(name, null);
+        copy.keys = Arrays.copyOf(keys, keys.length);
+        copy.kinds = Arrays.copyOf(kinds, kinds.length);
+        copy.values = Arrays.copyOf(values, values.length);
+        copy.strings = strings == null ? null : Arrays.copyOf(strings, strings.length);
+        copy.size = size;
+        return copy;
+    }
+}
@@ -0,0 +1,267 @@
+package state;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичное хранилище настроек: полный снимок и журнал изменений после него.
+ * <p>
+ * Снимок - {@code magic | version | generation | count | section* | crc32}, где раздел -
+ * {@code name | count | (key | kind | value)*}, а длина значения зависит от его типа. Снимок записывается
+ * во временный файл, сбрасывается на диск и атомарно переименовывается поверх прежнего,
+ * поэтому после сбоя на диске остаётся либо старый, либо новый снимок целиком.
+ * <p>
+ * Журнал начинается заголовком {@code magic | version | generation} и содержит пачки
+ * {@code length | crc32 | count | section*} с изменёнными разделами целиком, дописываемые в конец. Журнал относится к снимку
+ * с тем же поколением; при загрузке пачки применяются до первой неполной или повреждённой,
+ * а хвост после неё отрезается.
+ * <p>
+ * Файлы версии 1 с плоскими целочисленными параметрами {@code "окно.параметр"} читаются
+ * и переносятся в разделы; следующая запись сохраняет их в текущем формате.
+ */
+final class StateStore {
+    private static final int SNAPSHOT_MAGIC = 0x52535354;
+    private static final int JOURNAL_MAGIC = 0x52534A4C;
+    private static final int FORMAT_VERSION = 2;
+
+    /** Версия с плоскими целочисленными параметрами */
+    private static final int FLAT_VERSION = 1;
+
+    /** Длина заголовка журнала и снимка до количества записей */
+    private static final int HEADER_BYTES = 16;
+
+    /** Длина заголовка пачки журнала */
+    private static final int BATCH_HEADER_BYTES = 8;
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+
+    /** Поколение текущего снимка; растёт при каждой записи снимка */
+    private long generation;
+
+    /** Длина журнала в байтах или 0, если журнала нет */
+    private long journalSize;
+
+    StateStore(Path directory) {
+        this.snapshotPath = directory.resolve("state.bin");
+        this.journalPath = directory.resolve("state.journal");
+    }
+
+    /** @return {@code true}, если снимок уже записан */
+    boolean hasSnapshot() {
+        return Files.exists(snapshotPath);
+    }
+
+    /**
+     * Загружает снимок и применяет к нему журнал. Загруженные параметры не отмечаются изменёнными.
+     * @param into настройки, в которые добавляются разделы
+     * @return {@code false}, если снимка нет
+     * @throws IOException при ошибке чтения или повреждённом снимке
+     */
+    boolean load(Settings into) throws IOException {
+        if (!hasSnapshot()) {
+            return false;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        if (bytes.length < HEADER_BYTES + 8 || !checksumMatches(bytes, 0, bytes.length - 4, readInt(bytes, bytes.length - 4))) {
+            throw new IOException("Снимок состояния повреждён: " + snapshotPath);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        int version = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+        if (version != FORMAT_VERSION && version != FLAT_VERSION) {
+            throw new IOException("Неизвестный формат снимка состояния: " + snapshotPath);
+        }
+        generation = in.readLong();
+        if (version == FORMAT_VERSION) {
+            readSections(in, into);
+            loadJournal(version, into, null);
+        } else {
+            Map<String, Integer> flat = new HashMap<>();
+            readEntries(in, flat);
+            loadJournal(version, null, flat);
+            into.importFlat(flat);
+            journalSize = 0; // журнал прежнего формата не продолжается: следующая запись - новый снимок
+        }
+        return true;
+    }
+
+    private void loadJournal(int version, Settings into, Map<String, Integer> flat) throws IOException {
+        journalSize = 0;
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(journalPath);
+        if (bytes.length < HEADER_BYTES || readInt(bytes, 0) != JOURNAL_MAGIC
+                || readInt(bytes, 4) != version || readLong(bytes, 8) != generation) {
+            return; // журнал от предыдущего снимка: его изменения уже в снимке
+        }
+        int offset = HEADER_BYTES;
+        while (offset + BATCH_HEADER_BYTES <= bytes.length) {
+            int length = readInt(bytes, offset);
+            int payload = offset + BATCH_HEADER_BYTES;
+            if (length < 4 || length > bytes.length - payload
+                    || !checksumMatches(bytes, payload, length, readInt(bytes, offset + 4))) {
+                break;
+            }
+            DataInputStream batch = new DataInputStream(new ByteArrayInputStream(bytes, payload, length));
+            if (into != null) {
+                readSections(batch, into);
+            } else {
+                readEntries(batch, flat);
+            }
+            offset = payload + length;
+        }
+        if (offset < bytes.length) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+        journalSize = offset;
+    }
+
+    /**
+     * Записывает полный снимок и начинает для него пустой журнал.
+     * @param sections все разделы
+     * @throws IOException при ошибке записи
+     */
+    void writeSnapshot(Collection<SettingsSection> sections) throws IOException {
+        long next = generation + 1;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(HEADER_BYTES + 128 * sections.size());
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(next);
+        writeSections(out, sections);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.toByteArray());
+        out.writeInt((int) crc.getValue());
+        writeAtomically(snapshotPath, buffer.toByteArray());
+        generation = next;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).putLong(generation);
+        writeAtomically(journalPath, header.array());
+        journalSize = HEADER_BYTES;
+    }
+
+    /**
+     * Дописывает изменённые разделы в журнал одной пачкой.
+     * Журнал к этому моменту должен быть загружен или создан.
+     * @param changes изменённые разделы
+     * @throws IOException при ошибке записи
+     */
+    void appendJournal(Collection<SettingsSection> changes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128 * changes.size());
+        writeSections(new DataOutputStream(buffer), changes);
+        byte[] payload = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER_BYTES + payload.length);
+        batch.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            channel.position(journalSize);
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+        }
+        journalSize += BATCH_HEADER_BYTES + payload.length;
+    }
+
+    /** @return длина журнала в байтах или 0, если журнал этим экземпляром ещё не загружен и не создан */
+    long getJournalSize() {
+        return journalSize;
+    }
+
+    private static void writeSections(DataOutputStream out, Collection<SettingsSection> sections) throws IOException {
+        out.writeInt(sections.size());
+        for (SettingsSection section : sections) {
+            out.writeUTF(section.getName());
+            out.writeInt(section.size());
+            for (int i = 0; i < section.size(); i++) {
+                byte kind = section.kindAt(i);
+                out.writeUTF(section.keyAt(i));
+                out.writeByte(kind);
+                switch (kind) {
+                    case SettingsSection.INT -> out.writeInt((int) section.valueAt(i));
+                    case SettingsSection.BOOLEAN -> out.writeBoolean(section.valueAt(i) != 0);
+                    case SettingsSection.STRING -> out.writeUTF(section.stringAt(i));
+                    default -> out.writeLong(section.valueAt(i));
+                }
+            }
+        }
+    }
+
+    private static void readSections(DataInputStream in, Settings into) throws IOException {
+        int count = in.readInt();
+        for (int s = 0; s < count; s++) {
+            SettingsSection section = into.section(in.readUTF());
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                byte kind = in.readByte();
+                switch (kind) {
+                    case SettingsSection.INT -> section.putRaw(key, kind, in.readInt(), null);
+                    case SettingsSection.BOOLEAN -> section.putRaw(key, kind, in.readBoolean() ? 1 : 0, null);
+                    case SettingsSection.STRING -> section.putRaw(key, kind, 0, in.readUTF());
+                    case SettingsSection.LONG, SettingsSection.DOUBLE -> section.putRaw(key, kind, in.readLong(), null);
+                    default -> throw new IOException("Неизвестный тип параметра " + key + ": " + kind);
+                }
+            }
+        }
+    }
+
+    private static void readEntries(DataInputStream in, Map<String, Integer> into) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            into.put(key, in.readInt());
+        }
+    }
+
+    private static void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean checksumMatches(byte[] bytes, int offset, int length, int expected) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue() == expected;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ByteBuffer.wrap(bytes, offset, 4).getInt();
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return ByteBuffer.wrap(bytes, offset, 8).getLong();
+    }
+}
@@ -0,0 +1,99 @@
+package game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * В плотной куче роботов, которые все едут в одну точку, проход столкновений должен проверять
+ * каждую близкую пару: пересечения, оставшиеся после шага, сверяются полным перебором пар.
+ */
+class CollisionResolverTest {
+    private static final double RADIUS = RobotFleet.BODY_WIDTH / 2;
+    private static final double HALF_SEGMENT = RobotFleet.BODY_LENGTH / 2 - RADIUS;
+
+    /** Глубина, начиная с которой касание считается пересечением */
+    private static final double TOLERANCE = 0.5;
+
+    private static final int ROBOTS = 200;
+    private static final int TICKS = 200;
+
+    /**
+     * Верхняя граница пересечений в куче {@link #ROBOTS} роботов. При полном переборе соседей
+     * их около 530; если часть пар не проверяется ни на одном шаге, их на порядок больше.
+     */
+    private static final int MAX_OVERLAPS = 800;
+
+    @Test
+    void pileUpKeepsFewOverlaps() {
+        int overlaps = pileUpOverlaps(ROBOTS, TICKS);
+        assertTrue(overlaps <= MAX_OVERLAPS, "пересекающихся пар: " + overlaps);
+    }
+
+    private static int pileUpOverlaps(int robots, int ticks) {
+        GameModel model = new GameModel();
+        Random random = new Random(42);
+        double centerX = GameModel.FIELD_WIDTH / 2;
+        double centerY = GameModel.FIELD_HEIGHT / 2;
+        for (int i = 1; i < robots; i++) {
+            model.addRobot(centerX + (random.nextDouble() - 0.5) * 600, centerY + (random.nextDouble() - 0.5) * 600,
+                    random.nextDouble() * 2 * Math.PI);
+        }
+        model.getFleet().setTargetForAll(centerX, centerY);
+        model.setCollisionsEnabled(true);
+        for (int tick = 0; tick < ticks; tick++) {
+            model.updateRobotPosition();
+        }
+        return countOverlaps(model.getFleet());
+    }
+
+    /** Полный перебор пар: количество пар, капсулы которых пересекаются глубже {@link #TOLERANCE} */
+    private static int countOverlaps(RobotFleet fleet) {
+        int overlaps = 0;
+        for (int i = 0; i < fleet.size(); i++) {
+            for (int j = i + 1; j < fleet.size(); j++) {
+                if (axisDistance(fleet, i, j) < 2 * RADIUS - TOLERANCE) {
+                    overlaps++;
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    /** Расстояние между осевыми отрезками капсул двух роботов */
+    private static double axisDistance(RobotFleet fleet, int i, int j) {
+        double[] a = axis(fleet, i);
+        double[] b = axis(fleet, j);
+        if (crosses(a, b)) {
+            return 0;
+        }
+        return Math.min(Math.min(pointToSegment(a[0], a[1], b), pointToSegment(a[2], a[3], b)),
+                Math.min(pointToSegment(b[0], b[1], a), pointToSegment(b[2], b[3], a)));
+    }
+
+    private static double[] axis(RobotFleet fleet, int robot) {
+        double dx = Math.cos(fleet.getDirection(robot)) * HALF_SEGMENT;
+        double dy = Math.sin(fleet.getDirection(robot)) * HALF_SEGMENT;
+        double x = fleet.getX(robot);
+        double y = fleet.getY(robot);
+        return new double[] {x - dx, y - dy, x + dx, y + dy};
+    }
+
+    private static boolean crosses(double[] a, double[] b) {
+        return side(a, b[0], b[1]) * side(a, b[2], b[3]) < 0 && side(b, a[0], a[1]) * side(b, a[2], a[3]) < 0;
+    }
+
+    private static double side(double[] segment, double x, double y) {
+        return (segment[2] - segment[0]) * (y - segment[1]) - (segment[3] - segment[1]) * (x - segment[0]);
+    }
+
+    private static double pointToSegment(double x, double y, double[] segment) {
+        double dx = segment[2] - segment[0];
+        double dy = segment[3] - segment[1];
+        double t = ((x - segment[0]) * dx + (y - segment[1]) * dy) / (dx * dx + dy * dy);
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - segment[0] - t * dx, y - segment[1] - t * dy);
+    }
+}
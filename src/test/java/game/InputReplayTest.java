@@ -0,0 +1,168 @@
+package game;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Воспроизведение записи {@link InputRecorder} должно повторять прогон побитово,
+ * а подменённый хеш - обнаруживаться на своём шаге.
+ */
+class InputReplayTest {
+    private static final int ROBOTS = 500;
+    private static final int TICKS = 300;
+    private static final int HASH_INTERVAL = 10;
+
+    /** Размер заголовка файла событий: magic, version, flags, hashInterval, startTick */
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private Path events;
+    private GameModel recorded;
+
+    @BeforeEach
+    void record() throws IOException {
+        events = directory.resolve("session.rec");
+        recorded = createModel();
+        for (int tick = 0; tick < 20; tick++) {
+            recorded.updateRobotPosition();
+        }
+
+        InputRecorder recorder = InputRecorder.start(recorded, events, HASH_INTERVAL);
+        Random random = new Random(7);
+        for (int tick = 0; tick < TICKS; tick++) {
+            if (tick % 37 == 0) {
+                recorded.setTarget(random.nextInt(ROBOTS), random.nextInt((int) GameModel.FIELD_WIDTH),
+                        random.nextInt((int) GameModel.FIELD_HEIGHT));
+            }
+            if (tick % 53 == 0) {
+                recorded.toggleObstacle(random.nextDouble() * GameModel.FIELD_WIDTH,
+                        random.nextDouble() * GameModel.FIELD_HEIGHT);
+            }
+            recorded.updateRobotPosition();
+        }
+        recorder.close();
+    }
+
+    @AfterEach
+    void stopStepper() {
+        recorded.setParallelism(1);
+    }
+
+    @Test
+    void replayReproducesRecordedRun() throws IOException {
+        InputReplay replay = new InputReplay(events);
+        GameModel model = replay.createModel();
+
+        assertTrue(replay.run(model));
+        assertEquals(-1, replay.getMismatchTick());
+        assertEquals(TICKS / HASH_INTERVAL + 2, replay.getVerifiedHashes()); // начальный, промежуточные и итоговый
+        assertEquals(TICKS / 37 + 1 + TICKS / 53 + 1, replay.getAppliedEvents());
+        assertEquals(recorded.getTick(), model.getTick());
+        assertEquals(recorded.stateHash(), model.stateHash());
+    }
+
+    @Test
+    void tamperedHashIsReportedAtItsTick() throws IOException {
+        long tamperedTick = recorded.getTick() - TICKS + 12 * HASH_INTERVAL;
+        corruptHash(tamperedTick);
+
+        InputReplay replay = new InputReplay(events);
+        GameModel model = replay.createModel();
+
+        assertFalse(replay.run(model));
+        assertEquals(tamperedTick, replay.getMismatchTick());
+        assertEquals(tamperedTick, model.getTick());
+        assertEquals(12, replay.getVerifiedHashes()); // начальный и 11 промежуточных до подменённого
+    }
+
+    @Test
+    void rejectedTargetIsNotRecorded() throws IOException {
+        Path rejected = directory.resolve("rejected.rec");
+        InputRecorder recorder = InputRecorder.start(recorded, rejected, HASH_INTERVAL);
+        assertThrows(IndexOutOfBoundsException.class, () -> recorded.setTarget(ROBOTS, 10, 10));
+        for (int tick = 0; tick < 2 * HASH_INTERVAL; tick++) {
+            recorded.updateRobotPosition();
+        }
+        recorder.close();
+
+        InputReplay replay = new InputReplay(rejected);
+        assertTrue(replay.run(replay.createModel()));
+        assertEquals(0, replay.getAppliedEvents());
+    }
+
+    @Test
+    void replayReproducesPerRobotPathsAfterWarmUp() throws IOException {
+        // собственные цели роботов и много препятствий: пути прокладываются для каждого робота
+        // и запоминаются в парке ещё до начала записи
+        GameModel model = TestModels.scattered(11, ROBOTS, 400);
+        model.setCollisionsEnabled(true);
+        Random random = new Random(3);
+        RobotFleet fleet = model.getFleet();
+        for (int i = 0; i < fleet.size(); i++) {
+            fleet.setTarget(i, random.nextDouble() * GameModel.FIELD_WIDTH, random.nextDouble() * GameModel.FIELD_HEIGHT);
+        }
+        for (int tick = 0; tick < 50; tick++) {
+            model.updateRobotPosition();
+        }
+
+        Path paths = directory.resolve("paths.rec");
+        InputRecorder recorder = InputRecorder.start(model, paths, HASH_INTERVAL);
+        for (int tick = 0; tick < 100; tick++) {
+            model.updateRobotPosition();
+        }
+        recorder.close();
+
+        InputReplay replay = new InputReplay(paths);
+        GameModel replayed = replay.createModel();
+        assertTrue(replay.run(replayed), "расхождение на шаге " + replay.getMismatchTick());
+        assertEquals(model.stateHash(), replayed.stateHash());
+    }
+
+    /**
+     * Инвертирует записанный хеш записи {@link InputRecorder#HASH} указанного шага.
+     */
+    private void corruptHash(long tick) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(events));
+        buffer.position(HEADER_BYTES);
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            long recordTick = buffer.getLong();
+            if (type == InputRecorder.HASH && recordTick == tick) {
+                int position = buffer.position();
+                buffer.putLong(position, ~buffer.getLong(position));
+                Files.write(events, buffer.array());
+                return;
+            }
+            buffer.position(buffer.position() + switch (type) {
+                case InputRecorder.TARGET -> 3 * Integer.BYTES;
+                case InputRecorder.OBSTACLE -> 2 * Double.BYTES;
+                default -> Long.BYTES;
+            });
+        }
+        fail("В записи нет хеша шага " + tick);
+    }
+
+    private static GameModel createModel() {
+        GameModel model = TestModels.scattered(42, ROBOTS, 20);
+        model.setParallelism(2);
+        model.setCollisionsEnabled(true);
+        model.getFleet().setTargetForAll(GameModel.FIELD_WIDTH / 2, GameModel.FIELD_HEIGHT / 2);
+        return model;
+    }
+}
@@ -0,0 +1,82 @@
+package game;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Параллельный шаг должен давать побитово то же состояние, что и последовательный.
+ */
+class ParallelStepperTest {
+    /** Больше нескольких порций {@link ParallelStepper#DEFAULT_CHUNK_SIZE}, чтобы работали все потоки */
+    private static final int ROBOTS = 20_000;
+
+    private static final int TICKS = 200;
+
+    private static final int TARGETS = 8;
+
+    private GameModel sequential;
+    private GameModel parallel;
+
+    @AfterEach
+    void stopSteppers() {
+        if (parallel != null) {
+            parallel.setParallelism(1);
+        }
+    }
+
+    @Test
+    void parallelStepMatchesSequential() {
+        sequential = createModel(1, false);
+        parallel = createModel(4, false);
+
+        assertSameStateAfterTicks();
+    }
+
+    @Test
+    void parallelStepWithCollisionsMatchesSequential() {
+        sequential = createModel(1, true);
+        parallel = createModel(4, true);
+
+        assertSameStateAfterTicks();
+    }
+
+    private void assertSameStateAfterTicks() {
+        for (int tick = 1; tick <= TICKS; tick++) {
+            sequential.updateRobotPosition();
+            parallel.updateRobotPosition();
+            if (tick % 50 == 0) {
+                assertEquals(sequential.stateHash(), parallel.stateHash(), "хеш состояния на шаге " + tick);
+            }
+        }
+    }
+
+    private static GameModel createModel(int parallelism, boolean collisions) {
+        GameModel model = TestModels.scattered(42, ROBOTS, 50);
+        model.setParallelism(parallelism);
+        model.setCollisionsEnabled(collisions);
+        // половина роботов едет к нескольким общим целям по общим полям направлений планировщика,
+        // остальные - к собственным целям по путям, проложенным для каждого робота
+        Random random = new Random(7);
+        double[] targetX = new double[TARGETS];
+        double[] targetY = new double[TARGETS];
+        for (int i = 0; i < TARGETS; i++) {
+            targetX[i] = random.nextDouble() * GameModel.FIELD_WIDTH;
+            targetY[i] = random.nextDouble() * GameModel.FIELD_HEIGHT;
+        }
+        RobotFleet fleet = model.getFleet();
+        for (int i = 0; i < fleet.size(); i++) {
+            if (i % 2 == 0) {
+                int target = random.nextInt(TARGETS);
+                fleet.setTarget(i, targetX[target], targetY[target]);
+            } else {
+                fleet.setTarget(i, random.nextDouble() * GameModel.FIELD_WIDTH,
+                        random.nextDouble() * GameModel.FIELD_HEIGHT);
+            }
+        }
+        return model;
+    }
+}
@@ -0,0 +1,34 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * Модели для тестов: роботы и препятствия, случайно расставленные по полю.
+ */
+final class TestModels {
+
+    private TestModels() {
+    }
+
+    /**
+     * Создаёт модель со случайно расставленными препятствиями и роботами.
+     * Одинаковое зерно даёт одинаковую модель; цели, параллелизм и столкновения задаёт тест.
+     * @param seed      зерно генератора
+     * @param robots    количество роботов вместе с основным
+     * @param obstacles количество занятых клеток карты препятствий
+     * @return модель на шаге 0
+     */
+    static GameModel scattered(long seed, int robots, int obstacles) {
+        GameModel model = new GameModel();
+        Random random = new Random(seed);
+        for (int i = 0; i < obstacles; i++) {
+            model.getObstacles().setBlocked(random.nextDouble() * GameModel.FIELD_WIDTH,
+                    random.nextDouble() * GameModel.FIELD_HEIGHT, true);
+        }
+        for (int i = 1; i < robots; i++) {
+            model.addRobot(random.nextDouble() * GameModel.FIELD_WIDTH,
+                    random.nextDouble() * GameModel.FIELD_HEIGHT, random.nextDouble() * 2 * Math.PI);
+        }
+        return model;
+    }
+}
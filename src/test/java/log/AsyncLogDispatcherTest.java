@@ -0,0 +1,80 @@
+package log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пачки {@link AsyncLogDispatcher} больше буфера источника не должны обгонять слушателей:
+ * каждая доставленная запись доходит и до хранилища, и до слушателя, забирающего записи
+ * через {@link LogWindowSource#drainTo(long, LogSink)}.
+ */
+class AsyncLogDispatcherTest {
+    private static final int RECORDS = 5000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void batchesLargerThanTheRingReachEverySink() throws IOException, InterruptedException {
+        LogSegmentStore store = LogSegmentStore.open(directory);
+        LogWindowSource source = new LogWindowSource(3, store.getNextSequence());
+        store.attach(source);
+        DrainingListener listener = new DrainingListener(source);
+        source.registerListener(listener);
+
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(source, AsyncLogDispatcher.DEFAULT_CAPACITY,
+                OverflowPolicy.BLOCK, LogLevel.Warning, 10);
+        for (int i = 0; i < RECORDS; i++) {
+            dispatcher.append(LogLevel.Info, "запись " + i);
+        }
+        assertTrue(dispatcher.awaitDrained(10_000));
+        dispatcher.close();
+
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals(RECORDS, listener.m_received);
+        assertEquals(0, listener.m_gaps);
+        assertEquals(0, store.getMissedCount());
+        for (long seq = 0; seq < RECORDS; seq++) {
+            LogEntry entry = store.read(seq);
+            assertNotNull(entry, "запись " + seq);
+            assertEquals("запись " + seq, entry.getMessage());
+        }
+        store.close();
+    }
+
+    /** Слушатель, забирающий записи из буфера по уведомлению и считающий пропуски */
+    private static final class DrainingListener implements LogChangeListener, LogSink {
+        private final LogWindowSource m_source;
+        private long m_cursor;
+        private int m_received;
+        private int m_gaps;
+
+        DrainingListener(LogWindowSource source) {
+            m_source = source;
+        }
+
+        @Override
+        public void onLogChanged() {
+            m_cursor = m_source.drainTo(m_cursor, this);
+        }
+
+        @Override
+        public void write(long sequence, LogRecord record) {
+            if (sequence != m_received) {
+                m_gaps++;
+            }
+            m_received++;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
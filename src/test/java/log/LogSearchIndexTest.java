@@ -0,0 +1,83 @@
+package log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Поток индексирования должен пропускать записи, недоступные в источнике, и продолжать
+ * индексировать новые записи.
+ */
+class LogSearchIndexTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void skipsRecordsMissingFromHistory() throws IOException, InterruptedException {
+        LogWindowSource source = new LogWindowSource(3);
+        for (int i = 0; i < 10; i++) {
+            source.append(LogLevel.Info, "ранняя запись " + i);
+        }
+        // хранилище подключено позже, поэтому записи 0..6 уже вытеснены и не сохранены:
+        // источник отдаёт на их месте null
+        try (LogSegmentStore store = LogSegmentStore.open(directory);
+             LogSearchIndex index = new LogSearchIndex(attach(store, source))) {
+            source.append(LogLevel.Info, "needle");
+
+            awaitIndexed(index, source);
+            assertArrayEquals(new long[] {10}, index.searchSequences("needle", 10));
+            assertArrayEquals(new long[] {9, 8, 7}, index.searchSequences("ранняя", 10));
+        }
+    }
+
+    @Test
+    void keepsIndexingWhenWritersLapTheIndexer() throws InterruptedException {
+        LogWindowSource source = new LogWindowSource(64);
+        try (LogSearchIndex index = new LogSearchIndex(source)) {
+            List<Thread> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int writer = w;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        source.append(LogLevel.Debug, "писатель " + writer + " запись " + i);
+                    }
+                });
+                thread.start();
+                writers.add(thread);
+            }
+            for (Thread thread : writers) {
+                thread.join();
+            }
+            source.append(LogLevel.Info, "needle");
+
+            awaitIndexed(index, source);
+            List<LogEntry> found = index.search("needle", 10);
+            assertEquals(1, found.size());
+            assertEquals(source.getPublishedSequence() - 1, found.get(0).getSequence());
+        }
+    }
+
+    private static LogWindowSource attach(LogSegmentStore store, LogWindowSource source) {
+        store.attach(source);
+        return source;
+    }
+
+    private static void awaitIndexed(LogSearchIndex index, LogWindowSource source) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (index.getIndexedSequence() < source.getPublishedSequence()) {
+            assertTrue(System.currentTimeMillis() < deadline, "индексирование остановилось на "
+                    + index.getIndexedSequence() + " из " + source.getPublishedSequence());
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Хранилище, подключённое к буферу из нескольких ячеек, должно сохранить каждую запись,
+ * даже когда несколько писателей обгоняют поток, рассылающий уведомления.
+ */
+class LogSegmentStoreTest {
+    private static final int WRITERS = 4;
+    private static final int PER_WRITER = 20_000;
+
+    /** Маленький сегмент, чтобы записи распределились по нескольким файлам */
+    private static final int SEGMENT_BYTES = 256 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentWritersLoseNoRecords() throws IOException, InterruptedException {
+        LogSegmentStore store = openStore();
+        LogWindowSource source = new LogWindowSource(3, store.getNextSequence());
+        store.attach(source);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < PER_WRITER; i++) {
+                    source.append(LogLevel.Info, writer + ":" + i);
+                }
+            });
+            thread.start();
+            writers.add(thread);
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+
+        assertEquals(0, store.getMissedCount());
+        assertEquals(WRITERS * PER_WRITER, store.getNextSequence());
+        assertTrue(store.getSegmentCount() > 1, "записи должны занять несколько сегментов");
+        assertAllRecordsReadable(store);
+        store.close();
+
+        try (LogSegmentStore reopened = openStore()) {
+            assertEquals(WRITERS * PER_WRITER, reopened.getNextSequence());
+            assertAllRecordsReadable(reopened);
+        }
+    }
+
+    /** Каждый номер читается, и каждая запись каждого писателя встречается ровно один раз по порядку */
+    private static void assertAllRecordsReadable(LogSegmentStore store) {
+        int[] next = new int[WRITERS];
+        for (long seq = 0; seq < WRITERS * PER_WRITER; seq++) {
+            LogEntry entry = store.read(seq);
+            assertNotNull(entry, "запись " + seq);
+            assertEquals(seq, entry.getSequence());
+            String message = entry.getMessage();
+            int writer = Integer.parseInt(message.substring(0, message.indexOf(':')));
+            assertEquals(next[writer]++, Integer.parseInt(message.substring(message.indexOf(':') + 1)));
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertEquals(PER_WRITER, next[writer]);
+        }
+    }
+
+    private LogSegmentStore openStore() throws IOException {
+        return new LogSegmentStore(directory, SEGMENT_BYTES, Long.MAX_VALUE, LogSegmentStore.DEFAULT_MAX_AGE_MILLIS);
+    }
+}
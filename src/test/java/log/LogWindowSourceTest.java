@@ -0,0 +1,220 @@
+package log;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Кольцевой буфер {@link LogWindowSource} при нескольких писателях: номера последовательности
+ * выдаются без пропусков, а читатели, которых обогнал писатель, получают {@code null}
+ * на месте записи, но никогда - запись с чужим номером или разорванным содержимым.
+ */
+class LogWindowSourceTest {
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private static final int WRITERS = 4;
+
+    @Test
+    void concurrentWritersGetContinuousSequences() throws InterruptedException {
+        int perWriter = 20_000;
+        LogWindowSource source = new LogWindowSource(WRITERS * perWriter);
+
+        runWriters(source, perWriter, () -> { });
+
+        assertEquals(WRITERS * perWriter, source.getPublishedSequence());
+        assertEquals(WRITERS * perWriter, source.size());
+        int[] lastIndex = {-1, -1, -1, -1};
+        for (long seq = 0; seq < WRITERS * perWriter; seq++) {
+            LogEntry entry = source.get(seq);
+            assertNotNull(entry, "запись " + seq);
+            assertEquals(seq, entry.getSequence());
+            assertConsistent(entry);
+            // записи одного писателя идут в порядке их добавления
+            int writer = writerOf(entry);
+            int index = indexOf(entry);
+            assertTrue(index > lastIndex[writer], "порядок записей писателя " + writer);
+            lastIndex[writer] = index;
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertEquals(perWriter - 1, lastIndex[writer]);
+        }
+    }
+
+    @Test
+    void readersLappedByWritersSeeNullsAtFixedPositions() throws InterruptedException {
+        LogWindowSource source = new LogWindowSource(64);
+        List<String> failures = new ArrayList<>();
+
+        runWriters(source, 50_000, () -> {
+            List<LogEntry> range = new ArrayList<>();
+            source.range(0, Integer.MAX_VALUE).forEach(range::add);
+            checkFixedPositions("range", range, failures);
+
+            long from = source.getBufferedSequence();
+            List<LogEntry> since = source.since(from, 64);
+            checkFixedPositions("since", since, failures);
+            if (!since.isEmpty() && since.get(0) != null && since.get(0).getSequence() < from) {
+                failures.add("since: запись " + since.get(0).getSequence() + " раньше " + from);
+            }
+
+            long[] previous = {-1};
+            source.drainTo(from, new LogSink() {
+                @Override
+                public void write(long sequence, LogRecord record) {
+                    if (sequence <= previous[0]) {
+                        failures.add("drainTo: запись " + sequence + " после " + previous[0]);
+                    }
+                    previous[0] = sequence;
+                }
+
+                @Override
+                public void flush() {
+                }
+            });
+        });
+
+        assertEquals(List.of(), failures);
+        // после остановки писателей перезаписывать ячейки некому, и пропусков нет
+        int position = 0;
+        for (LogEntry entry : source.all()) {
+            assertNotNull(entry, "позиция " + position);
+            assertEquals(source.getFirstSequence() + position, entry.getSequence());
+            position++;
+        }
+        assertEquals(64, position);
+    }
+
+    @Test
+    void lastAtLevelUnderContention() throws InterruptedException {
+        LogWindowSource source = new LogWindowSource(256);
+        List<String> failures = new ArrayList<>();
+
+        runWriters(source, 50_000, () -> {
+            long previous = -1;
+            for (LogEntry entry : source.lastAtLevel(LogLevel.Warning, 32)) {
+                if (entry.getLevel().level() < LogLevel.Warning.level()) {
+                    failures.add("уровень " + entry.getLevel() + " у записи " + entry.getSequence());
+                }
+                if (entry.getSequence() <= previous) {
+                    failures.add("запись " + entry.getSequence() + " после " + previous);
+                }
+                previous = entry.getSequence();
+                checkConsistent(entry, failures);
+            }
+        });
+
+        assertEquals(List.of(), failures);
+        // без писателей выборка совпадает с последними подходящими записями буфера
+        List<Long> expected = new ArrayList<>();
+        for (long seq = source.getBufferedSequence(); seq < source.getPublishedSequence(); seq++) {
+            LogEntry entry = source.get(seq);
+            if (entry.getLevel().level() >= LogLevel.Warning.level()) {
+                expected.add(seq);
+            }
+        }
+        expected = expected.subList(Math.max(0, expected.size() - 32), expected.size());
+        List<Long> actual = new ArrayList<>();
+        for (LogEntry entry : source.lastAtLevel(LogLevel.Warning, 32)) {
+            actual.add(entry.getSequence());
+        }
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Запускает писателей, каждый из которых добавляет {@code perWriter} записей, и повторяет
+     * проверку читателя, пока они работают.
+     */
+    private static void runWriters(LogWindowSource source, int perWriter, Runnable reader)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                LogRecord record = new LogRecord();
+                for (int i = 0; i < perWriter; i++) {
+                    LogLevel level = LEVELS[(writer + i) % LEVELS.length];
+                    if (i % 2 == 0) {
+                        source.append(level, writer + ":" + i);
+                    } else {
+                        source.append(record.reset(level, "{}:{}").arg(writer).arg(i));
+                    }
+                }
+            });
+            thread.start();
+            writers.add(thread);
+        }
+        Thread readerThread = new Thread(() -> {
+            while (!done.get()) {
+                reader.run();
+            }
+        });
+        readerThread.start();
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        done.set(true);
+        readerThread.join();
+    }
+
+    /**
+     * На позиции i выборки может стоять только запись first + i, где first общий для всех записей
+     * выборки: вытесненная запись заменяется {@code null}, а не сдвигает последующие.
+     */
+    private static void checkFixedPositions(String query, List<LogEntry> entries, List<String> failures) {
+        long first = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            LogEntry entry = entries.get(i);
+            if (entry == null) {
+                continue;
+            }
+            if (first < 0) {
+                first = entry.getSequence() - i;
+            }
+            if (entry.getSequence() != first + i) {
+                failures.add(query + ": на позиции " + i + " запись " + entry.getSequence()
+                        + " вместо " + (first + i));
+            }
+            checkConsistent(entry, failures);
+        }
+    }
+
+    private static void assertConsistent(LogEntry entry) {
+        List<String> failures = new ArrayList<>();
+        checkConsistent(entry, failures);
+        assertEquals(List.of(), failures);
+    }
+
+    /** Уровень записи определяется её текстом, поэтому разорванное чтение меняет одно без другого */
+    private static void checkConsistent(LogEntry entry, List<String> failures) {
+        LogLevel expected = LEVELS[(writerOf(entry) + indexOf(entry)) % LEVELS.length];
+        if (entry.getLevel() != expected) {
+            failures.add("запись " + entry.getSequence() + " \"" + entry.getMessage() + "\" с уровнем "
+                    + entry.getLevel());
+        }
+    }
+
+    private static int writerOf(LogEntry entry) {
+        String message = entry.getMessage();
+        return Integer.parseInt(message.substring(0, message.indexOf(':')));
+    }
+
+    private static int indexOf(LogEntry entry) {
+        String message = entry.getMessage();
+        return Integer.parseInt(message.substring(message.indexOf(':') + 1));
+    }
+}